@@ -1,9 +1,12 @@
 package it.unimore.dipi.iot;
 
+import it.unimore.dipi.iot.server.directory.RdEndpointWatcher;
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
 import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.LinkFormatParser;
+import it.unimore.dipi.iot.utils.TrafficLogger;
 import org.eclipse.californium.core.*;
 import org.eclipse.californium.core.coap.CoAP;
-import org.eclipse.californium.core.coap.LinkFormat;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.californium.elements.exception.ConnectorException;
@@ -12,6 +15,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Riccardo Prevedi
@@ -33,15 +41,31 @@ public class CoapDataCollectorAndManagerProcess {
 
     private static final String CONTENT_TYPE_ATTRIBUTE = "ct";
 
-    private static final String EP_LOOKUP_URI = "/rd-lookup/ep";
+    private static final String RESOURCE_TYPE_ATTRIBUTE = "rt";
+
+    //The per-minute and per-hour aggregates of the meters (E.g. iot.sensor.water.aggregate) are not raw readings
+    private static final String AGGREGATE_RESOURCE_TYPE_SUFFIX = ".aggregate";
 
-    private static final String SECTOR_RD_ATTRIBUTE = "d";
+    private static final String EP_LOOKUP_URI = "/rd-lookup/ep";
 
     private static final String WELL_KNOWN_CORE_URI = "/.well-known/core";
 
-    private static List<String> targetEndpointList;
+    //Floor -> values notified by its water, energy and gas resources
+    private static final Map<String, FloorConsumption> floorConsumptionMap = new ConcurrentHashMap<>();
+
+    //Endpoint -> its observe relations (target URL -> relation)
+    private static final Map<String, Map<String, CoapObserveRelation>> endpointRelationMap = new ConcurrentHashMap<>();
+
+    //Every notification and discovery response, off unless enabled (E.g. -Dtraffic.log.collector.notification=10/100)
+    private static final TrafficLogger notificationTrafficLogger = TrafficLogger.getLogger("collector.notification");
+
+    private static final TrafficLogger discoveryTrafficLogger = TrafficLogger.getLogger("collector.discovery");
 
-    private static Map<String, List<String>> targetEndpointMap;
+    //The observe relations and the requests are spread across several sockets by destination
+    private static final ClientEndpointPool clientEndpointPool = new ClientEndpointPool("Collector", ClientEndpointPool.DEFAULT_SIZE);
+
+    //The discovery of a new endpoint is a blocking call: it does not run on the CoAP handler threads
+    private static final ExecutorService discoveryExecutor = Executors.newSingleThreadExecutor();
 
     private static final Double waterPrice = 0.00236; //Price H2O actually in Italy (€/l)
 
@@ -54,84 +78,55 @@ public class CoapDataCollectorAndManagerProcess {
 
     public static void main(String[] args) {
 
-        targetEndpointMap = new HashMap<>();
-        targetEndpointList = new ArrayList<>();
-
-        //Init Coap Client
-        CoapClient coapClient = new CoapClient();
-
-        //it's been discovered any endpoint and its relative sector reference (floor)
-        //it's filled the map: <key_floor, value_endpoint_list>
-        discoverTargetEndpoint(coapClient);
-
-        targetEndpointMap.forEach((floor, endpoints) -> {
-
-            logger.info("Starting the discovery for the {} resources ...", floor);
-
-            List<String> targetObservableFloorResourceList = new ArrayList<>();
-            Map<String, CoapObserveRelation> observingRelationMap = new HashMap<>();
-
-            //Start Resource Discovery (water, energy and gas value consumptions)
-            //The resources hosted by the smart object (the endpoint) are discovered using /.well-known/core resource
-            endpoints.stream().forEach(endpoint -> {
-                discoverTargetObservableResource(coapClient, endpoint, targetObservableFloorResourceList);
-            });
-
-            List<Double> waterValueList = new ArrayList<>();
-            List<Double> energyValueList = new ArrayList<>();
-            List<Double> gasValueList = new ArrayList<>();
-
-            //Start observing each resource
-            targetObservableFloorResourceList.forEach(targetResourceUrl -> {
-                startObservingTargetResource(coapClient
-                        , targetResourceUrl
-                        , observingRelationMap
-                        , floor
-                        , waterValueList
-                        , energyValueList
-                        , gasValueList);
-            });
-
-            //Sleep and then cancel registration
-            try {
-                Thread.sleep(TIME_FOR_COST_CALCULATING);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            observingRelationMap.forEach((uri, relation) -> {
-                logger.info("Cancelling Observation for target Uri: {}", uri);
-                relation.proactiveCancel();
-            });
+        //The endpoints registered to the RD and their sector reference (floor) are followed as they change:
+        //the resources of a new endpoint are observed, the observations of a removed endpoint are cancelled
+        watchTargetEndpoints();
 
-            double totalWaterCostConsumptionValue = getAverage(waterValueList) * (TIME_FOR_COST_CALCULATING / 1000.0) * waterPrice;
-            logger.info("Floor: {} - Raw Material cost: {} €_l - Time passed: {}s - Average Cost: {}€"
-                    , floor
-                    , waterPrice
-                    , (TIME_FOR_COST_CALCULATING / 1000)
-                    , totalWaterCostConsumptionValue);
+        ScheduledExecutorService costExecutor = Executors.newSingleThreadScheduledExecutor();
 
-            double totalEnergyCostConsumptionValue = getAverage(energyValueList) * ((TIME_FOR_COST_CALCULATING / 1000.0) / 3600.0) * energyPrice;
-            logger.info("Floor: {} - Raw Material cost: {} €_kWh - Time passed: {}s - Average Cost: {}€"
-                    , floor
-                    , energyPrice
-                    , (TIME_FOR_COST_CALCULATING / 1000)
-                    , totalEnergyCostConsumptionValue);
+        costExecutor.scheduleAtFixedRate(() -> floorConsumptionMap.forEach(CoapDataCollectorAndManagerProcess::logFloorCost)
+                , TIME_FOR_COST_CALCULATING
+                , TIME_FOR_COST_CALCULATING
+                , TimeUnit.MILLISECONDS);
+    }
 
-            double totalGasCostConsumptionValue = getAverage(gasValueList) * (TIME_FOR_COST_CALCULATING / 1000.0) * gasPrice;
-            logger.info("Floor: {} - Raw Material cost: {} €_m3 - Time passed: {}s - Average Cost: {}€"
-                    , floor
-                    , gasPrice
-                    , (TIME_FOR_COST_CALCULATING / 1000)
-                    , totalGasCostConsumptionValue);
-        });
+    /**
+     * Log the costs of a floor over the last period, the values of the period are then cleared
+     */
+    private static void logFloorCost(String floor, FloorConsumption floorConsumption) {
+
+        double totalWaterCostConsumptionValue = getAverage(floorConsumption.waterValueList) * (TIME_FOR_COST_CALCULATING / 1000.0) * waterPrice;
+        logger.info("Floor: {} - Raw Material cost: {} €_l - Time passed: {}s - Average Cost: {}€"
+                , floor
+                , waterPrice
+                , (TIME_FOR_COST_CALCULATING / 1000)
+                , totalWaterCostConsumptionValue);
+
+        double totalEnergyCostConsumptionValue = getAverage(floorConsumption.energyValueList) * ((TIME_FOR_COST_CALCULATING / 1000.0) / 3600.0) * energyPrice;
+        logger.info("Floor: {} - Raw Material cost: {} €_kWh - Time passed: {}s - Average Cost: {}€"
+                , floor
+                , energyPrice
+                , (TIME_FOR_COST_CALCULATING / 1000)
+                , totalEnergyCostConsumptionValue);
+
+        double totalGasCostConsumptionValue = getAverage(floorConsumption.gasValueList) * (TIME_FOR_COST_CALCULATING / 1000.0) * gasPrice;
+        logger.info("Floor: {} - Raw Material cost: {} €_m3 - Time passed: {}s - Average Cost: {}€"
+                , floor
+                , gasPrice
+                , (TIME_FOR_COST_CALCULATING / 1000)
+                , totalGasCostConsumptionValue);
     }
 
 
+    //The list is filled by the notifications: the average and the clearing are atomic
     private static double getAverage(List<Double> list) {
-        return list.stream()
-                .mapToDouble(d -> d)
-                .average().orElse(0);
+        synchronized (list) {
+            double average = list.stream()
+                    .mapToDouble(d -> d)
+                    .average().orElse(0);
+            list.clear();
+            return average;
+        }
     }
 
     /**
@@ -160,19 +155,19 @@ public class CoapDataCollectorAndManagerProcess {
                 if (targetUrl.endsWith("H2O")) {
 
                     Double value = Double.parseDouble(coapResponse.getResponseText());
-                    logger.info("Notification -> Resource Target: {} -> Body: {}", targetUrl, value);
+                    notificationTrafficLogger.log(targetUrl, value);
                     waterValueList.add(value);
 
                 } else if (targetUrl.endsWith("gas")) {
 
                     Double value = Double.parseDouble(coapResponse.getResponseText());
-                    logger.info("Notification -> Resource Target: {} -> Body: {}", targetUrl, value);
+                    notificationTrafficLogger.log(targetUrl, value);
                     gasValueList.add(value);
 
                 } else if (targetUrl.endsWith("EN")) {
 
                     Double value = Double.parseDouble(coapResponse.getResponseText());
-                    logger.info("Notification -> Resource Target: {} -> Body: {}", targetUrl, value);
+                    notificationTrafficLogger.log(targetUrl, value);
                     energyValueList.add(value);
                 }
             }
@@ -210,36 +205,30 @@ public class CoapDataCollectorAndManagerProcess {
 
             if (coapResp != null) {
 
-                logger.info("Response Pretty Print:\n{}", Utils.prettyPrint(coapResp));
+                discoveryTrafficLogger.log("Response", coapResp);
 
                 if (coapResp.getOptions().getContentFormat() == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
 
-                    Set<WebLink> links = LinkFormat.parse(coapResp.getResponseText());
-
-                    links.forEach(link -> {
+                    //The links are parsed in a single pass over the payload and filtered as they are parsed
+                    LinkFormatParser.parse(coapResp.getPayload(), link -> {
 
-                        if (link.getURI() != null
-                                && !link.getURI().equals(WELL_KNOWN_CORE_URI)
-                                && link.getAttributes() != null
-                                && link.getAttributes().getCount() > 0) {
+                        if (!link.getUri().equals(WELL_KNOWN_CORE_URI) && link.getAttributeCount() > 0) {
 
                             //If the resource is a core.s or core.a
                             //and it is observable save the target url reference
-                            //and it's not a presence sensor
-                            if (link.getAttributes().containsAttribute(OBSERVABLE_CORE_ATTRIBUTE)
-                                    && link.getAttributes().containsAttribute(INTERFACE_CORE_ATTRIBUTE)
-                                    && (link.getAttributes().getAttributeValues(INTERFACE_CORE_ATTRIBUTE).get(0).equals(CoreInterfaces.CORE_S.getValue()))
-                                    && !link.getURI().endsWith("presence-inside")) {
+                            //and it's not a presence sensor or a meter aggregate
+                            String resourceType = link.getAttributeValue(RESOURCE_TYPE_ATTRIBUTE);
+                            if (link.hasAttribute(OBSERVABLE_CORE_ATTRIBUTE)
+                                    && CoreInterfaces.CORE_S.getValue().equals(link.getAttributeValue(INTERFACE_CORE_ATTRIBUTE))
+                                    && !link.getUri().endsWith("presence-inside")
+                                    && (resourceType == null || !resourceType.endsWith(AGGREGATE_RESOURCE_TYPE_SUFFIX))) {
 
-                                boolean supportSenml = false;
+                                boolean supportSenml = link.hasAttributeValue(CONTENT_TYPE_ATTRIBUTE, "110");
 
-                                if (link.getAttributes().containsAttribute(CONTENT_TYPE_ATTRIBUTE))
-                                    supportSenml = link.getAttributes().getAttributeValues(CONTENT_TYPE_ATTRIBUTE).contains("110");
-
-                                logger.info("Target resource found ! URI: {}} (Senml: {})", link.getURI(), supportSenml);
+                                logger.info("Target resource found ! URI: {}} (Senml: {})", link.getUri(), supportSenml);
 
                                 //E.g. coap://<node_ip>:<node_port>/<resource_uri>
-                                String targetResourceUrl = String.format("%s%s", endpoint, link.getURI());
+                                String targetResourceUrl = String.format("%s%s", endpoint, link.getUri());
 
                                 targetResourceList.add(targetResourceUrl);
 
@@ -258,57 +247,91 @@ public class CoapDataCollectorAndManagerProcess {
     }
 
 
-    //Even if the endpoint is unreachable
-    private static void discoverTargetEndpoint(CoapClient coapClient) {
-
-        Request request = new Request(CoAP.Code.GET);
+    /**
+     * Follow the endpoints registered to the Resource Directory, the lookup notifications carry only the changes:
+     * - an added endpoint is discovered and its resources are observed
+     * - the observations of a removed endpoint are cancelled
+     */
+    private static RdEndpointWatcher watchTargetEndpoints() {
 
-        request.setURI(String.format("coap://%s:%d%s"
+        String lookupUrl = String.format("coap://%s:%d%s?delta"
                 , TARGET_RD_ADDRESS
                 , TARGET_RD_PORT
-                , EP_LOOKUP_URI));
+                , EP_LOOKUP_URI);
 
-        request.setConfirmable(true);
+        RdEndpointWatcher rdEndpointWatcher = new RdEndpointWatcher(clientEndpointPool.getClient(lookupUrl), lookupUrl, new RdEndpointWatcher.EndpointListener() {
+            @Override
+            public void onEndpointAdded(String endpoint, String floor) {
 
-        logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(request));
+                if (floor == null) {
+                    logger.info("Endpoint {} does not match filtering parameters ....", endpoint);
+                    return;
+                }
 
-        CoapResponse response = null;
+                discoveryExecutor.execute(() -> startObservingEndpoint(endpoint, floor));
+            }
 
-        try {
+            @Override
+            public void onEndpointRemoved(String endpoint, String floor) {
+                discoveryExecutor.execute(() -> stopObservingEndpoint(endpoint));
+            }
+        });
 
-            response = coapClient.advanced(request);
+        rdEndpointWatcher.start();
 
-            logger.info("Response Pretty Print:\n{}", Utils.prettyPrint(response));
+        return rdEndpointWatcher;
+    }
 
-            if (response.getOptions().getContentFormat() == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+    private static void startObservingEndpoint(String endpoint, String floor) {
 
-                Set<WebLink> links = LinkFormat.parse(response.getResponseText());
+        logger.info("Starting the discovery for the {} resources on {} ...", endpoint, floor);
 
-                links.forEach(link -> {
+        List<String> targetObservableResourceList = new ArrayList<>();
+        Map<String, CoapObserveRelation> observingRelationMap = new HashMap<>();
 
-                    if (link.getURI() != null && link.getAttributes() != null && link.getAttributes().getCount() > 0) {
+        //The resources hosted by the smart object (the endpoint) are discovered using /.well-known/core resource
+        discoverTargetObservableResource(clientEndpointPool.getClient(endpoint), endpoint, targetObservableResourceList);
 
-                        if (link.getAttributes().containsAttribute(SECTOR_RD_ATTRIBUTE)) {
+        FloorConsumption floorConsumption = floorConsumptionMap.computeIfAbsent(floor, f -> new FloorConsumption());
 
-                            //Mapping endpoints on the floor
-                            String d = link.getAttributes().getAttributeValues(SECTOR_RD_ATTRIBUTE).get(0);
-                            targetEndpointList.add(link.getURI());
-                            targetEndpointMap.put(d, targetEndpointList);
+        //Start observing each resource
+        targetObservableResourceList.forEach(targetResourceUrl -> {
+            startObservingTargetResource(clientEndpointPool.getClient(targetResourceUrl)
+                    , targetResourceUrl
+                    , observingRelationMap
+                    , floor
+                    , floorConsumption.waterValueList
+                    , floorConsumption.energyValueList
+                    , floorConsumption.gasValueList);
+        });
 
-                            logger.info("Target Endpoint URL: {} Correctly saved ! ", link.getURI());
+        endpointRelationMap.put(endpoint, observingRelationMap);
 
-                        } else
-                            logger.info("Endpoint {} does not match filtering parameters ....", link.getURI());
-                    }
-                });
+        logger.info("Target Endpoint URL: {} Correctly saved ! ", endpoint);
+    }
 
-            } else {
-                logger.error("CoRE Link Format Response not found !");
-            }
+    private static void stopObservingEndpoint(String endpoint) {
 
-        } catch (ConnectorException |
-                IOException e) {
-            e.printStackTrace();
-        }
+        Map<String, CoapObserveRelation> observingRelationMap = endpointRelationMap.remove(endpoint);
+
+        if (observingRelationMap == null)
+            return;
+
+        observingRelationMap.forEach((uri, relation) -> {
+            logger.info("Cancelling Observation for target Uri: {}", uri);
+            relation.proactiveCancel();
+        });
+    }
+
+    /**
+     * The values notified by the resources of a floor over the current period
+     */
+    private static class FloorConsumption {
+
+        private final List<Double> waterValueList = Collections.synchronizedList(new ArrayList<>());
+
+        private final List<Double> energyValueList = Collections.synchronizedList(new ArrayList<>());
+
+        private final List<Double> gasValueList = Collections.synchronizedList(new ArrayList<>());
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+package it.unimore.dipi.iot.benchmark;
+
+import it.unimore.dipi.iot.utils.LinkFormatParser;
+import org.eclipse.californium.core.WebLink;
+import org.eclipse.californium.core.coap.LinkFormat;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Compares the Californium LinkFormat.parse with the single pass {@link LinkFormatParser}
+ * on a discovery document like the ones of the smart building (RD resource lookup of a large building).
+ * Both select the observable "core.s" resources, as the collector does. For each parser it is reported:
+ * - parsed documents per second and the average time per document
+ * - bytes allocated per document (by the benchmark thread)
+ *
+ * Each parser is warmed up before the measure, the matched links are consumed so the work is not optimized away.
+ * The time of LinkFormat.parse grows faster than the size of the document (its Scanner searches the rest of the line
+ * at each token): a document with thousands of links takes seconds, so the default size is small.
+ *
+ * Usage: LinkFormatParserBenchmark [links] [warmupSeconds] [measureSeconds]
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 23:55
+ * @project coap-smart-building
+ */
+
+public class LinkFormatParserBenchmark {
+
+    private static final String OBSERVABLE_CORE_ATTRIBUTE = "obs";
+
+    private static final String INTERFACE_CORE_ATTRIBUTE = "if";
+
+    private static final String CORE_S = "core.s";
+
+    private static final String[] SUPPLIES = {"water-provider/H2O", "energy-provider/EN", "gas-provider/gas", "water-provider/switch"};
+
+    private static final String[] RESOURCE_TYPES = {"iot.sensor.water", "iot.sensor.energy", "iot.sensor.gas", "iot.actuator.switch"};
+
+    //Consumed by every iteration
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+
+        int links = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int warmupSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int measureSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        String document = buildDocument(links);
+        byte[] payload = document.getBytes(StandardCharsets.UTF_8);
+
+        int expected = parseWithCalifornium(payload);
+        if (expected != parseWithLinkFormatParser(payload))
+            throw new IllegalStateException("The parsers do not select the same links");
+
+        System.out.printf("links=%d size=%dB matching=%d warmup=%ds measure=%ds%n", links, payload.length, expected, warmupSeconds, measureSeconds);
+        System.out.printf("%-18s %12s %14s %16s%n", "parser", "docs/s", "us/doc", "alloc B/doc");
+        System.out.println(run("LinkFormat.parse", () -> parseWithCalifornium(payload), warmupSeconds, measureSeconds));
+        System.out.println(run("LinkFormatParser", () -> parseWithLinkFormatParser(payload), warmupSeconds, measureSeconds));
+
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * The discovery code before the streaming parser: decode, build the Set of WebLink, then filter
+     */
+    private static int parseWithCalifornium(byte[] payload) {
+
+        Set<WebLink> webLinks = LinkFormat.parse(new String(payload, StandardCharsets.UTF_8));
+
+        int matching = 0;
+
+        for (WebLink link : webLinks) {
+            if (link.getAttributes().containsAttribute(OBSERVABLE_CORE_ATTRIBUTE)
+                    && link.getAttributes().containsAttribute(INTERFACE_CORE_ATTRIBUTE)
+                    && link.getAttributes().getAttributeValues(INTERFACE_CORE_ATTRIBUTE).get(0).equals(CORE_S)) {
+                matching++;
+                sink += link.getURI().length();
+            }
+        }
+
+        return matching;
+    }
+
+    private static int parseWithLinkFormatParser(byte[] payload) {
+
+        int[] matching = {0};
+
+        LinkFormatParser.parse(payload, link -> {
+            if (link.hasAttribute(OBSERVABLE_CORE_ATTRIBUTE) && CORE_S.equals(link.getAttributeValue(INTERFACE_CORE_ATTRIBUTE))) {
+                matching[0]++;
+                sink += link.getUri().length();
+            }
+        });
+
+        return matching[0];
+    }
+
+    private static String run(String label, Runnable parse, int warmupSeconds, int measureSeconds) {
+
+        long warmupEnd = System.nanoTime() + warmupSeconds * 1000000000L;
+        while (System.nanoTime() < warmupEnd)
+            parse.run();
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long documents = 0;
+        long allocatedStart = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long end = start + measureSeconds * 1000000000L;
+
+        long now;
+        do {
+            parse.run();
+            documents++;
+        } while ((now = System.nanoTime()) < end);
+
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedStart;
+        double elapsedSeconds = (now - start) / 1e9;
+
+        return String.format("%-18s %12.1f %14.1f %16d", label, documents / elapsedSeconds,
+                elapsedSeconds * 1e6 / documents, allocated / documents);
+    }
+
+    /**
+     * @return a resource lookup of the building, E.g.
+     * <coap://10.0.0.1:5783/water-provider/H2O>;rt="iot.sensor.water";if="core.s";ct="0 110";obs
+     */
+    private static String buildDocument(int links) {
+
+        StringBuilder buffer = new StringBuilder();
+
+        for (int i = 0; i < links; i++) {
+
+            int supply = i % SUPPLIES.length;
+
+            if (i > 0)
+                buffer.append(',');
+
+            buffer.append(String.format("<coap://10.0.%d.%d:5783/%s>", i / 250, i % 250, SUPPLIES[supply]));
+            buffer.append(";rt=\"").append(RESOURCE_TYPES[supply]).append('"');
+            buffer.append(";if=\"").append(supply == 3 ? "core.a" : CORE_S).append('"');
+            buffer.append(";ct=\"0 110\";obs");
+            buffer.append(";title=\"Smart Building node ").append(i / SUPPLIES.length).append('"');
+        }
+
+        return buffer.toString();
+    }
+}
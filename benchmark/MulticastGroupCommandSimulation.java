@@ -0,0 +1,146 @@
+package it.unimore.dipi.iot.benchmark;
+
+import ch.qos.logback.classic.Level;
+import it.unimore.dipi.iot.server.coap.CoapSwitchGroupResource;
+import it.unimore.dipi.iot.server.control.FanOutResult;
+import it.unimore.dipi.iot.server.control.GroupCommandSender;
+import it.unimore.dipi.iot.server.raw.SwitchRawActuator;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.elements.UdpMulticastConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates many smart system nodes in a single JVM and drives their switches with group commands.
+ * Every node has a water, an energy and a gas switch: all of them join the floor group,
+ * each one also joins the group of its supply type.
+ * - PUT false to the floor group -> every switch of every node goes off
+ * - PUT true to the water group  -> only the water switches go on
+ *
+ * Usage: MulticastGroupCommandSimulation [nodes] [interfaceAddress]
+ * The interface address selects the interface joining the groups (E.g. 127.0.0.1 for the loopback), the default one otherwise.
+ * The group requests leave through the multicast route of the host, E.g. on Linux for the loopback:
+ *   ip link set lo multicast on && ip route add 239.255.0.0/16 dev lo
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 20:20
+ * @project coap-smart-building
+ */
+
+public class MulticastGroupCommandSimulation {
+
+    private static final Logger logger = LoggerFactory.getLogger(MulticastGroupCommandSimulation.class);
+
+    private static final int GROUP_PORT = 5693;
+
+    private static final String FLOOR_GROUP = "239.255.1.1";
+
+    private static final String WATER_GROUP = "239.255.2.1";
+
+    private static final String ENERGY_GROUP = "239.255.2.2";
+
+    private static final String GAS_GROUP = "239.255.2.3";
+
+    private static final long COLLECT_WINDOW = 3000;
+
+    public static void main(String[] args) throws Exception {
+
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        InetAddress interfaceAddress = args.length > 1 ? InetAddress.getByName(args[1]) : null;
+
+        InetAddress floorGroup = InetAddress.getByName(FLOOR_GROUP);
+        InetAddress[] supplyGroups = {
+                InetAddress.getByName(WATER_GROUP),
+                InetAddress.getByName(ENERGY_GROUP),
+                InetAddress.getByName(GAS_GROUP)
+        };
+
+        List<SwitchRawActuator[]> nodeSwitchList = new ArrayList<>();
+
+        for (int i = 0; i < nodes; i++) {
+
+            CoapEndpoint endpoint = new CoapEndpoint.Builder().setInetSocketAddress(new InetSocketAddress(0)).build();
+
+            CoapServer nodeServer = new CoapServer();
+            nodeServer.addEndpoint(endpoint);
+
+            CoapSwitchGroupResource groupResource = new CoapSwitchGroupResource("node-" + i, "switches");
+            SwitchRawActuator[] switches = new SwitchRawActuator[supplyGroups.length];
+
+            for (int s = 0; s < supplyGroups.length; s++) {
+                switches[s] = new SwitchRawActuator();
+                groupResource.addMember(floorGroup, switches[s]);
+                groupResource.addMember(supplyGroups[s], switches[s]);
+            }
+
+            for (InetAddress groupAddress : groupResource.getGroupAddresses())
+                endpoint.addMulticastReceiver(buildReceiver(groupAddress, interfaceAddress));
+
+            nodeServer.add(groupResource);
+            nodeServer.start();
+            nodeSwitchList.add(switches);
+        }
+
+        //The multicast route of the host selects the outgoing interface of the group requests
+        CoapEndpoint clientEndpoint = new CoapEndpoint.Builder().setInetSocketAddress(new InetSocketAddress(0)).build();
+        clientEndpoint.start();
+
+        //Collection windows: 10ms precision
+        HashedTimerWheel timerWheel = new HashedTimerWheel("group-command-wheel", 10, 512);
+
+        GroupCommandSender groupCommandSender = new GroupCommandSender(clientEndpoint, timerWheel);
+
+        FanOutResult floorOff = groupCommandSender.put(new InetSocketAddress(floorGroup, GROUP_PORT), "/switches", "false",
+                nodes, COLLECT_WINDOW).get();
+        report("floor OFF", floorOff, nodes, countActive(nodeSwitchList, -1));
+
+        FanOutResult waterOn = groupCommandSender.put(new InetSocketAddress(supplyGroups[0], GROUP_PORT), "/switches", "true",
+                nodes, COLLECT_WINDOW).get();
+        report("water ON", waterOn, nodes, countActive(nodeSwitchList, 0));
+
+        System.exit(0);
+    }
+
+    private static UdpMulticastConnector buildReceiver(InetAddress groupAddress, InetAddress interfaceAddress) {
+        UdpMulticastConnector.Builder builder = new UdpMulticastConnector.Builder()
+                .setLocalAddress(groupAddress, GROUP_PORT);
+
+        if (interfaceAddress != null) {
+            try {
+                builder.addMulticastGroup(groupAddress, NetworkInterface.getByInetAddress(interfaceAddress));
+                return builder.build();
+            } catch (Exception e) {
+                logger.warn("Interface {} not usable, joining on the default one ! Msg: {}", interfaceAddress, e.getLocalizedMessage());
+            }
+        }
+
+        return builder.addMulticastGroup(groupAddress).build();
+    }
+
+    //Active switches of the given supply index, -1 for all of them
+    private static int countActive(List<SwitchRawActuator[]> nodeSwitchList, int supplyIndex) {
+        int active = 0;
+        for (SwitchRawActuator[] switches : nodeSwitchList) {
+            for (int s = 0; s < switches.length; s++) {
+                if ((supplyIndex < 0 || supplyIndex == s) && switches[s].getActive())
+                    active++;
+            }
+        }
+        return active;
+    }
+
+    private static void report(String command, FanOutResult result, int nodes, int activeSwitches) {
+        System.out.printf("%-10s responses=%d/%d elapsed=%dms active switches after=%d failures=%s%n",
+                command, result.getResponses().size(), nodes, result.getElapsedMillis(), activeSwitches, result.getFailures());
+    }
+}
@@ -0,0 +1,181 @@
+package it.unimore.dipi.iot.benchmark;
+
+import ch.qos.logback.classic.Level;
+import it.unimore.dipi.iot.server.coap.CoapMeterResource;
+import it.unimore.dipi.iot.server.coap.observe.ObserveNotificationMode;
+import it.unimore.dipi.iot.server.model.MeterTypeDescriptor;
+import it.unimore.dipi.iot.server.raw.MeterRawSensor;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptorAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the observe notifications sent as CON with the mixed NON/CON mode on loopback.
+ * The server (this JVM) exposes a set of fast meter resources, a collector (a child JVM) observes all of them.
+ * For each mode it is reported:
+ * - notifications received per second by the collector
+ * - CON and NON notifications sent by the server
+ * - CPU time used by the server and by the collector during the run
+ *
+ * Usage: ObserveNotificationModeBenchmark [resources] [updatePeriodMillis] [durationSeconds]
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 16:45
+ * @project coap-smart-building
+ */
+
+public class ObserveNotificationModeBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ObserveNotificationModeBenchmark.class);
+
+    private static final String COLLECTOR_ARG = "collector";
+
+    private static final String RESULT_PREFIX = "RESULT";
+
+    private static final int SERVER_PORT = 5699;
+
+    private static final String DEVICE_ID = "benchmark-node";
+
+    public static void main(String[] args) throws Exception {
+
+        //Californium logs every exchange at DEBUG level, that would dominate the measure
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        if (args.length > 0 && args[0].equals(COLLECTOR_ARG)) {
+            runCollector(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+
+        int resources = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long updatePeriod = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        int durationSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        List<String> results = new ArrayList<>();
+        results.add(runServer("CON", ObserveNotificationMode.CONFIRMABLE, resources, updatePeriod, durationSeconds));
+        results.add(runServer("MIXED", CoapMeterResource.DEFAULT_NOTIFICATION_MODE, resources, updatePeriod, durationSeconds));
+
+        System.out.printf("resources=%d updatePeriod=%dms duration=%ds%n", resources, updatePeriod, durationSeconds);
+        System.out.printf("%-6s %16s %10s %10s %16s %16s%n", "mode", "notifications/s", "sent CON", "sent NON", "server CPU ms", "collector CPU ms");
+        results.forEach(System.out::println);
+
+        System.exit(0);
+    }
+
+    private static String runServer(String label, ObserveNotificationMode mode, int resources, long updatePeriod, int durationSeconds) throws Exception {
+
+        AtomicLong sentConfirmable = new AtomicLong();
+        AtomicLong sentNonConfirmable = new AtomicLong();
+
+        CoapEndpoint endpoint = new CoapEndpoint.Builder().setInetSocketAddress(new InetSocketAddress("127.0.0.1", SERVER_PORT)).build();
+        endpoint.addInterceptor(new MessageInterceptorAdapter() {
+            @Override
+            public void sendResponse(Response response) {
+                if (response.getType() == CoAP.Type.CON)
+                    sentConfirmable.incrementAndGet();
+                else if (response.getType() == CoAP.Type.NON)
+                    sentNonConfirmable.incrementAndGet();
+            }
+        });
+
+        CoapServer coapServer = new CoapServer();
+        coapServer.addEndpoint(endpoint);
+
+        List<MeterRawSensor> rawSensorList = new ArrayList<>();
+
+        for (int i = 0; i < resources; i++) {
+            MeterTypeDescriptor descriptor = new MeterTypeDescriptor("benchmark-provider", "m" + i, "iot.sensor.benchmark",
+                    "BenchmarkSensor", "u", 0.1, 0.5, 0.1, 0.5, updatePeriod, 1000);
+
+            MeterRawSensor rawSensor = new MeterRawSensor(descriptor);
+            rawSensorList.add(rawSensor);
+
+            CoapMeterResource meterResource = new CoapMeterResource(DEVICE_ID, descriptor.getResourceName(), rawSensor);
+            meterResource.setNotificationMode(mode);
+            coapServer.add(meterResource);
+        }
+
+        coapServer.start();
+
+        long serverCpuStart = getProcessCpuTime();
+
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process collector = new ProcessBuilder(javaBin, "-cp", System.getProperty("java.class.path"),
+                ObserveNotificationModeBenchmark.class.getName(), COLLECTOR_ARG,
+                Integer.toString(SERVER_PORT), Integer.toString(resources), Integer.toString(durationSeconds))
+                .redirectErrorStream(true)
+                .start();
+
+        long notifications = 0;
+        long collectorCpu = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(collector.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] fields = line.split(" ");
+                    notifications = Long.parseLong(fields[1]);
+                    collectorCpu = Long.parseLong(fields[2]);
+                } else
+                    logger.warn("Collector -> {}", line);
+            }
+        }
+        collector.waitFor();
+
+        long serverCpu = getProcessCpuTime() - serverCpuStart;
+
+        rawSensorList.forEach(MeterRawSensor::stopPeriodicEventValueUpdatedTask);
+        coapServer.destroy();
+
+        return String.format("%-6s %16.1f %10d %10d %16d %16d", label, notifications / (double) durationSeconds,
+                sentConfirmable.get(), sentNonConfirmable.get(), serverCpu / 1000000, collectorCpu / 1000000);
+    }
+
+    private static void runCollector(int port, int resources, int durationSeconds) throws Exception {
+
+        AtomicLong notifications = new AtomicLong();
+        CoapClient coapClient = new CoapClient();
+
+        long cpuStart = getProcessCpuTime();
+
+        for (int i = 0; i < resources; i++) {
+            coapClient.setURI(String.format("coap://127.0.0.1:%d/m%d", port, i));
+            coapClient.observe(new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse coapResponse) {
+                    notifications.incrementAndGet();
+                }
+
+                @Override
+                public void onError() {
+                    logger.error("Observing failed !");
+                }
+            });
+        }
+
+        Thread.sleep(durationSeconds * 1000L);
+
+        System.out.printf("%s %d %d%n", RESULT_PREFIX, notifications.get(), getProcessCpuTime() - cpuStart);
+        System.out.flush();
+        System.exit(0);
+    }
+
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
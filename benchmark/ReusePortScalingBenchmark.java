@@ -0,0 +1,198 @@
+package it.unimore.dipi.iot.benchmark;
+
+import ch.qos.logback.classic.Level;
+import it.unimore.dipi.iot.server.network.ReusePortUdpConnector;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the CoAP server scales with the number of UDP sockets bound with SO_REUSEPORT ({@link ReusePortUdpConnector}).
+ * The server (this JVM) exposes a GET resource, a load generator (a child JVM) sends NON GET requests
+ * from many UDP sockets (many peers) keeping a fixed window of requests in flight per socket.
+ * For each socket count it is reported:
+ * - responses per second received by the load generator
+ * - CPU time used by the server during the run
+ *
+ * Usage: ReusePortScalingBenchmark [maxSockets] [peers] [window] [durationSeconds]
+ * The socket counts are 1, 2, 4 ... up to maxSockets, all on the same connector: the single socket is the baseline,
+ * so the curve measures the SO_REUSEPORT sharding only (not the change from the standard Californium UDP connector).
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 01:20
+ * @project coap-smart-building
+ */
+
+public class ReusePortScalingBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReusePortScalingBenchmark.class);
+
+    private static final String LOAD_GENERATOR_ARG = "load";
+
+    private static final String RESULT_PREFIX = "RESULT";
+
+    private static final int SERVER_PORT = 5698;
+
+    private static final String RESOURCE_NAME = "bench";
+
+    private static final int SOCKET_TIMEOUT = 200; //ms, the window is refilled when requests are lost
+
+    public static void main(String[] args) throws Exception {
+
+        //Californium logs every exchange at DEBUG level, that would dominate the measure
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        if (args.length > 0 && args[0].equals(LOAD_GENERATOR_ARG)) {
+            runLoadGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+
+        int maxSockets = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int peers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int window = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int durationSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        List<String> results = new ArrayList<>();
+        for (int sockets = 1; sockets <= maxSockets; sockets *= 2)
+            results.add(runServer(sockets, peers, window, durationSeconds));
+
+        System.out.printf("peers=%d window=%d duration=%ds cores=%d%n", peers, window, durationSeconds, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %14s %16s%n", "sockets", "responses/s", "server CPU ms");
+        results.forEach(System.out::println);
+
+        System.exit(0);
+    }
+
+    private static String runServer(int sockets, int peers, int window, int durationSeconds) throws Exception {
+
+        CoapServer coapServer = new CoapServer();
+        coapServer.addEndpoint(ReusePortUdpConnector.createReusePortEndpoint(new InetSocketAddress("127.0.0.1", SERVER_PORT), sockets));
+        coapServer.add(new CoapResource(RESOURCE_NAME) {
+            @Override
+            public void handleGET(CoapExchange exchange) {
+                exchange.respond(CoAP.ResponseCode.CONTENT, "ok");
+            }
+        });
+        coapServer.start();
+
+        long serverCpuStart = getProcessCpuTime();
+
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process loadGenerator = new ProcessBuilder(javaBin, "-cp", System.getProperty("java.class.path"),
+                ReusePortScalingBenchmark.class.getName(), LOAD_GENERATOR_ARG,
+                Integer.toString(SERVER_PORT), Integer.toString(peers), Integer.toString(window), Integer.toString(durationSeconds))
+                .redirectErrorStream(true)
+                .start();
+
+        long responses = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(loadGenerator.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX))
+                    responses = Long.parseLong(line.split(" ")[1]);
+                else
+                    logger.warn("Load generator -> {}", line);
+            }
+        }
+        loadGenerator.waitFor();
+
+        long serverCpu = getProcessCpuTime() - serverCpuStart;
+
+        coapServer.destroy();
+
+        return String.format("%-8d %14.1f %16d", sockets, responses / (double) durationSeconds, serverCpu / 1000000);
+    }
+
+    /**
+     * Each peer is a UDP socket with its own thread sending NON GET /bench, a response lets it send the next request
+     */
+    private static void runLoadGenerator(int port, int peers, int window, int durationSeconds) throws Exception {
+
+        AtomicLong responses = new AtomicLong();
+        long end = System.nanoTime() + durationSeconds * 1000000000L;
+        InetSocketAddress serverAddress = new InetSocketAddress("127.0.0.1", port);
+
+        List<Thread> peerThreadList = new ArrayList<>();
+
+        for (int i = 0; i < peers; i++) {
+            Thread peerThread = new Thread(() -> {
+                try (DatagramSocket socket = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0))) {
+
+                    socket.setSoTimeout(SOCKET_TIMEOUT);
+
+                    byte[] request = newGetRequest();
+                    DatagramPacket requestPacket = new DatagramPacket(request, request.length, serverAddress);
+                    DatagramPacket responsePacket = new DatagramPacket(new byte[256], 256);
+                    int messageId = 0;
+
+                    for (int w = 0; w < window; w++)
+                        messageId = send(socket, requestPacket, request, messageId);
+
+                    while (System.nanoTime() < end) {
+                        try {
+                            socket.receive(responsePacket);
+                            responses.incrementAndGet();
+                            messageId = send(socket, requestPacket, request, messageId);
+                        } catch (SocketTimeoutException e) {
+                            //Lost requests or responses: refill the window
+                            for (int w = 0; w < window; w++)
+                                messageId = send(socket, requestPacket, request, messageId);
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Load generator peer failed ! Msg: {}", e.getLocalizedMessage());
+                }
+            });
+            peerThreadList.add(peerThread);
+            peerThread.start();
+        }
+
+        for (Thread peerThread : peerThreadList)
+            peerThread.join();
+
+        System.out.printf("%s %d%n", RESULT_PREFIX, responses.get());
+        System.out.flush();
+        System.exit(0);
+    }
+
+    /**
+     * NON GET /bench without token: Ver=1 T=NON TKL=0 | GET | Message ID | Uri-Path option
+     */
+    private static byte[] newGetRequest() {
+        byte[] request = new byte[5 + RESOURCE_NAME.length()];
+        request[0] = 0x50;
+        request[1] = 0x01;
+        request[4] = (byte) (0xB0 | RESOURCE_NAME.length()); //Uri-Path (11)
+        System.arraycopy(RESOURCE_NAME.getBytes(), 0, request, 5, RESOURCE_NAME.length());
+        return request;
+    }
+
+    //A new Message ID for each request, otherwise the server would deduplicate them
+    //(16 bits per peer: keep the run shorter than 65536 requests per peer within the NON lifetime)
+    private static int send(DatagramSocket socket, DatagramPacket requestPacket, byte[] request, int messageId) throws Exception {
+        request[2] = (byte) (messageId >> 8);
+        request[3] = (byte) messageId;
+        socket.send(requestPacket);
+        return (messageId + 1) & 0xFFFF;
+    }
+
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
@@ -0,0 +1,154 @@
+package it.unimore.dipi.iot.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import it.unimore.dipi.iot.utils.TrafficLogger;
+import org.eclipse.californium.core.Utils;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the cost of the traffic logging on the request handling thread.
+ * Each mode logs the same PUT request (the one received by a switch or parameter resource) in a loop:
+ * - no log: the loop alone, the overhead included in every other mode
+ * - pretty print: the synchronous logger.info of Utils.prettyPrint, as the handlers did before the traffic log
+ * - disabled: a {@link TrafficLogger} that is not enabled (the default)
+ * - enabled: every request kept, the rate limit high enough not to be hit
+ * - sampled: 1 request every 100, at most 1000/s
+ * For each mode it is reported the time per request on the calling thread, the CPU time of the process
+ * (the formatting on the writer thread included) and the traffic log counters.
+ * The log is written to a file, so the console does not dominate the measure.
+ *
+ * Usage: TrafficLoggerBenchmark [warmupSeconds] [measureSeconds] [logFile]
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 02:50
+ * @project coap-smart-building
+ */
+
+public class TrafficLoggerBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficLoggerBenchmark.class);
+
+    private static final String DEFAULT_LOG_FILE = System.getProperty("java.io.tmpdir") + File.separator + "traffic-logger-benchmark.log";
+
+    //Consumed by every iteration
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+
+        int warmupSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int measureSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String logFile = args.length > 2 ? args[2] : DEFAULT_LOG_FILE;
+
+        redirectLogToFile(logFile);
+
+        Request request = newSwitchPutRequest();
+
+        TrafficLogger disabledTrafficLogger = TrafficLogger.getLogger("benchmark.disabled");
+
+        TrafficLogger enabledTrafficLogger = TrafficLogger.getLogger("benchmark.enabled");
+        enabledTrafficLogger.enable(1, Integer.MAX_VALUE);
+
+        TrafficLogger sampledTrafficLogger = TrafficLogger.getLogger("benchmark.sampled");
+        sampledTrafficLogger.enable(100, 1000);
+
+        System.out.printf("warmup=%ds measure=%ds log=%s%n", warmupSeconds, measureSeconds, logFile);
+        System.out.printf("%-14s %14s %10s %14s %12s %14s %12s%n", "mode", "requests/s", "ns/req", "CPU ns/req", "written", "rate limited", "dropped");
+
+        System.out.println(run("no log", () -> sink--, null, warmupSeconds, measureSeconds));
+        System.out.println(run("pretty print", () -> logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(request)), null, warmupSeconds, measureSeconds));
+        System.out.println(run("disabled", () -> disabledTrafficLogger.log("PUT", request), disabledTrafficLogger, warmupSeconds, measureSeconds));
+        System.out.println(run("enabled", () -> enabledTrafficLogger.log("PUT", request), enabledTrafficLogger, warmupSeconds, measureSeconds));
+        System.out.println(run("sampled", () -> sampledTrafficLogger.log("PUT", request), sampledTrafficLogger, warmupSeconds, measureSeconds));
+
+        if (sink == 42)
+            System.out.println();
+    }
+
+    private static String run(String mode, Runnable log, TrafficLogger trafficLogger, int warmupSeconds, int measureSeconds) {
+
+        long warmupEnd = System.nanoTime() + warmupSeconds * 1000000000L;
+        while (System.nanoTime() < warmupEnd) {
+            log.run();
+            sink++;
+        }
+
+        long writtenStart = trafficLogger != null ? trafficLogger.getWrittenEvents() : 0;
+        long rateLimitedStart = trafficLogger != null ? trafficLogger.getRateLimitedEvents() : 0;
+        long droppedStart = trafficLogger != null ? trafficLogger.getDroppedEvents() : 0;
+
+        long requests = 0;
+        long cpuStart = getProcessCpuTime();
+        long start = System.nanoTime();
+        long end = start + measureSeconds * 1000000000L;
+
+        long now;
+        do {
+            log.run();
+            sink++;
+            requests++;
+        } while ((now = System.nanoTime()) < end);
+
+        long cpu = getProcessCpuTime() - cpuStart;
+        double elapsedSeconds = (now - start) / 1e9;
+
+        if (trafficLogger == null)
+            return String.format("%-14s %14.1f %10.1f %14.1f %12s %14s %12s", mode, requests / elapsedSeconds,
+                    elapsedSeconds * 1e9 / requests, cpu / (double) requests, "-", "-", "-");
+
+        return String.format("%-14s %14.1f %10.1f %14.1f %12d %14d %12d", mode, requests / elapsedSeconds,
+                elapsedSeconds * 1e9 / requests, cpu / (double) requests,
+                trafficLogger.getWrittenEvents() - writtenStart,
+                trafficLogger.getRateLimitedEvents() - rateLimitedStart,
+                trafficLogger.getDroppedEvents() - droppedStart);
+    }
+
+    /**
+     * PUT with a SenML body, E.g. a parameter change
+     */
+    private static Request newSwitchPutRequest() {
+        Request request = Request.newPut();
+        request.setURI("coap://127.0.0.1:5783/water-provider/parameter");
+        request.setMID(4711);
+        request.setToken(new byte[]{0x01, 0x02, 0x03, 0x04});
+        request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
+        request.setPayload("{\"changedValue\":12.5,\"hysteresis\":0.5,\"sustainedSamples\":3,\"maxRateOfChange\":0.0}");
+        return request;
+    }
+
+    //Only the file appender at INFO level: the Californium DEBUG logging and the console are left out
+    private static void redirectLogToFile(String logFile) {
+
+        LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(loggerContext);
+        encoder.setPattern("%d{HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+        encoder.start();
+
+        FileAppender<ILoggingEvent> fileAppender = new FileAppender<>();
+        fileAppender.setContext(loggerContext);
+        fileAppender.setFile(logFile);
+        fileAppender.setAppend(false);
+        fileAppender.setEncoder(encoder);
+        fileAppender.start();
+
+        ch.qos.logback.classic.Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        rootLogger.detachAndStopAllAppenders();
+        rootLogger.addAppender(fileAppender);
+        rootLogger.setLevel(Level.INFO);
+    }
+
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
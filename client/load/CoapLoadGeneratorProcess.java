@@ -0,0 +1,481 @@
+package it.unimore.dipi.iot.client.load;
+
+import ch.qos.logback.classic.Level;
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop CoAP load generator: the requests are sent at a fixed arrival rate, whatever the response time of the server.
+ * Each request has an intended send time (start + sequence / rate) and its latency is measured from that time:
+ * when the generator falls behind (the max in flight requests is reached or a dispatcher thread is late)
+ * the wait is part of the latency, so the slow responses are not hidden (coordinated omission).
+ * The service time (from the actual send) is reported too.
+ * Every request is part of the latency, whatever its outcome: error responses, failures (E.g. timeouts) and the requests
+ * still without a response at the end of the drain are recorded at the time their outcome was known
+ * (the cutoff for the pending ones, counted separately), so the lost requests do not lower the tail.
+ *
+ * The requests are a weighted mix of GET, SenML GET, PUT, POST and observe registrations ({@link LoadOperation}),
+ * sent by many clients (one UDP socket each) from one or more dispatcher threads.
+ * The latency of an observe registration is the time of its first response, the relations are kept until the end
+ * and the following notifications are counted.
+ *
+ * Usage: CoapLoadGeneratorProcess [key=value ...]
+ * - rate: requests per second (1000)
+ * - duration: seconds (30)
+ * - clients: client endpoints, each one with its own socket (8)
+ * - threads: dispatcher threads (2)
+ * - inflight: max requests waiting for a response (1024)
+ * - mix: weight of each operation (get:40,senml:20,put:15,post:15,observe:10)
+ * - get, senml, put, post, observe: the target URI of the operation
+ * E.g. rate=5000 duration=60 mix=get:90,put:10 get=coap://127.0.0.1:5783/water-provider/H2O
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 03:30
+ * @project coap-smart-building
+ */
+
+public class CoapLoadGeneratorProcess {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapLoadGeneratorProcess.class);
+
+    private static final int DEFAULT_RATE = 1000;
+
+    private static final int DEFAULT_DURATION = 30;
+
+    private static final int DEFAULT_CLIENTS = 8;
+
+    private static final int DEFAULT_THREADS = 2;
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private static final String DEFAULT_MIX = "get:40,senml:20,put:15,post:15,observe:10";
+
+    private static final long DRAIN_TIMEOUT = 10000; //10sec for the last responses
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final int rate;
+
+    private final int durationSeconds;
+
+    private final int threads;
+
+    private final int maxInFlight;
+
+    private final Map<LoadOperation, String> targetUriMap;
+
+    private final LoadOperation[] mixOperations;
+
+    private final int[] mixCumulativeWeights;
+
+    private final ClientEndpointPool clientEndpointPool;
+
+    private final Semaphore inFlight;
+
+    private final Map<LoadOperation, OperationStats> operationStatsMap = new EnumMap<>(LoadOperation.class);
+
+    private final OperationStats totalStats = new OperationStats();
+
+    private final Queue<CoapObserveRelation> observeRelationQueue = new ConcurrentLinkedQueue<>();
+
+    //Requests waiting for their outcome
+    private final Set<OutstandingRequest> outstandingRequestSet = ConcurrentHashMap.newKeySet();
+
+    //From the first intended send time to the last response, longer than the duration when the server falls behind
+    private long elapsedNanos = 0;
+
+    public CoapLoadGeneratorProcess(int rate, int durationSeconds, int clients, int threads, int maxInFlight,
+                                    Map<LoadOperation, Integer> mixWeightMap, Map<LoadOperation, String> targetUriMap) {
+
+        if (rate < 1 || durationSeconds < 1 || threads < 1 || maxInFlight < 1)
+            throw new IllegalArgumentException("rate, duration, threads and inflight must be at least 1");
+
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+        this.targetUriMap = targetUriMap;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.clientEndpointPool = new ClientEndpointPool("LoadClient", clients);
+
+        List<LoadOperation> operationList = new ArrayList<>();
+        List<Integer> cumulativeWeightList = new ArrayList<>();
+        int totalWeight = 0;
+
+        for (Map.Entry<LoadOperation, Integer> entry : mixWeightMap.entrySet()) {
+            if (entry.getValue() > 0) {
+                totalWeight += entry.getValue();
+                operationList.add(entry.getKey());
+                cumulativeWeightList.add(totalWeight);
+                this.operationStatsMap.put(entry.getKey(), new OperationStats());
+            }
+        }
+
+        if (operationList.isEmpty())
+            throw new IllegalArgumentException("The mix has no operation");
+
+        this.mixOperations = operationList.toArray(new LoadOperation[0]);
+        this.mixCumulativeWeights = cumulativeWeightList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        //Californium logs every exchange at DEBUG level, that would dominate the measure
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        Map<String, String> argumentMap = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length == 2)
+                argumentMap.put(keyValue[0].trim().toLowerCase(), keyValue[1].trim());
+            else
+                logger.warn("Ignoring the argument {} (expected key=value)", arg);
+        }
+
+        Map<LoadOperation, Integer> mixWeightMap = new EnumMap<>(LoadOperation.class);
+        for (String operationWeight : argumentMap.getOrDefault("mix", DEFAULT_MIX).split(",")) {
+            String[] keyWeight = operationWeight.split(":");
+            mixWeightMap.put(LoadOperation.fromKey(keyWeight[0].trim()), Integer.parseInt(keyWeight[1].trim()));
+        }
+
+        Map<LoadOperation, String> targetUriMap = new EnumMap<>(LoadOperation.class);
+        for (LoadOperation operation : LoadOperation.values())
+            targetUriMap.put(operation, argumentMap.getOrDefault(operation.getKey(), operation.getDefaultTargetUri()));
+
+        CoapLoadGeneratorProcess loadGenerator = new CoapLoadGeneratorProcess(
+                Integer.parseInt(argumentMap.getOrDefault("rate", Integer.toString(DEFAULT_RATE))),
+                Integer.parseInt(argumentMap.getOrDefault("duration", Integer.toString(DEFAULT_DURATION))),
+                Integer.parseInt(argumentMap.getOrDefault("clients", Integer.toString(DEFAULT_CLIENTS))),
+                Integer.parseInt(argumentMap.getOrDefault("threads", Integer.toString(DEFAULT_THREADS))),
+                Integer.parseInt(argumentMap.getOrDefault("inflight", Integer.toString(DEFAULT_MAX_IN_FLIGHT))),
+                mixWeightMap,
+                targetUriMap);
+
+        loadGenerator.run();
+        loadGenerator.printReport();
+        loadGenerator.shutdown();
+
+        System.exit(0);
+    }
+
+    /**
+     * Send the requests for the configured duration, then wait for the last responses
+     */
+    public void run() throws InterruptedException {
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / this.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(this.durationSeconds);
+
+        System.out.printf("Load started: %d req/s for %ds ...%n", this.rate, this.durationSeconds);
+
+        List<Thread> dispatcherThreadList = new ArrayList<>();
+
+        for (int t = 0; t < this.threads; t++) {
+            int firstSequence = t;
+            Thread dispatcherThread = new Thread(() -> dispatch(firstSequence, start, end, intervalNanos), String.format("load-dispatcher-%d", t));
+            dispatcherThreadList.add(dispatcherThread);
+            dispatcherThread.start();
+        }
+
+        for (Thread dispatcherThread : dispatcherThreadList)
+            dispatcherThread.join();
+
+        if (!this.inFlight.tryAcquire(this.maxInFlight, DRAIN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+
+            //The requests without a response are recorded at the cutoff and cancelled
+            long cutoff = System.nanoTime();
+            int pending = 0;
+
+            for (OutstandingRequest outstandingRequest : this.outstandingRequestSet) {
+                if (outstandingRequest.finish()) {
+                    outstandingRequest.operationStats.recordPending(cutoff - outstandingRequest.intendedTime, cutoff - outstandingRequest.sendTime);
+                    this.totalStats.recordPending(cutoff - outstandingRequest.intendedTime, cutoff - outstandingRequest.sendTime);
+                    outstandingRequest.request.cancel();
+                    pending++;
+                }
+            }
+
+            logger.warn("{} requests still waiting for a response after {}ms", pending, DRAIN_TIMEOUT);
+        } else
+            this.inFlight.release(this.maxInFlight);
+
+        this.elapsedNanos = System.nanoTime() - start;
+    }
+
+    //Each dispatcher sends the sequence numbers firstSequence, firstSequence + threads ... at their intended time
+    private void dispatch(long firstSequence, long start, long end, long intervalNanos) {
+
+        for (long sequence = firstSequence; ; sequence += this.threads) {
+
+            long intendedTime = start + sequence * intervalNanos;
+            if (intendedTime >= end)
+                return;
+
+            long wait;
+            while ((wait = intendedTime - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+
+            //The wait for a free slot delays the send, not the intended time
+            this.inFlight.acquireUninterruptibly();
+
+            send(sequence, intendedTime);
+        }
+    }
+
+    private void send(long sequence, long intendedTime) {
+
+        LoadOperation operation = nextOperation();
+        OperationStats operationStats = this.operationStatsMap.get(operation);
+
+        Request request = operation.newRequest(this.targetUriMap.get(operation), sequence);
+        CoapClient coapClient = this.clientEndpointPool.getClient((int) sequence);
+
+        operationStats.sent.incrementAndGet();
+        this.totalStats.sent.incrementAndGet();
+
+        OutstandingRequest outstandingRequest = new OutstandingRequest(operationStats, request, intendedTime, System.nanoTime());
+        this.outstandingRequestSet.add(outstandingRequest);
+
+        if (operation == LoadOperation.OBSERVE) {
+
+            AtomicBoolean registered = new AtomicBoolean(false);
+
+            CoapObserveRelation relation = coapClient.observe(request, new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse coapResponse) {
+                    if (registered.compareAndSet(false, true))
+                        complete(outstandingRequest, coapResponse);
+                    else {
+                        operationStats.notifications.incrementAndGet();
+                        totalStats.notifications.incrementAndGet();
+                    }
+                }
+
+                @Override
+                public void onError() {
+                    if (registered.compareAndSet(false, true))
+                        fail(outstandingRequest);
+                }
+            });
+
+            if (relation != null)
+                this.observeRelationQueue.add(relation);
+
+        } else {
+            coapClient.advanced(new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse coapResponse) {
+                    complete(outstandingRequest, coapResponse);
+                }
+
+                @Override
+                public void onError() {
+                    fail(outstandingRequest);
+                }
+            }, request);
+        }
+    }
+
+    private LoadOperation nextOperation() {
+
+        int weight = ThreadLocalRandom.current().nextInt(this.mixCumulativeWeights[this.mixCumulativeWeights.length - 1]);
+
+        for (int i = 0; i < this.mixCumulativeWeights.length; i++)
+            if (weight < this.mixCumulativeWeights[i])
+                return this.mixOperations[i];
+
+        return this.mixOperations[this.mixOperations.length - 1];
+    }
+
+    //Runs on the protocol thread of the client endpoint
+    private void complete(OutstandingRequest outstandingRequest, CoapResponse coapResponse) {
+
+        //Already recorded at the cutoff
+        if (!outstandingRequest.finish())
+            return;
+
+        this.outstandingRequestSet.remove(outstandingRequest);
+
+        long now = System.nanoTime();
+        long latencyNanos = now - outstandingRequest.intendedTime;
+        long serviceTimeNanos = now - outstandingRequest.sendTime;
+
+        if (coapResponse.isSuccess()) {
+            outstandingRequest.operationStats.recordSuccess(latencyNanos, serviceTimeNanos);
+            this.totalStats.recordSuccess(latencyNanos, serviceTimeNanos);
+        } else {
+            outstandingRequest.operationStats.recordErrorResponse(latencyNanos, serviceTimeNanos);
+            this.totalStats.recordErrorResponse(latencyNanos, serviceTimeNanos);
+        }
+
+        this.inFlight.release();
+    }
+
+    //A failure (E.g. a timeout after the retransmissions) is known when it is notified: its latency is the time until then
+    private void fail(OutstandingRequest outstandingRequest) {
+
+        if (!outstandingRequest.finish())
+            return;
+
+        this.outstandingRequestSet.remove(outstandingRequest);
+
+        long now = System.nanoTime();
+        outstandingRequest.operationStats.recordFailure(now - outstandingRequest.intendedTime, now - outstandingRequest.sendTime);
+        this.totalStats.recordFailure(now - outstandingRequest.intendedTime, now - outstandingRequest.sendTime);
+
+        this.inFlight.release();
+    }
+
+    public void printReport() {
+
+        System.out.printf("rate=%d req/s duration=%ds (elapsed %.1fs) clients=%d threads=%d inflight=%d%n",
+                this.rate, this.durationSeconds, this.elapsedNanos / 1e9, this.clientEndpointPool.size(), this.threads, this.maxInFlight);
+        System.out.println("latency from the intended send time (coordinated omission corrected), service time from the actual send, ms");
+        System.out.println("every request is in the latency: errors and failures when they are known, pending ones at the drain cutoff");
+
+        StringBuilder header = new StringBuilder(String.format("%-8s %9s %9s %7s %7s %7s %9s", "op", "sent", "ok", "errors", "failed", "pending", "ok/s"));
+        for (double percentile : PERCENTILES)
+            header.append(String.format(" %9s", "p" + formatPercentile(percentile)));
+        header.append(String.format(" %9s %9s %9s %9s", "max", "svc p50", "svc p99", "notif"));
+        System.out.println(header);
+
+        this.operationStatsMap.forEach((operation, operationStats) -> System.out.println(formatStats(operation.getKey(), operationStats)));
+        System.out.println(formatStats("total", this.totalStats));
+    }
+
+    private String formatStats(String label, OperationStats operationStats) {
+
+        LatencyHistogram latency = operationStats.latency;
+        LatencyHistogram serviceTime = operationStats.serviceTime;
+
+        StringBuilder line = new StringBuilder(String.format("%-8s %9d %9d %7d %7d %7d %9.1f", label,
+                operationStats.sent.get(), operationStats.successes.get(), operationStats.errorResponses.get(),
+                operationStats.failures.get(), operationStats.pending.get(),
+                operationStats.successes.get() / (this.elapsedNanos / 1e9)));
+
+        for (double percentile : PERCENTILES)
+            line.append(String.format(" %9.3f", latency.getPercentileMicros(percentile) / 1000.0));
+
+        line.append(String.format(" %9.3f %9.3f %9.3f %9d", latency.getMaxMicros() / 1000.0,
+                serviceTime.getPercentileMicros(50) / 1000.0, serviceTime.getPercentileMicros(99) / 1000.0,
+                operationStats.notifications.get()));
+
+        return line.toString();
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? Integer.toString((int) percentile) : Double.toString(percentile);
+    }
+
+    public void shutdown() {
+
+        //The server stops notifying the cancelled relations
+        this.observeRelationQueue.forEach(CoapObserveRelation::proactiveCancel);
+
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.clientEndpointPool.destroy();
+    }
+
+    /**
+     * A request sent and waiting for its outcome: the first of response, failure or drain cutoff records it
+     */
+    private static class OutstandingRequest {
+
+        private final OperationStats operationStats;
+
+        private final Request request;
+
+        private final long intendedTime;
+
+        private final long sendTime;
+
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private OutstandingRequest(OperationStats operationStats, Request request, long intendedTime, long sendTime) {
+            this.operationStats = operationStats;
+            this.request = request;
+            this.intendedTime = intendedTime;
+            this.sendTime = sendTime;
+        }
+
+        //@return true for the first outcome only
+        private boolean finish() {
+            return this.finished.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * The counters and histograms of an operation
+     */
+    private static class OperationStats {
+
+        private final AtomicLong sent = new AtomicLong();
+
+        private final AtomicLong successes = new AtomicLong();
+
+        private final AtomicLong errorResponses = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong pending = new AtomicLong();
+
+        private final AtomicLong notifications = new AtomicLong();
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+        private void recordSuccess(long latencyNanos, long serviceTimeNanos) {
+            this.successes.incrementAndGet();
+            record(latencyNanos, serviceTimeNanos);
+        }
+
+        private void recordErrorResponse(long latencyNanos, long serviceTimeNanos) {
+            this.errorResponses.incrementAndGet();
+            record(latencyNanos, serviceTimeNanos);
+        }
+
+        private void recordFailure(long latencyNanos, long serviceTimeNanos) {
+            this.failures.incrementAndGet();
+            record(latencyNanos, serviceTimeNanos);
+        }
+
+        private void recordPending(long latencyNanos, long serviceTimeNanos) {
+            this.pending.incrementAndGet();
+            record(latencyNanos, serviceTimeNanos);
+        }
+
+        private void record(long latencyNanos, long serviceTimeNanos) {
+            this.latency.recordNanos(latencyNanos);
+            this.serviceTime.recordNanos(serviceTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package it.unimore.dipi.iot.client.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in microseconds, safe to record from many threads without locks.
+ * The values below 128us are counted exactly, above each power of two is split in 64 buckets:
+ * a percentile is reported with an error below 1.6% (the upper bound of its bucket).
+ * The values above about 19 hours are counted in the last bucket, the max is always exact.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 03:20
+ * @project coap-smart-building
+ */
+
+public class LatencyHistogram {
+
+    private static final int LINEAR_BITS = 7; //0-127us counted exactly
+
+    private static final int LINEAR_BUCKETS = 1 << LINEAR_BITS;
+
+    private static final int SUB_BUCKETS = LINEAR_BUCKETS / 2; //64 buckets for each power of two
+
+    private static final int MAX_SHIFT = 30; //2^36us, about 19 hours
+
+    private static final int BUCKETS = LINEAR_BUCKETS + MAX_SHIFT * SUB_BUCKETS;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    public void record(long micros) {
+        this.bucketCounts.incrementAndGet(indexOf(micros));
+        this.count.incrementAndGet();
+        this.totalMicros.addAndGet(micros);
+        this.maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long currentCount = this.count.get();
+        return currentCount == 0 ? 0 : this.totalMicros.get() / (double) currentCount;
+    }
+
+    /**
+     * @param percentile E.g. 99.9
+     * @return the upper bound of the bucket of the percentile (never above the max), 0 if there are no values
+     */
+    public long getPercentileMicros(double percentile) {
+
+        long currentCount = this.count.get();
+        if (currentCount == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * currentCount));
+        long cumulative = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += this.bucketCounts.get(i);
+            if (cumulative >= target)
+                return Math.min(highestValueOf(i), this.maxMicros.get());
+        }
+
+        return this.maxMicros.get();
+    }
+
+    private static int indexOf(long micros) {
+
+        if (micros < LINEAR_BUCKETS)
+            return (int) micros;
+
+        //The shift keeps the 7 most significant bits: the value becomes 64..127
+        int shift = (63 - Long.numberOfLeadingZeros(micros)) - (LINEAR_BITS - 1);
+
+        if (shift > MAX_SHIFT)
+            return BUCKETS - 1;
+
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((micros >> shift) - SUB_BUCKETS);
+    }
+
+    private static long highestValueOf(int index) {
+
+        if (index < LINEAR_BUCKETS)
+            return index;
+
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("LatencyHistogram{");
+        sb.append("count=").append(count);
+        sb.append(", meanMicros=").append(getMeanMicros());
+        sb.append(", maxMicros=").append(maxMicros);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package it.unimore.dipi.iot.client.load;
+
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.OptionSet;
+import org.eclipse.californium.core.coap.Request;
+
+/**
+ * The requests of the load generator, the same ones sent by the one-shot client processes:
+ * - GET: text value of a sensor (CoapGetClientProcess)
+ * - SENML_GET: SenML+JSON value of a sensor (CoapGetSenmlClientProcess)
+ * - PUT: switch state, alternately true and false (CoapPutClientProcess)
+ * - POST: switch toggle without payload (CoapPostClientProcess)
+ * - OBSERVE: observe registration of a sensor (CoapObservingClientProcess)
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 03:10
+ * @project coap-smart-building
+ */
+
+public enum LoadOperation {
+
+    GET("get", "coap://192.168.43.172:5783/water-provider/H2O"),
+    SENML_GET("senml", "coap://192.168.43.172:5783/water-provider/H2O"),
+    PUT("put", "coap://192.168.43.172:5783/energy-provider/switch"),
+    POST("post", "coap://192.168.43.172:5783/gas-provider/switch"),
+    OBSERVE("observe", "coap://192.168.43.172:5783/energy-provider/EN");
+
+    private final String key;
+
+    private final String defaultTargetUri;
+
+    LoadOperation(String key, String defaultTargetUri) {
+        this.key = key;
+        this.defaultTargetUri = defaultTargetUri;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDefaultTargetUri() {
+        return defaultTargetUri;
+    }
+
+    /**
+     * @param key E.g. "senml"
+     * @return the operation of the key
+     */
+    public static LoadOperation fromKey(String key) {
+        for (LoadOperation operation : values())
+            if (operation.key.equalsIgnoreCase(key))
+                return operation;
+
+        throw new IllegalArgumentException(String.format("Unknown operation: %s", key));
+    }
+
+    /**
+     * @param targetUri the target resource
+     * @param sequence  the number of the request, E.g. it alternates the switch state of the PUT
+     * @return a new confirmable request
+     */
+    public Request newRequest(String targetUri, long sequence) {
+
+        Request request;
+
+        switch (this) {
+            case SENML_GET:
+                request = Request.newGet();
+                request.setOptions(new OptionSet().setAccept(MediaTypeRegistry.APPLICATION_SENML_JSON));
+                break;
+            case PUT:
+                request = Request.newPut();
+                request.setPayload(Boolean.toString(sequence % 2 == 0));
+                break;
+            case POST:
+                request = Request.newPost();
+                break;
+            case OBSERVE:
+                request = Request.newGet().setObserve();
+                break;
+            default:
+                request = Request.newGet();
+        }
+
+        request.setURI(targetUri);
+        request.setConfirmable(true);
+
+        return request;
+    }
+}
@@ -0,0 +1,82 @@
+package it.unimore.dipi.iot.rd;
+
+import it.unimore.dipi.iot.rd.coap.CoapRdLookupResource;
+import it.unimore.dipi.iot.rd.coap.CoapRdResource;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process CoAP Resource Directory, in order to run (and load-test) the smart building without an external RD.
+ * - POST /rd?ep=..&d=..&lt=..&base=.. registers an endpoint, /rd/{id} refreshes (POST) or removes (DELETE) it
+ * - GET /rd-lookup/ep and /rd-lookup/res look up endpoints and resources by "ep", "d", "rt" and "if", paged by "page" and "count".
+ * The lookups are observable, with "delta" the notifications carry only the added and removed links
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 21:50
+ * @project coap-smart-building
+ */
+
+public class CoapResourceDirectoryProcess extends CoapServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapResourceDirectoryProcess.class);
+
+    private static final int RD_COAP_PORT = 5683;
+
+    //Registration expiries and lookup notifications: 100ms precision, 1024 slots (~102s per rotation)
+    private static final long RD_TIMER_WHEEL_TICK_MILLIS = 100;
+
+    private static final int RD_TIMER_WHEEL_SIZE = 1024;
+
+    private final HashedTimerWheel rdTimerWheel = new HashedTimerWheel("rd-timer-wheel", RD_TIMER_WHEEL_TICK_MILLIS, RD_TIMER_WHEEL_SIZE);
+
+    private final RdRegistry rdRegistry = new RdRegistry(this.rdTimerWheel);
+
+    //The lookup notifications are computed off the wheel thread
+    private final ExecutorService notificationExecutor = Executors.newSingleThreadExecutor();
+
+
+    public CoapResourceDirectoryProcess(int port) {
+        super(port);
+
+        CoapResource lookupResource = new CoapResource("rd-lookup");
+        lookupResource.add(new CoapRdLookupResource(CoapRdLookupResource.LookupType.ENDPOINT, this.rdRegistry, this.rdTimerWheel, this.notificationExecutor));
+        lookupResource.add(new CoapRdLookupResource(CoapRdLookupResource.LookupType.RESOURCE, this.rdRegistry, this.rdTimerWheel, this.notificationExecutor));
+
+        this.add(new CoapRdResource("rd", this.rdRegistry));
+        this.add(lookupResource);
+    }
+
+    public RdRegistry getRdRegistry() {
+        return rdRegistry;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        this.rdTimerWheel.stop();
+        this.notificationExecutor.shutdown();
+    }
+
+    public static void main(String[] args) {
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : RD_COAP_PORT;
+
+        CoapResourceDirectoryProcess resourceDirectoryProcess = new CoapResourceDirectoryProcess(port);
+        resourceDirectoryProcess.start();
+
+        logger.info("Coap Resource Directory Started on port {} ! Available resources: ", port);
+
+        resourceDirectoryProcess.getRoot().getChildren().stream().forEach(resource -> {
+            logger.info("Resource {} -> URI: {}", resource.getName(), resource.getURI());
+            resource.getChildren().stream().forEach(childResource -> {
+                logger.info("\t Resource {} -> URI: {}", childResource.getName(), childResource.getURI());
+            });
+        });
+    }
+}
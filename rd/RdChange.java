@@ -0,0 +1,49 @@
+package it.unimore.dipi.iot.rd;
+
+/**
+ * A change of the Resource Directory, recorded in the change journal of the {@link RdRegistry}.
+ * - a registration: no previous registration
+ * - an update (base, lifetime or links): both the previous and the current registration
+ * - a removal or an expiry: no current registration
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 22:40
+ * @project coap-smart-building
+ */
+
+public class RdChange {
+
+    private final long version;
+
+    private final RdRegistration previousRegistration;
+
+    private final RdRegistration currentRegistration;
+
+    public RdChange(long version, RdRegistration previousRegistration, RdRegistration currentRegistration) {
+        this.version = version;
+        this.previousRegistration = previousRegistration;
+        this.currentRegistration = currentRegistration;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public RdRegistration getPreviousRegistration() {
+        return previousRegistration;
+    }
+
+    public RdRegistration getCurrentRegistration() {
+        return currentRegistration;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("RdChange{");
+        sb.append("version=").append(version);
+        sb.append(", previousRegistration=").append(previousRegistration);
+        sb.append(", currentRegistration=").append(currentRegistration);
+        sb.append('}');
+        return sb.toString();
+    }
+}
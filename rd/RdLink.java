@@ -0,0 +1,114 @@
+package it.unimore.dipi.iot.rd;
+
+import it.unimore.dipi.iot.utils.LinkFormatParser;
+import org.eclipse.californium.core.coap.LinkFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A link registered by an endpoint, E.g. </water-provider/H2O>;rt="iot.sensor.water";if="core.s";obs
+ * The URI is relative to the base of the registration. The link is immutable once created.
+ * In an incremental update a link flagged with "rm" (E.g. </gas>;rm) removes the registered link with the same URI.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 20:40
+ * @project coap-smart-building
+ */
+
+public class RdLink {
+
+    //Flag of an incremental update: the link with this URI has to be removed
+    public static final String REMOVE_ATTRIBUTE = "rm";
+
+    private final String uri;
+
+    //Attribute name -> values (empty for flags, E.g. "obs"), sorted by name as in the Californium serialization
+    private final Map<String, List<String>> attributeMap;
+
+    public RdLink(String uri, Map<String, List<String>> attributeMap) {
+        this.uri = uri;
+
+        Map<String, List<String>> attributes = new TreeMap<>();
+        attributeMap.forEach((name, values) -> attributes.put(name, Collections.unmodifiableList(new ArrayList<>(values))));
+        this.attributeMap = Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @param linkFormat a CoRE Link-Format document, E.g. the payload of a registration
+     * @return the links of the document
+     */
+    public static List<RdLink> parse(String linkFormat) {
+        List<RdLink> links = new ArrayList<>();
+        LinkFormatParser.parse(linkFormat, link -> links.add(fromLink(link)));
+        return links;
+    }
+
+    /**
+     * @param linkFormat a CoRE Link-Format document encoded in UTF-8, E.g. the payload of a registration request
+     * @return the links of the document
+     */
+    public static List<RdLink> parse(byte[] linkFormat) {
+        List<RdLink> links = new ArrayList<>();
+        LinkFormatParser.parse(linkFormat, link -> links.add(fromLink(link)));
+        return links;
+    }
+
+    public static RdLink fromLink(LinkFormatParser.Link link) {
+
+        Map<String, List<String>> attributeMap = new TreeMap<>();
+
+        for (int i = 0; i < link.getAttributeCount(); i++) {
+            List<String> values = attributeMap.computeIfAbsent(link.getAttributeName(i), name -> new ArrayList<>(1));
+
+            //Flags have no value
+            if (link.getAttributeValue(i) != null)
+                values.add(link.getAttributeValue(i));
+        }
+
+        return new RdLink(link.getUri(), attributeMap);
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public Map<String, List<String>> getAttributeMap() {
+        return attributeMap;
+    }
+
+    public List<String> getAttributeValues(String name) {
+        return attributeMap.getOrDefault(name, Collections.emptyList());
+    }
+
+    public boolean isRemoval() {
+        return attributeMap.containsKey(REMOVE_ATTRIBUTE);
+    }
+
+    public boolean hasAttributeValue(String name, String value) {
+        return getAttributeValues(name).contains(value);
+    }
+
+    /**
+     * Append the link in the CoRE Link-Format, E.g. <coap://192.168.1.2:5683/gas>;rt="iot.sensor.gas"
+     *
+     * @param buffer the target buffer
+     * @param base   the prefix of the URI (the registration base), or an empty string
+     */
+    public void serialize(StringBuilder buffer, String base) {
+        buffer.append('<').append(base).append(uri).append('>');
+        attributeMap.forEach((name, values) -> buffer.append(';').append(LinkFormat.serializeAttribute(name, values)));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("RdLink{");
+        sb.append("uri='").append(uri).append('\'');
+        sb.append(", attributeMap=").append(attributeMap);
+        sb.append('}');
+        return sb.toString();
+    }
+}
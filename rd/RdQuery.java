@@ -0,0 +1,160 @@
+package it.unimore.dipi.iot.rd;
+
+import java.util.List;
+
+/**
+ * Filters and paging of a Resource Directory lookup, E.g. /rd-lookup/res?d=firstFloor&rt=iot.sensor.gas&page=0&count=50
+ * A null filter matches everything. Without "count" every match is returned.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 20:50
+ * @project coap-smart-building
+ */
+
+public class RdQuery {
+
+    public static final String ENDPOINT_PARAMETER = "ep";
+
+    public static final String SECTOR_PARAMETER = "d";
+
+    public static final String RESOURCE_TYPE_PARAMETER = "rt";
+
+    public static final String INTERFACE_PARAMETER = "if";
+
+    public static final String PAGE_PARAMETER = "page";
+
+    public static final String COUNT_PARAMETER = "count";
+
+    private String endpointName;
+
+    private String sector;
+
+    private String resourceType;
+
+    private String interfaceDescription;
+
+    private int page = 0;
+
+    private int count = Integer.MAX_VALUE;
+
+    public RdQuery() {
+    }
+
+    /**
+     * @param uriQuery the query options of the request, E.g. ["d=firstFloor", "count=10"]
+     * @return the parsed query
+     * @throws IllegalArgumentException if page or count are not valid
+     */
+    public static RdQuery parse(List<String> uriQuery) {
+
+        RdQuery rdQuery = new RdQuery();
+
+        for (String parameter : uriQuery) {
+
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+
+            switch (name) {
+                case ENDPOINT_PARAMETER:
+                    rdQuery.setEndpointName(value);
+                    break;
+                case SECTOR_PARAMETER:
+                    rdQuery.setSector(value);
+                    break;
+                case RESOURCE_TYPE_PARAMETER:
+                    rdQuery.setResourceType(value);
+                    break;
+                case INTERFACE_PARAMETER:
+                    rdQuery.setInterfaceDescription(value);
+                    break;
+                case PAGE_PARAMETER:
+                    rdQuery.setPage(Integer.parseInt(value));
+                    break;
+                case COUNT_PARAMETER:
+                    rdQuery.setCount(Integer.parseInt(value));
+                    break;
+                default:
+                    //Other attributes are not indexed and they are ignored
+                    break;
+            }
+        }
+
+        if (rdQuery.getPage() < 0 || rdQuery.getCount() < 0)
+            throw new IllegalArgumentException("page and count must not be negative");
+
+        return rdQuery;
+    }
+
+    public boolean hasResourceFilter() {
+        return resourceType != null || interfaceDescription != null;
+    }
+
+    /**
+     * @return the number of matches to skip before the requested page
+     */
+    public long getOffset() {
+        return count == Integer.MAX_VALUE ? 0 : (long) page * count;
+    }
+
+    public String getEndpointName() {
+        return endpointName;
+    }
+
+    public void setEndpointName(String endpointName) {
+        this.endpointName = endpointName;
+    }
+
+    public String getSector() {
+        return sector;
+    }
+
+    public void setSector(String sector) {
+        this.sector = sector;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public void setResourceType(String resourceType) {
+        this.resourceType = resourceType;
+    }
+
+    public String getInterfaceDescription() {
+        return interfaceDescription;
+    }
+
+    public void setInterfaceDescription(String interfaceDescription) {
+        this.interfaceDescription = interfaceDescription;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("RdQuery{");
+        sb.append("endpointName='").append(endpointName).append('\'');
+        sb.append(", sector='").append(sector).append('\'');
+        sb.append(", resourceType='").append(resourceType).append('\'');
+        sb.append(", interfaceDescription='").append(interfaceDescription).append('\'');
+        sb.append(", page=").append(page);
+        sb.append(", count=").append(count);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package it.unimore.dipi.iot.rd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A registration of the Resource Directory: the endpoint name "ep", its sector "d", its base URI,
+ * its lifetime "lt" (seconds) and its links. It is exposed by the RD as /rd/{id}.
+ *
+ * The registration is immutable: an update creates a new instance with the same id and sequence,
+ * so a lookup always sees either the old or the new registration, never a mix of them.
+ * The sequence is the registration order, lookups are sorted by it in order to page consistently.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 20:45
+ * @project coap-smart-building
+ */
+
+public class RdRegistration {
+
+    private final String id;
+
+    private final long sequence;
+
+    private final String endpointName;
+
+    private final String sector;
+
+    private final String base;
+
+    private final long lifetime;
+
+    private final List<RdLink> links;
+
+    public RdRegistration(String id, long sequence, String endpointName, String sector, String base, long lifetime, List<RdLink> links) {
+        this.id = id;
+        this.sequence = sequence;
+        this.endpointName = endpointName;
+        this.sector = sector;
+        this.base = base;
+        this.lifetime = lifetime;
+        this.links = Collections.unmodifiableList(new ArrayList<>(links));
+    }
+
+    public RdRegistration update(String base, long lifetime, List<RdLink> links) {
+        return new RdRegistration(this.id, this.sequence, this.endpointName, this.sector, base, lifetime, links);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getEndpointName() {
+        return endpointName;
+    }
+
+    public String getSector() {
+        return sector;
+    }
+
+    public String getBase() {
+        return base;
+    }
+
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    public List<RdLink> getLinks() {
+        return links;
+    }
+
+    public String getKey() {
+        return getKey(this.endpointName, this.sector);
+    }
+
+    /**
+     * @return the unique key of an endpoint: the same "ep" in the same "d" is the same registration
+     */
+    public static String getKey(String endpointName, String sector) {
+        //NUL is not a valid endpoint name character, so different (ep, d) pairs never share the key
+        return sector == null ? endpointName : endpointName + '\u0000' + sector;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("RdRegistration{");
+        sb.append("id='").append(id).append('\'');
+        sb.append(", sequence=").append(sequence);
+        sb.append(", endpointName='").append(endpointName).append('\'');
+        sb.append(", sector='").append(sector).append('\'');
+        sb.append(", base='").append(base).append('\'');
+        sb.append(", lifetime=").append(lifetime);
+        sb.append(", links=").append(links.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,647 @@
+package it.unimore.dipi.iot.rd;
+
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The registrations of the Resource Directory, indexed by endpoint name "ep", sector "d",
+ * resource type "rt" and interface "if" of their links.
+ * A lookup starts from the smallest index matching its filters (a hash lookup) and checks the remaining filters
+ * on those candidates only, instead of scanning every registration.
+ *
+ * Every index entry is sorted by registration sequence, so the pages of a lookup are stable while
+ * the other registrations come and go.
+ * Writes (registration, update, removal, expiry) are serialized, lookups never lock.
+ *
+ * A registration expires after its lifetime unless it is refreshed: the expirations run on a timer wheel,
+ * a refresh just moves the deadline.
+ *
+ * Every change (registration, update, removal, expiry) gets a version and it is kept in a bounded journal:
+ * the observers of a lookup ask for the delta since the version they have already received.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 21:00
+ * @project coap-smart-building
+ */
+
+public class RdRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RdRegistry.class);
+
+    public static final long DEFAULT_LIFETIME = 90000; //25h in seconds (RFC 9176)
+
+    private static final String RESOURCE_TYPE_ATTRIBUTE = "rt";
+
+    private static final String INTERFACE_ATTRIBUTE = "if";
+
+    //Version returned by a change lookup when the requested changes are no longer in the journal
+    public static final long CHANGES_LOST = -1;
+
+    private static final int JOURNAL_SIZE = 8192;
+
+    private final HashedTimerWheel expiryTimerWheel;
+
+    private final Map<String, RdRegistration> registrationMap = new ConcurrentHashMap<>();
+
+    private final Map<String, HashedTimerWheel.Deadline> expiryMap = new ConcurrentHashMap<>();
+
+    //Registration key (ep and d) -> registration id
+    private final Map<String, String> registrationKeyMap = new ConcurrentHashMap<>();
+
+    //Sequence -> registration: the unfiltered lookup order
+    private final ConcurrentNavigableMap<Long, RdRegistration> sequenceMap = new ConcurrentSkipListMap<>();
+
+    private final Map<String, IndexEntry> endpointIndex = new ConcurrentHashMap<>();
+
+    private final Map<String, IndexEntry> sectorIndex = new ConcurrentHashMap<>();
+
+    private final Map<String, IndexEntry> resourceTypeIndex = new ConcurrentHashMap<>();
+
+    private final Map<String, IndexEntry> interfaceIndex = new ConcurrentHashMap<>();
+
+    //Version -> change: the most recent changes, for the observers of the lookups
+    private final ConcurrentNavigableMap<Long, RdChange> changeJournal = new ConcurrentSkipListMap<>();
+
+    private final List<Runnable> changeListenerList = new CopyOnWriteArrayList<>();
+
+    //Written under the lock, after the change has been added to the journal
+    private volatile long version = 0;
+
+    //Guarded by this
+    private long lastSequence = 0;
+
+    private int journalSize = 0;
+
+    /**
+     * @param expiryTimerWheel the wheel expiring the registrations
+     */
+    public RdRegistry(HashedTimerWheel expiryTimerWheel) {
+        this.expiryTimerWheel = expiryTimerWheel;
+    }
+
+    /**
+     * Register an endpoint. The same endpoint name in the same sector replaces the previous registration
+     * (it keeps its id, so its /rd/{id} location does not change).
+     *
+     * @param lifetime the lifetime in seconds
+     * @return the registration
+     */
+    public synchronized RdRegistration register(String endpointName, String sector, String base, long lifetime, List<RdLink> links) {
+
+        String registrationId = this.registrationKeyMap.get(RdRegistration.getKey(endpointName, sector));
+
+        if (registrationId != null)
+            return update(registrationId, base, lifetime, links);
+
+        long sequence = ++this.lastSequence;
+        RdRegistration registration = new RdRegistration(Long.toString(sequence, 36), sequence, endpointName, sector, base, lifetime, links);
+
+        this.registrationMap.put(registration.getId(), registration);
+        this.registrationKeyMap.put(registration.getKey(), registration.getId());
+        this.sequenceMap.put(sequence, registration);
+        index(registration);
+
+        HashedTimerWheel.Deadline expiryDeadline = this.expiryTimerWheel.newDeadline(() -> expire(registration.getId()));
+        this.expiryMap.put(registration.getId(), expiryDeadline);
+        expiryDeadline.schedule(lifetime * 1000);
+
+        recordChange(null, registration);
+
+        logger.debug("Registered {}", registration);
+
+        return registration;
+    }
+
+    /**
+     * Refresh a registration: the lifetime starts again.
+     *
+     * @param base     the new base, or null to keep the current one
+     * @param lifetime the new lifetime in seconds, or a non positive value to keep the current one
+     * @param links    the new links, or null to keep the current ones
+     * @return the updated registration, or null if the registration does not exist (E.g. it has expired)
+     */
+    public synchronized RdRegistration update(String registrationId, String base, long lifetime, List<RdLink> links) {
+
+        RdRegistration currentRegistration = this.registrationMap.get(registrationId);
+
+        if (currentRegistration == null)
+            return null;
+
+        RdRegistration registration = currentRegistration.update(
+                base != null ? base : currentRegistration.getBase(),
+                lifetime > 0 ? lifetime : currentRegistration.getLifetime(),
+                links != null ? links : currentRegistration.getLinks());
+
+        unindex(currentRegistration, registration);
+        this.registrationMap.put(registrationId, registration);
+        this.sequenceMap.put(registration.getSequence(), registration);
+        index(registration);
+
+        this.expiryMap.get(registrationId).schedule(registration.getLifetime() * 1000);
+
+        //A plain refresh does not change what the lookups return
+        if (links != null
+                || !registration.getBase().equals(currentRegistration.getBase())
+                || registration.getLifetime() != currentRegistration.getLifetime())
+            recordChange(currentRegistration, registration);
+
+        logger.debug("Updated {}", registration);
+
+        return registration;
+    }
+
+    /**
+     * Incremental update of the links of a registration, the lifetime starts again.
+     * A link replaces the registered link with the same URI (or it is appended),
+     * a link flagged with "rm" removes it.
+     *
+     * @return the updated registration, or null if the registration does not exist
+     */
+    public synchronized RdRegistration patchLinks(String registrationId, List<RdLink> linkChanges) {
+
+        RdRegistration currentRegistration = this.registrationMap.get(registrationId);
+
+        if (currentRegistration == null)
+            return null;
+
+        //URI -> link, in registration order
+        Map<String, RdLink> linkMap = new LinkedHashMap<>();
+        for (RdLink link : currentRegistration.getLinks())
+            linkMap.put(link.getUri(), link);
+
+        for (RdLink link : linkChanges) {
+            if (link.isRemoval())
+                linkMap.remove(link.getUri());
+            else
+                linkMap.put(link.getUri(), link);
+        }
+
+        return update(registrationId, null, 0, new ArrayList<>(linkMap.values()));
+    }
+
+    /**
+     * @return the removed registration, or null if it does not exist
+     */
+    public synchronized RdRegistration remove(String registrationId) {
+
+        RdRegistration registration = this.registrationMap.remove(registrationId);
+
+        if (registration == null)
+            return null;
+
+        this.registrationKeyMap.remove(registration.getKey());
+        this.sequenceMap.remove(registration.getSequence());
+        unindex(registration, null);
+
+        HashedTimerWheel.Deadline expiryDeadline = this.expiryMap.remove(registrationId);
+        if (expiryDeadline != null)
+            expiryDeadline.cancel();
+
+        recordChange(registration, null);
+
+        logger.debug("Removed {}", registration);
+
+        return registration;
+    }
+
+    private synchronized void expire(String registrationId) {
+        HashedTimerWheel.Deadline expiryDeadline = this.expiryMap.get(registrationId);
+
+        //Refreshed while the deadline was firing
+        if (expiryDeadline == null || expiryDeadline.isScheduled())
+            return;
+
+        RdRegistration registration = remove(registrationId);
+        if (registration != null)
+            logger.info("Registration {} of endpoint {} expired after {}s", registrationId, registration.getEndpointName(), registration.getLifetime());
+    }
+
+    public RdRegistration getRegistration(String registrationId) {
+        return this.registrationMap.get(registrationId);
+    }
+
+    public int size() {
+        return this.registrationMap.size();
+    }
+
+    /**
+     * Endpoint lookup: the registrations matching the query (with the resource filters, the registrations
+     * having at least one matching link), in the requested page
+     *
+     * @return the number of registrations passed to the consumer
+     */
+    public int lookupEndpoints(RdQuery query, Consumer<RdRegistration> consumer) {
+
+        long toSkip = query.getOffset();
+        int returned = 0;
+
+        for (RdRegistration registration : getCandidates(query)) {
+
+            if (returned >= query.getCount())
+                break;
+
+            if (!matchesEndpointLookup(registration, query))
+                continue;
+
+            if (toSkip > 0) {
+                toSkip--;
+                continue;
+            }
+
+            consumer.accept(registration);
+            returned++;
+        }
+
+        return returned;
+    }
+
+    /**
+     * Resource lookup: the links matching the query, in the requested page
+     *
+     * @return the number of links passed to the consumer
+     */
+    public int lookupResources(RdQuery query, BiConsumer<RdRegistration, RdLink> consumer) {
+
+        long toSkip = query.getOffset();
+        int returned = 0;
+
+        for (RdRegistration registration : getCandidates(query)) {
+
+            if (!matchesEndpoint(registration, query))
+                continue;
+
+            for (RdLink link : registration.getLinks()) {
+
+                if (returned >= query.getCount())
+                    return returned;
+
+                if (!matchesLink(link, query))
+                    continue;
+
+                if (toSkip > 0) {
+                    toSkip--;
+                    continue;
+                }
+
+                consumer.accept(registration, link);
+                returned++;
+            }
+        }
+
+        return returned;
+    }
+
+    /**
+     * @return the version of the last change
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @param changeListener invoked after every change (under the registry lock: it must not block)
+     */
+    public void addChangeListener(Runnable changeListener) {
+        this.changeListenerList.add(changeListener);
+    }
+
+    public void removeChangeListener(Runnable changeListener) {
+        this.changeListenerList.remove(changeListener);
+    }
+
+    /**
+     * Delta of an endpoint lookup: the endpoints which started matching the query (or whose link changed) and
+     * the endpoints which stopped matching it (removed, expired or moved to another base) after the given version.
+     * Each registration is reported with the state known by the observer (removal) and its latest state (addition):
+     * a registration moved to another base is reported as the removal of the old base and the addition of the new one.
+     *
+     * @return the version the delta is up to, or {@link #CHANGES_LOST} if the changes after fromVersion are no longer available
+     */
+    public long lookupEndpointChanges(RdQuery query, long fromVersion, EndpointChangeConsumer consumer) {
+
+        long toVersion = this.version;
+        Collection<RdChange> changes = getChanges(fromVersion, toVersion);
+
+        if (changes == null)
+            return CHANGES_LOST;
+
+        List<RdRegistration> removedList = new ArrayList<>();
+        List<RdRegistration> addedList = new ArrayList<>();
+
+        for (RdRegistration[] netChange : getNetChanges(changes).values()) {
+
+            RdRegistration known = netChange[0];
+            RdRegistration latest = netChange[1];
+
+            boolean knownMatch = known != null && matchesEndpointLookup(known, query);
+            boolean latestMatch = latest != null && matchesEndpointLookup(latest, query);
+
+            if (knownMatch && latestMatch && hasSameEndpointLink(known, latest))
+                continue;
+
+            //An endpoint still at the same base is only updated (E.g. a new lifetime)
+            if (knownMatch && !(latestMatch && known.getBase().equals(latest.getBase())))
+                removedList.add(known);
+
+            if (latestMatch)
+                addedList.add(latest);
+        }
+
+        removedList.forEach(registration -> consumer.accept(registration, true));
+        addedList.forEach(registration -> consumer.accept(registration, false));
+
+        return toVersion;
+    }
+
+    /**
+     * Delta of a resource lookup: the links which started matching the query (or changed) and
+     * the links which stopped matching it after the given version.
+     * The links of a registration moved to another base are all reported as removed (with the old base) and added again.
+     *
+     * @return the version the delta is up to, or {@link #CHANGES_LOST} if the changes after fromVersion are no longer available
+     */
+    public long lookupResourceChanges(RdQuery query, long fromVersion, ResourceChangeConsumer consumer) {
+
+        long toVersion = this.version;
+        Collection<RdChange> changes = getChanges(fromVersion, toVersion);
+
+        if (changes == null)
+            return CHANGES_LOST;
+
+        List<Map.Entry<RdRegistration, RdLink>> removedList = new ArrayList<>();
+        List<Map.Entry<RdRegistration, RdLink>> addedList = new ArrayList<>();
+
+        for (RdRegistration[] netChange : getNetChanges(changes).values()) {
+
+            RdRegistration known = netChange[0];
+            RdRegistration latest = netChange[1];
+
+            Map<String, RdLink> knownLinkMap = getMatchingLinks(known, query);
+            Map<String, RdLink> latestLinkMap = getMatchingLinks(latest, query);
+
+            boolean sameBase = known != null && latest != null && known.getBase().equals(latest.getBase());
+
+            knownLinkMap.forEach((uri, link) -> {
+                if (!sameBase || !latestLinkMap.containsKey(uri))
+                    removedList.add(new AbstractMap.SimpleImmutableEntry<>(known, link));
+            });
+
+            latestLinkMap.forEach((uri, link) -> {
+                RdLink knownLink = knownLinkMap.get(uri);
+                if (sameBase && knownLink != null && knownLink.getAttributeMap().equals(link.getAttributeMap()))
+                    return;
+
+                addedList.add(new AbstractMap.SimpleImmutableEntry<>(latest, link));
+            });
+        }
+
+        removedList.forEach(entry -> consumer.accept(entry.getKey(), entry.getValue(), true));
+        addedList.forEach(entry -> consumer.accept(entry.getKey(), entry.getValue(), false));
+
+        return toVersion;
+    }
+
+    /**
+     * @return registration id -> {state before the changes (null if created), state after them (null if removed)},
+     * in the order of the first change of each registration
+     */
+    private static Map<String, RdRegistration[]> getNetChanges(Collection<RdChange> changes) {
+
+        Map<String, RdRegistration[]> netChangeMap = new LinkedHashMap<>();
+
+        for (RdChange change : changes) {
+            RdRegistration registration = change.getCurrentRegistration() != null ? change.getCurrentRegistration() : change.getPreviousRegistration();
+            RdRegistration[] netChange = netChangeMap.computeIfAbsent(registration.getId(), id -> new RdRegistration[]{change.getPreviousRegistration(), null});
+            netChange[1] = change.getCurrentRegistration();
+        }
+
+        return netChangeMap;
+    }
+
+    /**
+     * @return the changes in (fromVersion, toVersion], or null if some of them are no longer in the journal
+     */
+    private Collection<RdChange> getChanges(long fromVersion, long toVersion) {
+
+        if (fromVersion >= toVersion)
+            return Collections.emptyList();
+
+        Map.Entry<Long, RdChange> oldestEntry = this.changeJournal.firstEntry();
+
+        if (oldestEntry == null || oldestEntry.getKey() > fromVersion + 1)
+            return null;
+
+        return this.changeJournal.subMap(fromVersion, false, toVersion, true).values();
+    }
+
+    //Guarded by this
+    private void recordChange(RdRegistration previousRegistration, RdRegistration currentRegistration) {
+
+        long changeVersion = this.version + 1;
+        this.changeJournal.put(changeVersion, new RdChange(changeVersion, previousRegistration, currentRegistration));
+        this.version = changeVersion;
+
+        if (++this.journalSize > JOURNAL_SIZE) {
+            this.changeJournal.pollFirstEntry();
+            this.journalSize--;
+        }
+
+        for (Runnable changeListener : this.changeListenerList) {
+            try {
+                changeListener.run();
+            } catch (Exception e) {
+                logger.error("Error notifying the RD change ! Msg: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private static boolean matchesEndpointLookup(RdRegistration registration, RdQuery query) {
+        return matchesEndpoint(registration, query) && (!query.hasResourceFilter() || hasMatchingLink(registration, query));
+    }
+
+    /**
+     * @return true if the endpoint lookup returns the same link for both registrations
+     */
+    private static boolean hasSameEndpointLink(RdRegistration previous, RdRegistration current) {
+        return previous.getBase().equals(current.getBase())
+                && previous.getLifetime() == current.getLifetime()
+                && previous.getEndpointName().equals(current.getEndpointName())
+                && Objects.equals(previous.getSector(), current.getSector());
+    }
+
+    /**
+     * @return URI -> link of the registration links matching the query (none for a null registration)
+     */
+    private static Map<String, RdLink> getMatchingLinks(RdRegistration registration, RdQuery query) {
+
+        if (registration == null || !matchesEndpoint(registration, query))
+            return Collections.emptyMap();
+
+        Map<String, RdLink> linkMap = new LinkedHashMap<>();
+        for (RdLink link : registration.getLinks())
+            if (matchesLink(link, query))
+                linkMap.put(link.getUri(), link);
+        return linkMap;
+    }
+
+    /**
+     * @return the smallest indexed set of registrations that may match the query
+     */
+    private Collection<RdRegistration> getCandidates(RdQuery query) {
+
+        IndexEntry smallestEntry = null;
+
+        String[] values = {query.getEndpointName(), query.getSector(), query.getResourceType(), query.getInterfaceDescription()};
+        List<Map<String, IndexEntry>> indexes = List.of(this.endpointIndex, this.sectorIndex, this.resourceTypeIndex, this.interfaceIndex);
+
+        for (int i = 0; i < values.length; i++) {
+
+            if (values[i] == null)
+                continue;
+
+            IndexEntry indexEntry = indexes.get(i).get(values[i]);
+
+            //Nothing has the requested value
+            if (indexEntry == null)
+                return Collections.emptyList();
+
+            if (smallestEntry == null || indexEntry.size < smallestEntry.size)
+                smallestEntry = indexEntry;
+        }
+
+        return smallestEntry == null ? this.sequenceMap.values() : smallestEntry.registrations.values();
+    }
+
+    private static boolean matchesEndpoint(RdRegistration registration, RdQuery query) {
+        return (query.getEndpointName() == null || query.getEndpointName().equals(registration.getEndpointName()))
+                && (query.getSector() == null || query.getSector().equals(registration.getSector()));
+    }
+
+    private static boolean hasMatchingLink(RdRegistration registration, RdQuery query) {
+        for (RdLink link : registration.getLinks())
+            if (matchesLink(link, query))
+                return true;
+        return false;
+    }
+
+    private static boolean matchesLink(RdLink link, RdQuery query) {
+        return (query.getResourceType() == null || link.hasAttributeValue(RESOURCE_TYPE_ATTRIBUTE, query.getResourceType()))
+                && (query.getInterfaceDescription() == null || link.hasAttributeValue(INTERFACE_ATTRIBUTE, query.getInterfaceDescription()));
+    }
+
+    private void index(RdRegistration registration) {
+        addIndexEntry(this.endpointIndex, registration.getEndpointName(), registration);
+        addIndexEntry(this.sectorIndex, registration.getSector(), registration);
+
+        for (String resourceType : getLinkAttributeValues(registration, RESOURCE_TYPE_ATTRIBUTE))
+            addIndexEntry(this.resourceTypeIndex, resourceType, registration);
+
+        for (String interfaceDescription : getLinkAttributeValues(registration, INTERFACE_ATTRIBUTE))
+            addIndexEntry(this.interfaceIndex, interfaceDescription, registration);
+    }
+
+    /**
+     * Remove the index entries of a registration which are not used by its replacement.
+     * The entries still used are overwritten by {@link #index(RdRegistration)}.
+     *
+     * @param replacement the new version of the registration, or null if it is removed
+     */
+    private void unindex(RdRegistration registration, RdRegistration replacement) {
+        if (replacement == null) {
+            removeIndexEntry(this.endpointIndex, registration.getEndpointName(), registration);
+            removeIndexEntry(this.sectorIndex, registration.getSector(), registration);
+        }
+
+        Set<String> resourceTypes = replacement == null ? Collections.emptySet() : getLinkAttributeValues(replacement, RESOURCE_TYPE_ATTRIBUTE);
+        for (String resourceType : getLinkAttributeValues(registration, RESOURCE_TYPE_ATTRIBUTE))
+            if (!resourceTypes.contains(resourceType))
+                removeIndexEntry(this.resourceTypeIndex, resourceType, registration);
+
+        Set<String> interfaceDescriptions = replacement == null ? Collections.emptySet() : getLinkAttributeValues(replacement, INTERFACE_ATTRIBUTE);
+        for (String interfaceDescription : getLinkAttributeValues(registration, INTERFACE_ATTRIBUTE))
+            if (!interfaceDescriptions.contains(interfaceDescription))
+                removeIndexEntry(this.interfaceIndex, interfaceDescription, registration);
+    }
+
+    private static Set<String> getLinkAttributeValues(RdRegistration registration, String attribute) {
+        Set<String> values = new HashSet<>();
+        for (RdLink link : registration.getLinks())
+            values.addAll(link.getAttributeValues(attribute));
+        return values;
+    }
+
+    private static void addIndexEntry(Map<String, IndexEntry> index, String value, RdRegistration registration) {
+        if (value != null)
+            index.computeIfAbsent(value, key -> new IndexEntry()).put(registration);
+    }
+
+    private static void removeIndexEntry(Map<String, IndexEntry> index, String value, RdRegistration registration) {
+        if (value == null)
+            return;
+
+        IndexEntry indexEntry = index.get(value);
+        if (indexEntry != null) {
+            indexEntry.remove(registration);
+            //Writes are serialized, nobody can add to the entry meanwhile
+            if (indexEntry.size == 0)
+                index.remove(value);
+        }
+    }
+
+    /**
+     * @return the registrations, sorted by sequence
+     */
+    public List<RdRegistration> getRegistrations() {
+        return new ArrayList<>(this.sequenceMap.values());
+    }
+
+    public interface EndpointChangeConsumer {
+
+        void accept(RdRegistration registration, boolean removed);
+    }
+
+    public interface ResourceChangeConsumer {
+
+        void accept(RdRegistration registration, RdLink link, boolean removed);
+    }
+
+    /**
+     * The registrations having an indexed value. The size of a skip list is not constant time,
+     * so it is tracked apart in order to choose the smallest entry of a lookup.
+     */
+    private static class IndexEntry {
+
+        private final ConcurrentNavigableMap<Long, RdRegistration> registrations = new ConcurrentSkipListMap<>();
+
+        //Written under the registry lock
+        private volatile int size = 0;
+
+        private void put(RdRegistration registration) {
+            if (this.registrations.put(registration.getSequence(), registration) == null)
+                this.size++;
+        }
+
+        private void remove(RdRegistration registration) {
+            if (this.registrations.remove(registration.getSequence()) != null)
+                this.size--;
+        }
+    }
+}
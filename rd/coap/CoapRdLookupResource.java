@@ -0,0 +1,289 @@
+package it.unimore.dipi.iot.rd.coap;
+
+import it.unimore.dipi.iot.rd.RdLink;
+import it.unimore.dipi.iot.rd.RdQuery;
+import it.unimore.dipi.iot.rd.RdRegistration;
+import it.unimore.dipi.iot.rd.RdRegistry;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.LinkFormat;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.core.server.resources.ResourceObserverAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * This is a lookup resource of the Resource Directory (/rd-lookup/ep or /rd-lookup/res).
+ * The lookups are filtered with the "ep", "d", "rt" and "if" query parameters and paged with "page" and "count", E.g.
+ * /rd-lookup/res?d=firstFloor&rt=iot.sensor.water&page=1&count=20
+ *
+ * - the endpoint lookup returns a link for each endpoint, the target is the base of the endpoint:
+ * <coap://192.168.43.172:5783>;ep="node1";d="firstFloor";lt=90000
+ * - the resource lookup returns the registered links, resolved on the base of their endpoint:
+ * <coap://192.168.43.172:5783/water-provider/H2O>;rt="iot.sensor.water";if="core.s";obs
+ *
+ * The lookups are observable: an observer is notified only when a change of the directory matches its filters,
+ * the changes are coalesced for {@link #NOTIFICATION_COALESCING_TIME}.
+ * With the "delta" query parameter (E.g. /rd-lookup/ep?d=firstFloor&delta) the first response is the whole lookup
+ * and the notifications carry only the links added or changed and the links removed, flagged with "rm":
+ * <coap://192.168.43.172:5783>;ep="node1";d="firstFloor";lt=90000;rm
+ * A delta holds every change since the last acknowledged notification (the notifications are CON),
+ * so a notification replaced by a newer one or lost does not lose changes.
+ * If the changes are no longer available the relation is terminated with 5.03: the observer has to observe again.
+ * Paging does not apply to the delta notifications.
+ * The delta responses have a long Max-Age, so the client does not re-register the observation by itself
+ * (the whole lookup sent back would look like a delta): the observer should observe again from time to time instead.
+ *
+ * Large directories should be paged: the client reassembles a block-wise response up to its maximum resource body size.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 21:40
+ * @project coap-smart-building
+ */
+
+public class CoapRdLookupResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapRdLookupResource.class);
+
+    private static final String DELTA_PARAMETER = "delta";
+
+    private static final long NOTIFICATION_COALESCING_TIME = 200; //0.2sec
+
+    //A client re-registering its observation would receive the whole lookup as if it was a delta:
+    //the delta observers must not re-register on their own, they observe again to resynchronize
+    private static final long DELTA_MAX_AGE = 24 * 3600; //1day in seconds
+
+    public enum LookupType {
+
+        ENDPOINT("ep", "core.rd-lookup-ep"),
+        RESOURCE("res", "core.rd-lookup-res");
+
+        private final String name;
+
+        private final String resourceType;
+
+        LookupType(String name, String resourceType) {
+            this.name = name;
+            this.resourceType = resourceType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+    }
+
+    private final RdRegistry rdRegistry;
+
+    private final LookupType lookupType;
+
+    //Observe relation -> its query and the directory version it has received
+    private final Map<ObserveRelation, RelationState> relationStateMap = new ConcurrentHashMap<>();
+
+    private final HashedTimerWheel.Deadline notificationDeadline;
+
+
+    /**
+     * @param timerWheel           the wheel coalescing the notifications
+     * @param notificationExecutor the executor computing the notifications (not the wheel thread)
+     */
+    public CoapRdLookupResource(LookupType lookupType, RdRegistry rdRegistry, HashedTimerWheel timerWheel, Executor notificationExecutor) {
+        super(lookupType.getName());
+
+        this.lookupType = lookupType;
+        this.rdRegistry = rdRegistry;
+
+        setObservable(true);
+        //Every notification must be delivered: a delta notification only holds the changes since the last acknowledged one
+        setObserveType(CoAP.Type.CON);
+
+        //Specify Resource Attributes according to the CoRE Link-Format
+        getAttributes().addAttribute("rt", lookupType.getResourceType());
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_LINK_FORMAT));
+        getAttributes().setObservable();
+
+        addObserver(new ResourceObserverAdapter() {
+            @Override
+            public void removedObserveRelation(ObserveRelation relation) {
+                relationStateMap.remove(relation);
+            }
+        });
+
+        this.notificationDeadline = timerWheel.newDeadline(() -> notificationExecutor.execute(() -> changed(this::hasChanges)));
+
+        this.rdRegistry.addChangeListener(() -> {
+            //The first change of a burst schedules the notification, the following ones join it
+            if (!this.notificationDeadline.isScheduled() && !this.relationStateMap.isEmpty())
+                this.notificationDeadline.schedule(NOTIFICATION_COALESCING_TIME);
+        });
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+
+        RdQuery query;
+
+        try {
+            query = RdQuery.parse(exchange.getRequestOptions().getUriQuery());
+        } catch (IllegalArgumentException e) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Lookup Query");
+            return;
+        }
+
+        ObserveRelation relation = exchange.advanced().getRelation();
+        RelationState relationState = relation != null ? this.relationStateMap.get(relation) : null;
+
+        if (relationState != null && relationState.delta && relation.isEstablished()) {
+            respondDelta(exchange, relationState);
+            return;
+        }
+
+        //Taken before the lookup: a change made during the lookup is sent again with the next notification
+        long version = this.rdRegistry.getVersion();
+
+        StringBuilder buffer = new StringBuilder();
+
+        int found;
+
+        if (this.lookupType == LookupType.ENDPOINT)
+            found = this.rdRegistry.lookupEndpoints(query, registration -> appendEndpointLink(buffer, registration, false));
+        else
+            found = this.rdRegistry.lookupResources(query, (registration, link) -> appendResourceLink(buffer, registration, link, false));
+
+        logger.debug("Lookup {} {} -> {} results", getName(), query, found);
+
+        if (relation != null) {
+            if (relationState == null) {
+                relationState = new RelationState(query, exchange.getRequestOptions().getUriQuery().contains(DELTA_PARAMETER));
+                this.relationStateMap.put(relation, relationState);
+            }
+            relationState.acknowledgedVersion = version;
+
+            if (relationState.delta)
+                exchange.setMaxAge(DELTA_MAX_AGE);
+        }
+
+        exchange.respond(CoAP.ResponseCode.CONTENT, buffer.toString(), MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+    }
+
+    private void respondDelta(CoapExchange exchange, RelationState relationState) {
+
+        StringBuilder buffer = new StringBuilder();
+
+        long version = getChanges(relationState, buffer);
+
+        if (version == RdRegistry.CHANGES_LOST) {
+            logger.warn("Lookup changes after version {} lost ! Terminating the relation {}", relationState.acknowledgedVersion, relationState.query);
+            exchange.respond(CoAP.ResponseCode.SERVICE_UNAVAILABLE, "Lookup changes lost, observe again");
+            return;
+        }
+
+        Response response = new Response(CoAP.ResponseCode.CONTENT);
+        response.setPayload(buffer.toString());
+        response.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+        response.getOptions().setMaxAge(DELTA_MAX_AGE);
+
+        //The next delta starts from this one only when the observer has received it
+        response.addMessageObserver(new MessageObserverAdapter() {
+            @Override
+            public void onAcknowledgement() {
+                relationState.acknowledge(version);
+            }
+        });
+
+        exchange.respond(response);
+    }
+
+    /**
+     * Append the changes since the acknowledged version of the relation
+     *
+     * @return the version of the changes, or {@link RdRegistry#CHANGES_LOST}
+     */
+    private long getChanges(RelationState relationState, StringBuilder buffer) {
+        if (this.lookupType == LookupType.ENDPOINT)
+            return this.rdRegistry.lookupEndpointChanges(relationState.query, relationState.acknowledgedVersion,
+                    (registration, removed) -> appendEndpointLink(buffer, registration, removed));
+        else
+            return this.rdRegistry.lookupResourceChanges(relationState.query, relationState.acknowledgedVersion,
+                    (registration, link, removed) -> appendResourceLink(buffer, registration, link, removed));
+    }
+
+    /**
+     * Notification filter: only the relations with changes matching their query are notified
+     */
+    private boolean hasChanges(ObserveRelation relation) {
+
+        RelationState relationState = this.relationStateMap.get(relation);
+
+        if (relationState == null)
+            return true;
+
+        StringBuilder buffer = new StringBuilder();
+        long version = getChanges(relationState, buffer);
+
+        if (version == RdRegistry.CHANGES_LOST)
+            return true;
+
+        //Nothing up to this version matches the relation: it does not have to be checked again
+        if (buffer.length() == 0)
+            relationState.acknowledge(version);
+
+        return buffer.length() > 0;
+    }
+
+    private static void appendEndpointLink(StringBuilder buffer, RdRegistration registration, boolean removed) {
+        appendSeparator(buffer);
+        buffer.append('<').append(registration.getBase()).append('>');
+        buffer.append(';').append(LinkFormat.serializeAttribute(RdQuery.ENDPOINT_PARAMETER, Collections.singletonList(registration.getEndpointName())));
+        if (registration.getSector() != null)
+            buffer.append(';').append(LinkFormat.serializeAttribute(RdQuery.SECTOR_PARAMETER, Collections.singletonList(registration.getSector())));
+        buffer.append(";lt=").append(registration.getLifetime());
+        if (removed)
+            buffer.append(';').append(RdLink.REMOVE_ATTRIBUTE);
+    }
+
+    private static void appendResourceLink(StringBuilder buffer, RdRegistration registration, RdLink link, boolean removed) {
+        appendSeparator(buffer);
+        link.serialize(buffer, registration.getBase());
+        if (removed)
+            buffer.append(';').append(RdLink.REMOVE_ATTRIBUTE);
+    }
+
+    private static void appendSeparator(StringBuilder buffer) {
+        if (buffer.length() > 0)
+            buffer.append(',');
+    }
+
+    private static class RelationState {
+
+        private final RdQuery query;
+
+        private final boolean delta;
+
+        //Directory version already received by the observer
+        private volatile long acknowledgedVersion;
+
+        private RelationState(RdQuery query, boolean delta) {
+            this.query = query;
+            this.delta = delta;
+        }
+
+        private synchronized void acknowledge(long version) {
+            if (version > this.acknowledgedVersion)
+                this.acknowledgedVersion = version;
+        }
+    }
+}
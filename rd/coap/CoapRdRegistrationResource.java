@@ -0,0 +1,152 @@
+package it.unimore.dipi.iot.rd.coap;
+
+import it.unimore.dipi.iot.rd.RdLink;
+import it.unimore.dipi.iot.rd.RdRegistration;
+import it.unimore.dipi.iot.rd.RdRegistry;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * This is the resource of a single registration (/rd/{id}), created by {@link CoapRdResource} for each request.
+ * - GET returns the registered links
+ * - POST refreshes the registration: "lt" and "base" can be changed, a payload replaces the links
+ * - iPATCH updates some links only: the payload holds the added or changed links and the removed ones flagged with "rm",
+ * E.g. </water-provider/H2O>;rt="iot.sensor.water";if="core.s",</gas>;rm
+ * - DELETE removes the registration
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 21:30
+ * @project coap-smart-building
+ */
+
+public class CoapRdRegistrationResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapRdRegistrationResource.class);
+
+    private static final String BASE_PARAMETER = "base";
+
+    private final RdRegistry rdRegistry;
+
+
+    public CoapRdRegistrationResource(String registrationId, RdRegistry rdRegistry) {
+        super(registrationId, false);
+        this.rdRegistry = rdRegistry;
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+
+        RdRegistration registration = this.rdRegistry.getRegistration(getName());
+
+        if (registration == null) {
+            exchange.respond(CoAP.ResponseCode.NOT_FOUND);
+            return;
+        }
+
+        StringBuilder buffer = new StringBuilder();
+        for (RdLink link : registration.getLinks()) {
+            if (buffer.length() > 0)
+                buffer.append(',');
+            link.serialize(buffer, "");
+        }
+
+        exchange.respond(CoAP.ResponseCode.CONTENT, buffer.toString(), MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+    }
+
+    @Override
+    public void handlePOST(CoapExchange exchange) {
+
+        try {
+
+            int contentFormat = exchange.getRequestOptions().getContentFormat();
+
+            if (contentFormat != MediaTypeRegistry.UNDEFINED && contentFormat != MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+                exchange.respond(CoAP.ResponseCode.UNSUPPORTED_CONTENT_FORMAT);
+                return;
+            }
+
+            long lifetime = CoapRdResource.getLifetime(exchange, 0);
+
+            if (exchange.getQueryParameter(CoapRdResource.LIFETIME_PARAMETER) != null && lifetime <= 0) {
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Lifetime");
+                return;
+            }
+
+            //A refresh without payload keeps the registered links
+            List<RdLink> links = exchange.getRequestPayload() != null && exchange.getRequestPayload().length > 0
+                    ? RdLink.parse(exchange.getRequestPayload())
+                    : null;
+
+            RdRegistration registration = this.rdRegistry.update(getName(), exchange.getQueryParameter(BASE_PARAMETER), lifetime, links);
+
+            if (registration == null) {
+                exchange.respond(CoAP.ResponseCode.NOT_FOUND);
+                return;
+            }
+
+            logger.debug("Registration {} of endpoint {} refreshed (lt: {}s)", getName(), registration.getEndpointName(), registration.getLifetime());
+
+            exchange.respond(CoAP.ResponseCode.CHANGED);
+
+        } catch (IllegalArgumentException e) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Registration Update");
+        } catch (Exception e) {
+            logger.error("Error Handling POST -> {}", e.getMessage());
+            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public void handleIPATCH(CoapExchange exchange) {
+
+        try {
+
+            int contentFormat = exchange.getRequestOptions().getContentFormat();
+
+            if (contentFormat != MediaTypeRegistry.UNDEFINED && contentFormat != MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+                exchange.respond(CoAP.ResponseCode.UNSUPPORTED_CONTENT_FORMAT);
+                return;
+            }
+
+            List<RdLink> linkChanges = RdLink.parse(exchange.getRequestPayload());
+
+            RdRegistration registration = this.rdRegistry.patchLinks(getName(), linkChanges);
+
+            if (registration == null) {
+                exchange.respond(CoAP.ResponseCode.NOT_FOUND);
+                return;
+            }
+
+            logger.debug("Registration {} of endpoint {} updated with {} link changes", getName(), registration.getEndpointName(), linkChanges.size());
+
+            exchange.respond(CoAP.ResponseCode.CHANGED);
+
+        } catch (IllegalArgumentException e) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Link Update");
+        } catch (Exception e) {
+            logger.error("Error Handling iPATCH -> {}", e.getMessage());
+            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public void handleDELETE(CoapExchange exchange) {
+
+        RdRegistration registration = this.rdRegistry.remove(getName());
+
+        if (registration == null) {
+            exchange.respond(CoAP.ResponseCode.NOT_FOUND);
+            return;
+        }
+
+        logger.info("Endpoint {} unregistered ! Registration: {}", registration.getEndpointName(), getName());
+
+        exchange.respond(CoAP.ResponseCode.DELETED);
+    }
+}
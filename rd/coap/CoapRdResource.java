@@ -0,0 +1,136 @@
+package it.unimore.dipi.iot.rd.coap;
+
+import it.unimore.dipi.iot.rd.RdLink;
+import it.unimore.dipi.iot.rd.RdQuery;
+import it.unimore.dipi.iot.rd.RdRegistration;
+import it.unimore.dipi.iot.rd.RdRegistry;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet6Address;
+import java.util.List;
+
+/**
+ * This is the registration resource of the Resource Directory (/rd).
+ * An endpoint registers with a POST of its links (CoRE Link-Format), E.g.
+ * /rd?ep=node1&d=firstFloor&lt=3600&base=coap://192.168.43.172:5783
+ * and receives the location of its registration (/rd/{id}) in the Location-Path option.
+ * Without "base" the source address of the request is used, without "lt" the default lifetime is applied.
+ *
+ * The registrations are not children of the resource: /rd/{id} is resolved on the fly from the {@link RdRegistry},
+ * so tens of thousands of registrations do not weigh on the resource tree and they are not listed in /.well-known/core.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 21:20
+ * @project coap-smart-building
+ */
+
+public class CoapRdResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapRdResource.class);
+
+    private static final String RESOURCE_TYPE = "core.rd";
+
+    static final String LIFETIME_PARAMETER = "lt";
+
+    private static final String BASE_PARAMETER = "base";
+
+    private final RdRegistry rdRegistry;
+
+
+    public CoapRdResource(String name, RdRegistry rdRegistry) {
+        super(name);
+
+        this.rdRegistry = rdRegistry;
+
+        //Specify Resource Attributes according to the CoRE Link-Format
+        getAttributes().addAttribute("rt", RESOURCE_TYPE);
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_LINK_FORMAT));
+    }
+
+    @Override
+    public Resource getChild(String name) {
+        if (this.rdRegistry.getRegistration(name) == null)
+            return null;
+
+        //The registration could expire before the request is handled: the registration resource answers 4.04 then
+        CoapRdRegistrationResource registrationResource = new CoapRdRegistrationResource(name, this.rdRegistry);
+        registrationResource.setParent(this);
+        return registrationResource;
+    }
+
+    @Override
+    public void handlePOST(CoapExchange exchange) {
+
+        try {
+
+            int contentFormat = exchange.getRequestOptions().getContentFormat();
+
+            if (contentFormat != MediaTypeRegistry.UNDEFINED && contentFormat != MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+                exchange.respond(CoAP.ResponseCode.UNSUPPORTED_CONTENT_FORMAT);
+                return;
+            }
+
+            String endpointName = exchange.getQueryParameter(RdQuery.ENDPOINT_PARAMETER);
+
+            if (endpointName == null || endpointName.isEmpty()) {
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Missing Endpoint Name");
+                return;
+            }
+
+            long lifetime = getLifetime(exchange, RdRegistry.DEFAULT_LIFETIME);
+
+            if (lifetime <= 0) {
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Lifetime");
+                return;
+            }
+
+            String base = exchange.getQueryParameter(BASE_PARAMETER);
+            if (base == null)
+                base = getSourceBase(exchange);
+
+            List<RdLink> links = RdLink.parse(exchange.getRequestPayload());
+
+            RdRegistration registration = this.rdRegistry.register(endpointName
+                    , exchange.getQueryParameter(RdQuery.SECTOR_PARAMETER)
+                    , base
+                    , lifetime
+                    , links);
+
+            logger.info("Endpoint {} registered with {} links -> Location: {}/{}", endpointName, links.size(), getURI(), registration.getId());
+
+            exchange.setLocationPath(String.format("%s/%s", getName(), registration.getId()));
+            exchange.respond(CoAP.ResponseCode.CREATED);
+
+        } catch (IllegalArgumentException e) {
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST, "Invalid Registration");
+        } catch (Exception e) {
+            logger.error("Error Handling POST -> {}", e.getMessage());
+            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * @return the "lt" query parameter, or the default value if it is not present
+     * @throws NumberFormatException if the lifetime is not a number
+     */
+    static long getLifetime(CoapExchange exchange, long defaultLifetime) {
+        String lifetime = exchange.getQueryParameter(LIFETIME_PARAMETER);
+        return lifetime == null ? defaultLifetime : Long.parseLong(lifetime);
+    }
+
+    /**
+     * @return the source of the request as base URI, E.g. coap://192.168.43.172:5783
+     */
+    private static String getSourceBase(CoapExchange exchange) {
+        String host = exchange.getSourceAddress().getHostAddress();
+        if (exchange.getSourceAddress() instanceof Inet6Address)
+            host = String.format("[%s]", host);
+        return String.format("coap://%s:%d", host, exchange.getSourcePort());
+    }
+}
@@ -3,17 +3,24 @@ package it.unimore.dipi.iot.server;
 import it.unimore.dipi.iot.server.coap.presence.CoapPresenceEntryResource;
 import it.unimore.dipi.iot.server.coap.presence.CoapPresenceExitResource;
 import it.unimore.dipi.iot.server.coap.presence.CoapPresenceInsideResource;
+import it.unimore.dipi.iot.server.control.ParallelPutFanOut;
+import it.unimore.dipi.iot.server.directory.RdEndpointWatcher;
+import it.unimore.dipi.iot.server.directory.RdRegistrationClient;
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
+import it.unimore.dipi.iot.server.network.ReusePortUdpConnector;
 import it.unimore.dipi.iot.server.raw.ResourceDataListener;
 import it.unimore.dipi.iot.server.raw.SmartObjectResource;
 import it.unimore.dipi.iot.server.raw.presence.PresenceRawSensor;
+import it.unimore.dipi.iot.server.state.RawStateBinder;
+import it.unimore.dipi.iot.server.state.RawStateStore;
 import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import it.unimore.dipi.iot.utils.LinkFormatParser;
 import org.eclipse.californium.core.*;
 
 import org.eclipse.californium.core.coap.CoAP;
-import org.eclipse.californium.core.coap.LinkFormat;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.Request;
-import org.eclipse.californium.core.network.CoapEndpoint;
 import org.eclipse.californium.core.network.EndpointManager;
 import org.eclipse.californium.core.server.resources.Resource;
 import org.eclipse.californium.elements.exception.ConnectorException;
@@ -23,10 +30,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author Riccardo Prevedi
@@ -44,13 +56,16 @@ public class CoapEndpointPresenceProcess extends CoapServer {
 
     private static final String RD_SECTOR_NAME = "firstFloor";
 
-    private static final String SECTOR_RD_ATTRIBUTE = "d";
-
     private static final String INTERFACE_CORE_ATTRIBUTE = "if";
 
     private static final String WELL_KNOWN_CORE_URI = "/.well-known/core";
 
-    private static final String RD_COAP_ENDPOINT_BASE_URL = "coap://192.168.56.101:5683/rd";
+    private static final String RD_COAP_BASE_URL = "coap://192.168.56.101:5683";
+
+    private static final long RD_LIFETIME = 3600; //1h, refreshed before it expires
+
+    //RD registration refreshes and updates, switch PUT deadlines: 100ms precision, 64 slots
+    private static final HashedTimerWheel timerWheel = new HashedTimerWheel("presence-timer-wheel", 100, 64);
 
     private static final String EP_LOOKUP_URI = "/rd-lookup/ep";
 
@@ -58,31 +73,72 @@ public class CoapEndpointPresenceProcess extends CoapServer {
 
     private static final int TARGET_COAP_PORT = 5883;
 
-    private static List<String> targetEndpointList;
+    //A single UDP socket per address by default
+    private static final int RECEIVE_SOCKETS_PER_ADDRESS = 1;
+
+    //RD registration, lookups, discoveries and switch PUTs: the requests are spread across the client sockets by destination
+    private static final ClientEndpointPool clientEndpointPool = new ClientEndpointPool("PresenceClient", 2);
+
+    //Switches of the floor, updated as the endpoints register to and leave the RD
+    private static final List<String> targetResourceList = new CopyOnWriteArrayList<>();
+
+    //Endpoint -> its switches
+    private static final Map<String, List<String>> endpointResourceMap = new ConcurrentHashMap<>();
 
-    private static List<String> targetResourceList;
+    //The discovery of a new endpoint is a blocking call: it does not run on the CoAP handler threads
+    private static final ExecutorService discoveryExecutor = Executors.newSingleThreadExecutor();
 
-    private CoapClient client = new CoapClient();
+    private static final int MAX_IN_FLIGHT_PUTS = 16;
 
+    private static final long SWITCH_PUT_DEADLINE = 3000; //3sec for each switch to answer
+
+    //Presence counters, restored at restart
+    private static final String STATE_DIRECTORY = "state/presence";
+
+    //Used by the presence listener thread only
     private Boolean activeSupply = false;
 
+    private PresenceRawSensor presenceRawSensor;
+
+    //The presence listener runs on its own thread: it must not run on the CoAP handler threads
+    private final ExecutorService notificationExecutor = Executors.newSingleThreadExecutor();
+
+    //Every switch of the floor is updated concurrently, an unreachable one does not hold up the others
+    private final ParallelPutFanOut switchFanOut = new ParallelPutFanOut(clientEndpointPool,
+            timerWheel,
+            MAX_IN_FLIGHT_PUTS,
+            SWITCH_PUT_DEADLINE);
+
     public CoapEndpointPresenceProcess() {
+        this(RECEIVE_SOCKETS_PER_ADDRESS);
+    }
+
+    /**
+     * @param receiveSocketsPerAddress the UDP sockets bound to each address with SO_REUSEPORT, each one with its own
+     *                                 receiver thread: the kernel spreads the datagrams of the peers across them
+     */
+    public CoapEndpointPresenceProcess(int receiveSocketsPerAddress) {
         super();
 
+        //The saved state is loaded before the resources are created (and long before the endpoints start)
+        RawStateStore rawStateStore = RawStateStore.open(Paths.get(STATE_DIRECTORY));
+        Runtime.getRuntime().addShutdownHook(new Thread(rawStateStore::close));
+
         // explicitly bind to each address to avoid the wildcard address reply problem
         // (default interface address instead of original destination)
         for (InetAddress addr : EndpointManager.getEndpointManager().getNetworkInterfaces()) {
-            if (!addr.isLinkLocalAddress()) {
-                CoapEndpoint.Builder builder = new CoapEndpoint.Builder();
-                builder.setInetSocketAddress(new InetSocketAddress(addr, TARGET_COAP_PORT));
-                this.addEndpoint(builder.build());
-            }
+            if (!addr.isLinkLocalAddress())
+                this.addEndpoint(ReusePortUdpConnector.createEndpoint(new InetSocketAddress(addr, TARGET_COAP_PORT), receiveSocketsPerAddress));
         }
 
         //Presence sensor ID
         String deviceId = String.format("dipi:iot:%s", UUID.randomUUID().toString());
 
-        PresenceRawSensor presenceRawSensor = new PresenceRawSensor();
+        this.presenceRawSensor = new PresenceRawSensor();
+        presenceRawSensor.setNotificationExecutor(this.notificationExecutor);
+
+        //Restore the counters saved before the restart, then save every change
+        new RawStateBinder(rawStateStore).bindPresence("presence", presenceRawSensor);
 
         CoapPresenceEntryResource entryResource = new CoapPresenceEntryResource(deviceId, "presence-entry", presenceRawSensor);
         CoapPresenceExitResource exitResource = new CoapPresenceExitResource(deviceId, "presence-exit", presenceRawSensor);
@@ -97,17 +153,16 @@ public class CoapEndpointPresenceProcess extends CoapServer {
             @Override
             public void onDataChanged(SmartObjectResource<Integer> resource, Integer updatedValue) {
 
-                if (targetResourceList != null && targetResourceList.size() > 0) {
-                    if (updatedValue <= 0 && activeSupply) {
+                //The notifications of concurrent updates can arrive in any order: the current count decides
+                int people = presenceRawSensor.getPeople();
+
+                if (targetResourceList.size() > 0) {
+                    if (people <= 0 && activeSupply) {
                         activeSupply = false;
-                        targetResourceList.forEach(targetUri -> {
-                            makingPut(client, targetUri, false);
-                        });
-                    } else if(updatedValue > 0 && !activeSupply) {
+                        switchingSupply(false);
+                    } else if(people > 0 && !activeSupply) {
                         activeSupply = true;
-                        targetResourceList.forEach(targetUri -> {
-                            makingPut(client, targetUri, true);
-                        });
+                        switchingSupply(true);
                     }
                 } else
                     logger.info("No Device Discovered at {} zone -> No updating devices status... ", RD_SECTOR_NAME);
@@ -115,47 +170,39 @@ public class CoapEndpointPresenceProcess extends CoapServer {
         });
     }
 
-    private static void makingPut(CoapClient client, String resourceUrl, Boolean bool) {
-
-        //Request Class is a generic CoAP message: in this case we want a PUT.
-        //"Message ID", "Token" and other header's fields can be set
-        Request request = new Request(CoAP.Code.PUT);
-
-        //Shaping the smart object resource URI
-        request.setURI(resourceUrl);
-
-        //Set PUT request's payload
-        String myPayload = Boolean.toString(bool);
-        logger.info("PUT Request Payload: {}", myPayload);
-        request.setPayload(myPayload);
-
-        //Set Request as Confirmable
-        request.setConfirmable(true);
-
-        logger.info("Request Pretty Print: \n{}", Utils.prettyPrint(request));
-
-        //Synchronously send the PUT request (blocking call)
-        CoapResponse coapResp = null;
-
-        try {
-
-            coapResp = client.advanced(request);
-
-            //Pretty print for the received response
-            logger.info("Response Pretty Print: \n{}", Utils.prettyPrint(coapResp));
-
-            //The "CoapResponse" message contains the response.
-            String text = coapResp.getResponseText();
-            logger.info("Payload: {}", text);
-            logger.info("Message ID: " + coapResp.advanced().getMID());
-            logger.info("Token: " + coapResp.advanced().getTokenString());
+    /**
+     * Send the new supply status to every switch of the floor at once
+     * The result is logged when every switch answered or exceeded its deadline
+     * A newer transition supersedes this one: its PUTs are never delivered after the newer ones
+     */
+    private void switchingSupply(Boolean bool) {
+
+        logger.info("Switching {} the supply of {} switches ...", bool ? "ON" : "OFF", targetResourceList.size());
+
+        this.switchFanOut.put(targetResourceList, Boolean.toString(bool), MediaTypeRegistry.UNDEFINED)
+                .thenAccept(fanOutResult -> {
+                    if (fanOutResult.isSuperseded())
+                        logger.info("Supply switching {} superseded by a newer transition after {}ms", bool ? "ON" : "OFF", fanOutResult.getElapsedMillis());
+                    else if (fanOutResult.isSuccess())
+                        logger.info("Supply switched {} in {}ms", bool ? "ON" : "OFF", fanOutResult.getElapsedMillis());
+                    else
+                        logger.warn("Supply partially switched {} in {}ms ! Result: {}", bool ? "ON" : "OFF", fanOutResult.getElapsedMillis(), fanOutResult);
+                });
+    }
 
-        } catch (ConnectorException | IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Send the supply status of the current occupancy to every switch, E.g. when new switches are discovered:
+     * a switch registering while the zone is occupied is switched on without waiting for the next occupancy change.
+     * It runs on the presence listener thread, so it is ordered with the occupancy transitions
+     */
+    private void synchronizeSupply() {
+        this.notificationExecutor.execute(() -> {
+            activeSupply = presenceRawSensor.getPeople() > 0;
+            switchingSupply(activeSupply);
+        });
     }
 
-    private static void discoverTargetSwitchableResource(CoapClient coapClient, String endpoint) {
+    private static void discoverTargetSwitchableResource(CoapClient coapClient, String endpoint, List<String> targetResourceList) {
 
         //Request Class is a generic CoAP message: in this case we want a GET.
         //"Message ID", "Token" and other header's fields can be set
@@ -183,30 +230,25 @@ public class CoapEndpointPresenceProcess extends CoapServer {
 
                 if (coapResp.getOptions().getContentFormat() == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
 
-                    Set<WebLink> links = LinkFormat.parse(coapResp.getResponseText());
+                    //The links are parsed in a single pass over the payload and filtered as they are parsed
+                    LinkFormatParser.parse(coapResp.getPayload(), link -> {
 
-                    links.forEach(link -> {
-
-                        if (link.getURI() != null && !link.getURI().equals(WELL_KNOWN_CORE_URI) && link.getAttributes() != null && link.getAttributes().getCount() > 0) {
+                        if (!link.getUri().equals(WELL_KNOWN_CORE_URI) && link.getAttributeCount() > 0) {
 
                             //If the resource is core.a, and it is observable, and its URI ends with "switch"
                             //save the target url reference
-                            if (link.getAttributes().containsAttribute(INTERFACE_CORE_ATTRIBUTE)
-                                    && link.getAttributes().getAttributeValues(INTERFACE_CORE_ATTRIBUTE).get(0).equals(CoreInterfaces.CORE_A.getValue())
-                                    && link.getURI().endsWith("switch")) {
-
-                                boolean supportSenml = false;
+                            if (CoreInterfaces.CORE_A.getValue().equals(link.getAttributeValue(INTERFACE_CORE_ATTRIBUTE))
+                                    && link.getUri().endsWith("switch")) {
 
-                                if (link.getAttributes().containsAttribute(CONTENT_TYPE_ATTRIBUTE))
-                                    supportSenml = link.getAttributes().getAttributeValues(CONTENT_TYPE_ATTRIBUTE).contains("110");
+                                boolean supportSenml = link.hasAttributeValue(CONTENT_TYPE_ATTRIBUTE, "110");
 
                                 logger.info("Target Switchable resource found ! URI: {} (Senml: {}) (Floor: {})"
-                                        , link.getURI()
+                                        , link.getUri()
                                         , supportSenml
                                         , RD_SECTOR_NAME);
 
                                 //E.g. coap://<node_ip>:<node_port>/<resource_uri>
-                                String targetResourceUrl = String.format("%s%s", endpoint, link.getURI());
+                                String targetResourceUrl = String.format("%s%s", endpoint, link.getUri());
 
                                 targetResourceList.add(targetResourceUrl);
 
@@ -224,121 +266,85 @@ public class CoapEndpointPresenceProcess extends CoapServer {
         }
     }
 
-    //Even if the endpoint is unreachable
-    private static void discoverTargetEndpoint(CoapClient coapClient) {
-
-        //Request Class is a generic CoAP message: in this case we want a GET.
-        //"Message ID", "Token" and other header's fields can be set
-        Request request = new Request(CoAP.Code.GET);
-
-        //Shaping the address interface for LookUp Endpoint
-        request.setURI(RD_COAP_ENDPOINT_BASE_URL.replace("/rd", EP_LOOKUP_URI));
-
-        //Set Request as Confirmable
-        request.setConfirmable(true);
-
-        logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(request));
-
-        //Synchronously send the GET message (blocking call)
-        CoapResponse response = null;
-
-        try {
-
-            response = coapClient.advanced(request);
+    /**
+     * Follow the endpoints of the floor registered to the Resource Directory:
+     * the switches of a new endpoint are discovered and receive the current supply status,
+     * the switches of a removed endpoint are no longer updated
+     */
+    private static RdEndpointWatcher watchTargetEndpoints(CoapEndpointPresenceProcess presenceProcess) {
 
-            if (response != null) {
+        //Only the endpoints with the same "sector" of the presence sensor registration, notified as deltas
+        String lookupUrl = String.format("%s%s?d=%s&delta", RD_COAP_BASE_URL, EP_LOOKUP_URI, RD_SECTOR_NAME);
 
-                logger.info("Response Pretty Print:\n{}", Utils.prettyPrint(response));
-
-                if (response.getOptions().getContentFormat() == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
-
-                    Set<WebLink> links = LinkFormat.parse(response.getResponseText());
-
-                    links.forEach(link -> {
-
-                        if (link.getURI() != null && link.getAttributes() != null && link.getAttributes().getCount() > 0) {
-
-                            //The Endpoint discovered must have the same "sector" attribute
-                            //of the presence sensor registration
-                            if (link.getAttributes().containsAttribute(SECTOR_RD_ATTRIBUTE)
-                                    && link.getAttributes().getAttributeValues(SECTOR_RD_ATTRIBUTE).get(0).equals(RD_SECTOR_NAME)) {
+        RdEndpointWatcher rdEndpointWatcher = new RdEndpointWatcher(clientEndpointPool.getClient(lookupUrl), lookupUrl, new RdEndpointWatcher.EndpointListener() {
+            @Override
+            public void onEndpointAdded(String endpoint, String sector) {
+                discoveryExecutor.execute(() -> {
 
-                                targetEndpointList.add(link.getURI());
+                    List<String> endpointResourceList = new ArrayList<>();
+                    discoverTargetSwitchableResource(clientEndpointPool.getClient(endpoint), endpoint, endpointResourceList);
 
-                                logger.info("Target Endpoint URL: {} Correctly saved ! ", link.getURI());
+                    endpointResourceMap.put(endpoint, endpointResourceList);
+                    targetResourceList.addAll(endpointResourceList);
 
-                            } else
-                                logger.info("Endpoint {} does not match filtering parameters ....", link.getURI());
-                        }
-                    });
+                    logger.info("Target Endpoint URL: {} Correctly saved ! Switches: {}", endpoint, endpointResourceList.size());
 
-                } else {
-                    logger.error("CoRE Link Format Response not found !");
-                }
+                    //The new switches receive the current supply status
+                    if (!endpointResourceList.isEmpty())
+                        presenceProcess.synchronizeSupply();
+                });
             }
-        } catch (ConnectorException |
-                IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static void registerToCoapResourceDirectory(Resource rootResource, String endPointName, String sectorName, String sourceIpAddress, int sourcePort) {
 
-        try {
-            //coap://192.168.10.19:5683/rd?ep=myEndpointName&d=mySectorName&base=coap://<sourceIp>:<sourcePort>
-            String finalRdUrl = String.format("%s?ep=%s&d=%s&base=coap://%s:%d"
-                    , RD_COAP_ENDPOINT_BASE_URL
-                    , endPointName
-                    , sectorName
-                    , sourceIpAddress
-                    , sourcePort);
-
-            logger.info("Registering to Resource Directory: {}", finalRdUrl);
-
-            //Initialize coapClient
-            CoapClient coapClient = new CoapClient(finalRdUrl);
-
-            //Request Class is a generic CoAP message: in this case we want a GET.
-            //"Message ID", "Token" and other header's fields can be set
-            Request request = new Request(CoAP.Code.POST);
+            @Override
+            public void onEndpointRemoved(String endpoint, String sector) {
+                discoveryExecutor.execute(() -> {
 
-            //If the POST request has a payload it can be set with the following command
-            request.setPayload(LinkFormat.serializeTree(rootResource));
+                    List<String> endpointResourceList = endpointResourceMap.remove(endpoint);
 
-            //Set Request as Confirmable
-            request.setConfirmable(true);
+                    if (endpointResourceList != null)
+                        targetResourceList.removeAll(endpointResourceList);
 
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(request));
+                    logger.info("Target Endpoint URL: {} removed !", endpoint);
+                });
+            }
+        });
 
-            //Synchronously send the POST request (blocking call)
-            CoapResponse coapResp = null;
+        rdEndpointWatcher.start();
 
-            try {
+        return rdEndpointWatcher;
+    }
 
-                coapResp = coapClient.advanced(request);
+    /**
+     * Register the node to the Resource Directory with an explicit lifetime:
+     * the registration is refreshed before it expires and the resources added or removed at runtime are sent incrementally
+     */
+    private static RdRegistrationClient registerToCoapResourceDirectory(Resource rootResource, String endPointName, String sectorName, String sourceIpAddress, int sourcePort) {
 
-                //Pretty print for the received response
-                logger.info("Response Pretty Print: \n{}", Utils.prettyPrint(coapResp));
+        RdRegistrationClient rdRegistrationClient = new RdRegistrationClient(clientEndpointPool.getClient(RD_COAP_BASE_URL)
+                , RD_COAP_BASE_URL
+                , endPointName
+                , sectorName
+                , String.format("coap://%s:%d", sourceIpAddress, sourcePort)
+                , RD_LIFETIME
+                , rootResource
+                , timerWheel);
 
-                //The "CoapResponse" message contains the response.
-                String text = coapResp.getResponseText();
-                logger.info("Payload: {}", text);
-                logger.info("Message ID: " + coapResp.advanced().getMID());
-                logger.info("Token: " + coapResp.advanced().getTokenString());
+        logger.info("Registering to Resource Directory: {} (ep: {}, d: {}, lt: {}s)", RD_COAP_BASE_URL, endPointName, sectorName, RD_LIFETIME);
 
-            } catch (ConnectorException | IOException e) {
-                e.printStackTrace();
-            }
+        rdRegistrationClient.start();
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        //Do not leave a stale registration on the RD
+        Runtime.getRuntime().addShutdownHook(new Thread(rdRegistrationClient::stop));
 
+        return rdRegistrationClient;
     }
 
     public static void main(String[] args) {
 
-        CoapEndpointPresenceProcess coapEndpointPresenceProcess = new CoapEndpointPresenceProcess();
+        //Optional argument: the UDP sockets bound to each address (SO_REUSEPORT)
+        int receiveSocketsPerAddress = args.length > 0 ? Integer.parseInt(args[0]) : RECEIVE_SOCKETS_PER_ADDRESS;
+
+        CoapEndpointPresenceProcess coapEndpointPresenceProcess = new CoapEndpointPresenceProcess(receiveSocketsPerAddress);
         coapEndpointPresenceProcess.start();
 
         coapEndpointPresenceProcess.getRoot().getChildren().stream().forEach(resource -> {
@@ -351,15 +357,6 @@ public class CoapEndpointPresenceProcess extends CoapServer {
                 , TARGET_LISTENING_IP_ADDRESS
                 , TARGET_COAP_PORT);
 
-        targetEndpointList = new ArrayList<>();
-        targetResourceList = new ArrayList<>();
-
-        CoapClient coapClient = new CoapClient();
-
-        discoverTargetEndpoint(coapClient);
-
-        targetEndpointList.stream().forEach(endpoint -> {
-            discoverTargetSwitchableResource(coapClient, endpoint);
-        });
+        watchTargetEndpoints(coapEndpointPresenceProcess);
     }
 }
@@ -1,26 +1,39 @@
 package it.unimore.dipi.iot.server;
 
 import it.unimore.dipi.iot.server.coap.*;
+import it.unimore.dipi.iot.server.directory.RdRegistrationClient;
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
+import it.unimore.dipi.iot.server.network.ReusePortUdpConnector;
 import it.unimore.dipi.iot.server.model.EnergyCounterConfigurationModel;
 import it.unimore.dipi.iot.server.model.GasCounterConfigurationModel;
+import it.unimore.dipi.iot.server.model.GenericCounterConfigurationModel;
+import it.unimore.dipi.iot.server.model.MeterTypeDescriptor;
+import it.unimore.dipi.iot.server.model.ProviderConfigurationSnapshot;
 import it.unimore.dipi.iot.server.model.WaterCounterConfigurationModel;
+import it.unimore.dipi.iot.server.occupancy.PresenceSourceDiscovery;
+import it.unimore.dipi.iot.server.occupancy.ZoneOccupancyTable;
 import it.unimore.dipi.iot.server.raw.*;
+import it.unimore.dipi.iot.server.rule.SwitchOffRule;
+import it.unimore.dipi.iot.server.rule.SwitchOffRuleEvaluator;
+import it.unimore.dipi.iot.server.state.RawStateBinder;
+import it.unimore.dipi.iot.server.state.RawStateStore;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
 import org.eclipse.californium.core.*;
-import org.eclipse.californium.core.coap.CoAP;
-import org.eclipse.californium.core.coap.LinkFormat;
-import org.eclipse.californium.core.coap.Request;
-import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.core.network.EndpointManager;
+import org.eclipse.californium.core.network.MulticastReceivers;
 import org.eclipse.californium.core.server.resources.Resource;
+import org.eclipse.californium.elements.UdpMulticastConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
@@ -33,327 +46,325 @@ public class CoapEndpointSmartSystemProcess extends CoapServer {
 
     private static final Logger logger = LoggerFactory.getLogger(CoapEndpointSmartSystemProcess.class);
 
-    private static final String TARGET_OBSERVING_URL = "coap://192.168.43.172:5883/presence-inside"; //configured without endpoint lookup
-
     private static final String RD_ENDPOINT_NAME = "node1"; //Smart building system
 
     private static final String RD_SECTOR_NAME = "firstFloor";  //Smart building floor
 
-    private static final String RD_COAP_ENDPOINT_BASE_URL = "coap://192.168.56.101:5683/rd";
+    private static final String RD_COAP_BASE_URL = "coap://192.168.56.101:5683";
+
+    private static final long RD_LIFETIME = 3600; //1h, refreshed before it expires
 
     private static final String TARGET_LISTENING_IP_ADDRESS = "192.168.43.172";
 
     private static final int TARGET_COAP_PORT = 5783;
 
-    private static Timer timer;
+    //A single UDP socket per address by default
+    private static final int RECEIVE_SOCKETS_PER_ADDRESS = 1;
 
     private static final int POWER_OFF_TIME = 5000;    // 5sec
 
-    private static Boolean arePeopleInside = true;
+    //Switch states and provider configurations, restored at restart
+    private static final String STATE_DIRECTORY = "state/smart-system";
+
+    //Re-enable deadlines of the switches and RD registration refreshes: 100ms precision, 512 slots (~51s per rotation)
+    private static final HashedTimerWheel switchTimerWheel = new HashedTimerWheel("switch-timer-wheel", 100, 512);
+
+    //Occupancy of every zone, fed by the presence sources discovered through the RD
+    private static final ZoneOccupancyTable zoneOccupancyTable = new ZoneOccupancyTable();
+
+    private static final int NOTIFICATION_THREADS = 2;
+
+    //RD registration and presence sources: the requests and the observe relations are spread across the client sockets by destination
+    private static final ClientEndpointPool clientEndpointPool = new ClientEndpointPool("SmartSystemClient", 2);
+
+    //CoAP groups joined by the switches: one per floor and one per supply type
+    //Their own port: the default CoAP port is taken by the RD when it runs on the same host
+    private static final int SWITCH_GROUP_PORT = 5693;
+
+    private static final String FLOOR_GROUP_ADDRESS = "239.255.1.1"; //RD_SECTOR_NAME switches
+
+    private static final Map<String, String> SUPPLY_GROUP_ADDRESS_MAP = Map.of(
+            MeterTypeDescriptor.WATER.getProviderName(), "239.255.2.1",
+            MeterTypeDescriptor.ENERGY.getProviderName(), "239.255.2.2",
+            MeterTypeDescriptor.GAS.getProviderName(), "239.255.2.3");
+
+    //Shared by the raw actuators and parameters: each one dispatches its notifications serially on top of it
+    private final ExecutorService notificationExecutor = Executors.newFixedThreadPool(NOTIFICATION_THREADS);
+
+    //Group command resource: a single multicast PUT switches every member of a group
+    private final CoapSwitchGroupResource switchGroupResource;
+
+    private final RawStateBinder rawStateBinder;
 
 
     public CoapEndpointSmartSystemProcess() {
+        this(RECEIVE_SOCKETS_PER_ADDRESS);
+    }
+
+    /**
+     * @param receiveSocketsPerAddress the UDP sockets bound to each address with SO_REUSEPORT, each one with its own
+     *                                 receiver thread: the kernel spreads the datagrams of the peers across them
+     */
+    public CoapEndpointSmartSystemProcess(int receiveSocketsPerAddress) {
         super();
 
+        //The saved state is loaded before the resources are created (and long before the endpoints start)
+        RawStateStore rawStateStore = RawStateStore.open(Paths.get(STATE_DIRECTORY));
+        this.rawStateBinder = new RawStateBinder(rawStateStore);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            //The last meter totals are saved before the store is closed
+            this.rawStateBinder.flush();
+            rawStateStore.close();
+        }));
+
         // explicitly bind to each address to avoid the wildcard address reply problem
         // (default interface address instead of original destination)
         for (InetAddress addr : EndpointManager.getEndpointManager().getNetworkInterfaces()) {
-            if (!addr.isLinkLocalAddress()) {
-                CoapEndpoint.Builder builder = new CoapEndpoint.Builder();
-                builder.setInetSocketAddress(new InetSocketAddress(addr, TARGET_COAP_PORT));
-                this.addEndpoint(builder.build());
-            }
+            if (!addr.isLinkLocalAddress())
+                this.addEndpoint(ReusePortUdpConnector.createEndpoint(new InetSocketAddress(addr, TARGET_COAP_PORT), receiveSocketsPerAddress));
         }
 
-        timer = new Timer();
-
         //SystemId
         String deviceId = String.format("dipi:iot:%s", UUID.randomUUID().toString());
 
-        this.add(createWaterProviderResource(deviceId));
-        this.add(createEnergyProviderResource(deviceId));
-        this.add(createGasProviderResource(deviceId));
+        this.switchGroupResource = new CoapSwitchGroupResource(deviceId, "switches");
+
+        //Node-wide Linked Batch: one request returns (or updates) every provider of the node
+        CoapNodeLinkedBatchResource snapshotResource = new CoapNodeLinkedBatchResource(deviceId, "snapshot");
+
+        CoapProviderBatchResource waterProviderResource = createProviderResource(deviceId, RD_SECTOR_NAME, MeterTypeDescriptor.WATER, new WaterCounterConfigurationModel());
+        CoapProviderBatchResource energyProviderResource = createProviderResource(deviceId, RD_SECTOR_NAME, MeterTypeDescriptor.ENERGY, new EnergyCounterConfigurationModel());
+        CoapProviderBatchResource gasProviderResource = createProviderResource(deviceId, RD_SECTOR_NAME, MeterTypeDescriptor.GAS, new GasCounterConfigurationModel());
+
+        this.add(waterProviderResource);
+        this.add(energyProviderResource);
+        this.add(gasProviderResource);
+
+        snapshotResource.addProvider(waterProviderResource);
+        snapshotResource.addProvider(energyProviderResource);
+        snapshotResource.addProvider(gasProviderResource);
+
+        this.add(snapshotResource);
+
+        this.add(switchGroupResource);
+        joinSwitchGroups();
 
     }
 
     /**
-     * This method is used to recognize if people are present in the zone
-     * For less complexity of code it's taken the presence sensor URL as known yet.
+     * Add a multicast receiver for every group joined by the switches
+     * The group requests are handled (and answered) by the first endpoint of the node
      */
-    private static void observingPresenceSensor(CoapClient coapClient) {
+    private void joinSwitchGroups() {
 
-        logger.info("OBSERVING ... {}", TARGET_OBSERVING_URL);
+        if (getEndpoints().isEmpty() || !(getEndpoints().get(0) instanceof MulticastReceivers)) {
+            logger.warn("No endpoint available to join the switch groups !");
+            return;
+        }
 
-        //Create the CoAP Request
-        Request request = Request.newGet().setURI(TARGET_OBSERVING_URL).setObserve();
-        request.setConfirmable(true);
+        Endpoint endpoint = getEndpoints().get(0);
 
-        CoapObserveRelation relation = coapClient.observe(request, new CoapHandler() {
-            @Override
-            public void onLoad(CoapResponse coapResponse) {
+        for (InetAddress groupAddress : this.switchGroupResource.getGroupAddresses()) {
+            try {
+                ((MulticastReceivers) endpoint).addMulticastReceiver(new UdpMulticastConnector.Builder()
+                        .setLocalAddress(groupAddress, SWITCH_GROUP_PORT)
+                        .addMulticastGroup(groupAddress)
+                        .build());
 
-                int presenceNumber = Integer.parseInt(coapResponse.getResponseText());
-                arePeopleInside = presenceNumber > 0;
-                //logger.info("Notification Response Pretty print:\n{}", Utils.prettyPrint(coapResponse));
-                //logger.info("NOTIFICATION Presence inside the floor: {}", presenceNumber);
-            }
+                logger.info("Switch group {}:{} joined", groupAddress.getHostAddress(), SWITCH_GROUP_PORT);
 
-            @Override
-            public void onError() {
-                logger.error("OBSERVING FAILED");
+            } catch (Exception e) {
+                logger.error("Error joining the switch group {} ! Msg: {}", groupAddress, e.getLocalizedMessage());
             }
-        });
-
+        }
     }
 
+    private static InetAddress getGroupAddress(String groupAddress) {
+        try {
+            return InetAddress.getByName(groupAddress);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid group address: " + groupAddress);
+        }
+    }
 
     /**
-     * This method is used to keep track of consumption values that exceed the maximum configurable value
-     *
-     * @param configurationParameter max conf value
-     * @param value                  value provided from the sensor
+     * This method is used to recognize if people are present in the zone
+     * The presence sensors of the sector are followed through the RD and observed, the ones registering later as well
+     * Until a presence source is observed the zone is considered occupied
      */
-    private static Boolean isSwitchOffRequired(ProviderRawConfigurationParameter configurationParameter, Double value) {
-        return value > configurationParameter.getGenericCounterConfigurationModel().getMaxValueConsumption();
+    private static void observingPresenceSensors() {
+
+        PresenceSourceDiscovery presenceSourceDiscovery = new PresenceSourceDiscovery(clientEndpointPool,
+                RD_COAP_BASE_URL,
+                RD_SECTOR_NAME,
+                zoneOccupancyTable,
+                switchTimerWheel);
+
+        presenceSourceDiscovery.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(presenceSourceDiscovery::stop));
     }
 
+
     /**
      * This method switches the state of the switch
      * When the consumption exceeds the maximum configurable value for the supply
      * And after a certain period of time if people are present.
      */
-    private static void changeSwitchStatus(SwitchRawActuator rawActuator, Double updatedValue, ProviderRawConfigurationParameter configurationParameter) {
+    private static void changeSwitchStatus(SwitchRawActuator rawActuator, double updatedValue, ProviderRawConfigurationParameter configurationParameter) {
+        //The switch listener schedules the re-enable deadline
         rawActuator.setActive(false);
         logger.info("Switching-OFF the Supply ! Max Value Consumption Level: {} -> Value Reached: {}"
                 , configurationParameter.loadUpdatedValue().getMaxValueConsumption()
                 , updatedValue);
-
-        changingSwitchStatusTimerTask(rawActuator);
     }
 
-    private static void changingSwitchStatusTimerTask(SwitchRawActuator rawActuator){
+    /**
+     * Create the re-enable deadline of a switch: it is scheduled every time the switch goes off,
+     * a new schedule replaces the pending one so a single re-enable can be pending per switch.
+     */
+    private static HashedTimerWheel.Deadline createSwitchReEnableDeadline(SwitchRawActuator rawActuator, String sectorName) {
 
-        timer.schedule(new TimerTask() {
+        return switchTimerWheel.newDeadline(new Runnable() {
             @Override
             public void run() {
-                if (arePeopleInside) {
+                if (zoneOccupancyTable.arePeopleInside(sectorName)) {
                     rawActuator.setActive(true);
                     logger.info("People inside -> Turning-ON the {} resource ! Time passed: {}ms", rawActuator.getType(), POWER_OFF_TIME);
                 } else
                     logger.info("NO People inside -> the {} resource still off ! Time passed: {}ms", rawActuator.getType(), POWER_OFF_TIME);
             }
-        }, new Date(System.currentTimeMillis() + POWER_OFF_TIME));
-
-    }
-
-
-    /**
-     * Create the water provider resource
-     *
-     * @param deviceId the ID of the system
-     */
-    private CoapResource createWaterProviderResource(String deviceId) {
-
-        CoapResource waterProviderResource = new CoapResource("water-provider");
-
-        //INIT Emulated Physical Sensors and Actuators
-        WaterRawSensor nodeWaterRawSensor = new WaterRawSensor();
-        SwitchRawActuator nodeWaterSwitchRawActuator = new SwitchRawActuator();
-        ProviderRawConfigurationParameter nodeWaterParameter = new ProviderRawConfigurationParameter(new WaterCounterConfigurationModel());
-
-        //Create Server's Resources
-        CoapWaterResource nodeWaterResource = new CoapWaterResource(deviceId, "H2O", nodeWaterRawSensor);
-        CoapSwitchActuatorResource nodeWaterSwitchResource = new CoapSwitchActuatorResource(deviceId, "switch", nodeWaterSwitchRawActuator);
-        CoapProviderConfigurationParameterResource nodeWaterParameterResource = new CoapProviderConfigurationParameterResource(deviceId, "parameter", nodeWaterParameter);
-
-        waterProviderResource.add(nodeWaterResource);
-        waterProviderResource.add(nodeWaterSwitchResource);
-        waterProviderResource.add(nodeWaterParameterResource);
-
-        //Handle Emulated Resource notification
-        nodeWaterSwitchRawActuator.addDataListener(new ResourceDataListener<Boolean>() {
-            @Override
-            public void onDataChanged(SmartObjectResource<Boolean> resource, Boolean updatedValue) {
-                logger.info("[WATER-PROVIDER-BEHAVIOUR] -> Updated Switch Value: {}", updatedValue);
-                logger.info("[WATER-PROVIDER-BEHAVIOUR] -> Updating water sensor configuration ...");
-                nodeWaterRawSensor.setActive(updatedValue);
-
-                if(!updatedValue)
-                    changingSwitchStatusTimerTask(nodeWaterSwitchRawActuator);
-            }
         });
-
-        nodeWaterRawSensor.addDataListener(new ResourceDataListener<Double>() {
-            @Override
-            public void onDataChanged(SmartObjectResource<Double> resource, Double updatedValue) {
-                if (nodeWaterSwitchRawActuator.getActive() && isSwitchOffRequired(nodeWaterParameter, updatedValue) && !arePeopleInside) {
-                    changeSwitchStatus(nodeWaterSwitchRawActuator, updatedValue, nodeWaterParameter);
-                }
-            }
-        });
-
-        return waterProviderResource;
     }
 
 
     /**
-     * Create the energy provider resource
+     * Create the provider resource of a meter type (water, energy, gas, ...)
      *
-     * @param deviceId the ID of the system
+     * @param deviceId           the ID of the system
+     * @param sectorName         the zone (RD sector) served by the provider
+     * @param meterType          the meter type descriptor driving the raw sensor and its CoAP resource
+     * @param configurationModel the default configuration of the provider
      */
-    private CoapResource createEnergyProviderResource(String deviceId) {
+    private CoapProviderBatchResource createProviderResource(String deviceId, String sectorName, MeterTypeDescriptor meterType, GenericCounterConfigurationModel configurationModel) {
+
+        //The provider is a Batch (core.b) resource returning every child value in one SenML pack
+        CoapProviderBatchResource providerResource = new CoapProviderBatchResource(deviceId, meterType.getProviderName());
 
-        CoapResource energyProviderResource = new CoapResource("energy-provider");
+        String logTag = String.format("[%s-BEHAVIOUR]", meterType.getProviderName().toUpperCase());
 
         //INIT Emulated Physical Sensors and Actuators
-        EnergyRawSensor nodeEnergyRawSensor = new EnergyRawSensor();
-        SwitchRawActuator nodeEnergySwitchRawActuator = new SwitchRawActuator();
-        ProviderRawConfigurationParameter nodeEnergyParameter = new ProviderRawConfigurationParameter(new EnergyCounterConfigurationModel());
+        MeterRawSensor nodeMeterRawSensor = new MeterRawSensor(meterType);
+        SwitchRawActuator nodeSwitchRawActuator = new SwitchRawActuator();
+        ProviderRawConfigurationParameter nodeParameter = new ProviderRawConfigurationParameter(configurationModel);
 
+        //Switch and parameter are updated by CoAP handler threads: their listeners must not block the handlers
+        //Meter readings stay synchronous (allocation free), their listeners never block
+        nodeSwitchRawActuator.setNotificationExecutor(this.notificationExecutor);
+        nodeParameter.setNotificationExecutor(this.notificationExecutor);
+
+        //Restore the state saved before the restart, then save every change
+        this.rawStateBinder.bindSwitch(String.format("%s/switch", meterType.getProviderName()), nodeSwitchRawActuator);
+        this.rawStateBinder.bindConfiguration(String.format("%s/parameter", meterType.getProviderName()), nodeParameter);
+        this.rawStateBinder.bindMeterTotal(String.format("%s/total", meterType.getProviderName()), nodeMeterRawSensor);
+        nodeMeterRawSensor.setActive(nodeSwitchRawActuator.getActive());
 
         //Create Server's Resources
-        CoapEnergyResource nodeEnergyResource = new CoapEnergyResource(deviceId, "EN", nodeEnergyRawSensor);
-        CoapSwitchActuatorResource nodeEnergySwitchResource = new CoapSwitchActuatorResource(deviceId, "switch", nodeEnergySwitchRawActuator);
-        CoapProviderConfigurationParameterResource nodeEnergyParameterResource = new CoapProviderConfigurationParameterResource(deviceId, "parameter", nodeEnergyParameter);
+        CoapMeterResource nodeMeterResource = new CoapMeterResource(deviceId, meterType.getResourceName(), nodeMeterRawSensor);
+        CoapSwitchActuatorResource nodeSwitchResource = new CoapSwitchActuatorResource(deviceId, "switch", nodeSwitchRawActuator);
+        CoapProviderConfigurationParameterResource nodeParameterResource = new CoapProviderConfigurationParameterResource(deviceId, "parameter", nodeParameter);
 
-        energyProviderResource.add(nodeEnergyResource);
-        energyProviderResource.add(nodeEnergySwitchResource);
-        energyProviderResource.add(nodeEnergyParameterResource);
+        //Per-minute and per-hour aggregates of the meter, notified once per window (E.g. /water-provider/H2O/minute)
+        nodeMeterResource.add(new CoapMeterAggregateResource(deviceId, "minute", new MeterRawAggregator(nodeMeterRawSensor, MeterRawAggregator.MINUTE_WINDOW)));
+        nodeMeterResource.add(new CoapMeterAggregateResource(deviceId, "hour", new MeterRawAggregator(nodeMeterRawSensor, MeterRawAggregator.HOUR_WINDOW)));
 
-        //Handle Emulated Resource notification
-        nodeEnergySwitchRawActuator.addDataListener(new ResourceDataListener<Boolean>() {
-            @Override
-            public void onDataChanged(SmartObjectResource<Boolean> resource, Boolean updatedValue) {
-                logger.info("[ENERGY-PROVIDER-BEHAVIOUR] -> Updated Switch Value: {}", updatedValue);
-                logger.info("[ENERGY-PROVIDER-BEHAVIOUR] -> Updating energy sensor configuration ...");
-                nodeEnergyRawSensor.setActive(updatedValue);
+        providerResource.add(nodeMeterResource);
+        providerResource.add(nodeSwitchResource);
+        providerResource.add(nodeParameterResource);
 
-                if(!updatedValue)
-                    changingSwitchStatusTimerTask(nodeEnergySwitchRawActuator);
-            }
-        });
+        //Switch-off rule compiled from the provider configuration, recompiled once per configuration version
+        SwitchOffRuleEvaluator switchOffRuleEvaluator = new SwitchOffRuleEvaluator(SwitchOffRule.compile(nodeParameter.getConfigurationSnapshot()));
 
-        nodeEnergyRawSensor.addDataListener(new ResourceDataListener<Double>() {
+        nodeParameter.addDataListener(new ResourceDataListener<ProviderConfigurationSnapshot>() {
             @Override
-            public void onDataChanged(SmartObjectResource<Double> resource, Double updatedValue) {
-                if (nodeEnergySwitchRawActuator.getActive() && isSwitchOffRequired(nodeEnergyParameter, updatedValue) && !arePeopleInside) {
-                    changeSwitchStatus(nodeEnergySwitchRawActuator, updatedValue, nodeEnergyParameter);
-                }
+            public void onDataChanged(SmartObjectResource<ProviderConfigurationSnapshot> resource, ProviderConfigurationSnapshot updatedValue) {
+                switchOffRuleEvaluator.setRule(SwitchOffRule.compile(updatedValue));
+                logger.info("{} -> Switch-off rule updated: {}", logTag, switchOffRuleEvaluator.getRule());
             }
         });
 
-        return energyProviderResource;
+        //The switch joins the floor group and the group of its supply type
+        this.switchGroupResource.addMember(getGroupAddress(FLOOR_GROUP_ADDRESS), nodeSwitchRawActuator);
+        if (SUPPLY_GROUP_ADDRESS_MAP.containsKey(meterType.getProviderName()))
+            this.switchGroupResource.addMember(getGroupAddress(SUPPLY_GROUP_ADDRESS_MAP.get(meterType.getProviderName())), nodeSwitchRawActuator);
 
-    }
+        HashedTimerWheel.Deadline switchReEnableDeadline = createSwitchReEnableDeadline(nodeSwitchRawActuator, sectorName);
 
-    /**
-     * Create the Gas provider resource
-     *
-     * @param deviceId the ID of the system
-     */
-    private CoapResource createGasProviderResource(String deviceId) {
-
-        CoapResource gasProviderResource = new CoapResource("gas-provider");
-
-        //INIT Emulated Physical Sensors and Actuators
-        GasRawSensor nodeGasRawSensor = new GasRawSensor();
-        SwitchRawActuator nodeGasSwitchRawActuator = new SwitchRawActuator();
-        ProviderRawConfigurationParameter nodeGasParameter = new ProviderRawConfigurationParameter(new GasCounterConfigurationModel());
-
-
-        //Create Server's Resources
-        CoapGasResource nodeGasResource = new CoapGasResource(deviceId, "gas", nodeGasRawSensor);
-        CoapSwitchActuatorResource nodeGasSwitchResource = new CoapSwitchActuatorResource(deviceId, "switch", nodeGasSwitchRawActuator);
-        CoapProviderConfigurationParameterResource nodeGasParameterResource = new CoapProviderConfigurationParameterResource(deviceId, "parameter", nodeGasParameter);
-
-
-        gasProviderResource.add(nodeGasResource);
-        gasProviderResource.add(nodeGasSwitchResource);
-        gasProviderResource.add(nodeGasParameterResource);
+        //A switch restored off is re-enabled as if it had just been switched off
+        if (!nodeSwitchRawActuator.getActive())
+            switchReEnableDeadline.schedule(POWER_OFF_TIME);
 
         //Handle Emulated Resource notification
-        nodeGasSwitchRawActuator.addDataListener(new ResourceDataListener<Boolean>() {
+        nodeSwitchRawActuator.addDataListener(new ResourceDataListener<Boolean>() {
             @Override
             public void onDataChanged(SmartObjectResource<Boolean> resource, Boolean updatedValue) {
-                logger.info("[GAS-PROVIDER-BEHAVIOUR] -> Updated Switch Value: {}", updatedValue);
-                logger.info("[GAS-PROVIDER-BEHAVIOUR] -> Updating gas sensor configuration ...");
-                nodeGasRawSensor.setActive(updatedValue);
-
-                if(!updatedValue)
-                    changingSwitchStatusTimerTask(nodeGasSwitchRawActuator);
+                logger.info("{} -> Updated Switch Value: {}", logTag, updatedValue);
+                logger.info("{} -> Updating {} sensor configuration ...", logTag, meterType.getResourceType());
+                nodeMeterRawSensor.setActive(updatedValue);
+
+                if (!updatedValue)
+                    switchReEnableDeadline.schedule(POWER_OFF_TIME);
+                else
+                    switchReEnableDeadline.cancel();
             }
         });
 
-        nodeGasRawSensor.addDataListener(new ResourceDataListener<Double>() {
+        nodeMeterRawSensor.addDoubleDataListener(new DoubleResourceDataListener() {
             @Override
-            public void onDataChanged(SmartObjectResource<Double> resource, Double updatedValue) {
-                if (nodeGasSwitchRawActuator.getActive() && isSwitchOffRequired(nodeGasParameter, updatedValue) && !arePeopleInside) {
-                    changeSwitchStatus(nodeGasSwitchRawActuator, updatedValue, nodeGasParameter);
+            public void onDataChanged(DoubleSmartObjectResource resource, double updatedValue) {
+                //The rule is evaluated on every sample to keep its state up to date
+                boolean isSwitchOffRequired = switchOffRuleEvaluator.evaluate(updatedValue, System.currentTimeMillis());
+
+                if (isSwitchOffRequired && nodeSwitchRawActuator.getActive() && !zoneOccupancyTable.arePeopleInside(sectorName)) {
+                    changeSwitchStatus(nodeSwitchRawActuator, updatedValue, nodeParameter);
                 }
             }
         });
 
-
-        return gasProviderResource;
-
+        return providerResource;
     }
 
-    private static void registerToCoapResourceDirectory(Resource rootResource, String endPointName, String sectorName, String sourceIpAddress, int sourcePort) {
-
-        try {
-            //coap://192.168.10.19:5683/rd?ep=myEndpointName&d=mySectorName&base=coap://<sourceIp>:<sourcePort>
-            String finalRdUrl = String.format("%s?ep=%s&d=%s&base=coap://%s:%d"
-                    , RD_COAP_ENDPOINT_BASE_URL
-                    , endPointName
-                    , sectorName
-                    , sourceIpAddress
-                    , sourcePort);
-
-            logger.info("Registering to Resource Directory: {}", finalRdUrl);
-
-            //Init coap client
-            CoapClient coapClient = new CoapClient(finalRdUrl);
-
-            //Request Class is a generic CoAP message: in this case we want a GET.
-            //"Message ID", "Token" and other header's fields can be set
-            Request request = new Request(CoAP.Code.POST);
-
-            //If the POST request has a payload it can be set with the following command
-            request.setPayload(LinkFormat.serializeTree(rootResource));
-
-            //Set Request as Confirmable
-            request.setConfirmable(true);
-
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(request));
-
-            //Synchronously send the POST request (blocking call)
-            CoapResponse response = null;
-
-            try {
+    /**
+     * Register the node to the Resource Directory with an explicit lifetime:
+     * the registration is refreshed before it expires and the resources added or removed at runtime are sent incrementally
+     */
+    private static RdRegistrationClient registerToCoapResourceDirectory(Resource rootResource, String endPointName, String sectorName, String sourceIpAddress, int sourcePort) {
 
-                response = coapClient.advanced(request);
+        RdRegistrationClient rdRegistrationClient = new RdRegistrationClient(clientEndpointPool.getClient(RD_COAP_BASE_URL)
+                , RD_COAP_BASE_URL
+                , endPointName
+                , sectorName
+                , String.format("coap://%s:%d", sourceIpAddress, sourcePort)
+                , RD_LIFETIME
+                , rootResource
+                , switchTimerWheel);
 
-                logger.info("Response Pretty Print:\n{}", Utils.prettyPrint(response));
+        logger.info("Registering to Resource Directory: {} (ep: {}, d: {}, lt: {}s)", RD_COAP_BASE_URL, endPointName, sectorName, RD_LIFETIME);
 
-                //The "CoapResponse" message contains the response.
-                String text = response.getResponseText();
-                logger.info("Payload: {}", text);
-                logger.info("Message ID: " + response.advanced().getMID());
-                logger.info("Token: " + response.advanced().getTokenString());
+        rdRegistrationClient.start();
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        //Do not leave a stale registration on the RD
+        Runtime.getRuntime().addShutdownHook(new Thread(rdRegistrationClient::stop));
 
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        return rdRegistrationClient;
     }
 
 
     public static void main(String[] args) {
 
-        CoapEndpointSmartSystemProcess smartSystemEndpointProcess = new CoapEndpointSmartSystemProcess();
+        //Optional argument: the UDP sockets bound to each address (SO_REUSEPORT)
+        int receiveSocketsPerAddress = args.length > 0 ? Integer.parseInt(args[0]) : RECEIVE_SOCKETS_PER_ADDRESS;
+
+        CoapEndpointSmartSystemProcess smartSystemEndpointProcess = new CoapEndpointSmartSystemProcess(receiveSocketsPerAddress);
         smartSystemEndpointProcess.start();
 
         logger.info("Coap Server Started ! Available resources: ");
@@ -374,8 +385,6 @@ public class CoapEndpointSmartSystemProcess extends CoapServer {
                 , TARGET_LISTENING_IP_ADDRESS
                 , TARGET_COAP_PORT);
 
-        CoapClient coapClient = new CoapClient();
-
-        observingPresenceSensor(coapClient);
+        observingPresenceSensors();
     }
 }
@@ -0,0 +1,164 @@
+package it.unimore.dipi.iot.server.coap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.server.model.MeterAggregate;
+import it.unimore.dipi.iot.server.model.MeterTypeDescriptor;
+import it.unimore.dipi.iot.server.raw.MeterRawAggregator;
+import it.unimore.dipi.iot.server.raw.ResourceDataListener;
+import it.unimore.dipi.iot.server.raw.SmartObjectResource;
+import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.SenMLPack;
+import it.unimore.dipi.iot.utils.SenMLRecord;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * This is the CoAP resource of the aggregates of a meter over a window (E.g. /water-provider/H2O/minute).
+ * Observers are notified once per window with the aggregate of the closed window:
+ * a collector needing only the billing granularity receives one notification per minute (or hour)
+ * instead of one per reading. The notifications are CONs, their rate is low.
+ *
+ * The SenML pack has the base name "<device_id>:<provider>/<meter>/<window>/", the window start as base time,
+ * the meter unit as base unit and the window duration as update time (both in ms, as every SenML time of the node), followed by the records
+ * "mean", "min", "max", "sum" (the consumption of the window in the sum field "s") and "count".
+ * Before the first window is closed the pack has the base record only.
+ * The text/plain payload is the mean of the window.
+ * The resource type is the one of the meter with the suffix {@link MeterRawAggregator#RESOURCE_TYPE_SUFFIX}:
+ * the collectors of the raw readings do not observe the aggregates.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 06:40
+ * @project coap-smart-building
+ */
+
+public class CoapMeterAggregateResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapMeterAggregateResource.class);
+
+    private static final Number VERSION = 0.1;
+
+    private static final String COUNT_UNIT = "count";
+
+    //Jackson Object Mapper + Ignore Null Fields in order to properly generate the SenML Payload
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private MeterRawAggregator meterRawAggregator;
+
+    private MeterTypeDescriptor meterTypeDescriptor;
+
+    private String deviceId;
+
+    private volatile MeterAggregate meterAggregate;
+
+
+    public CoapMeterAggregateResource(String deviceId, String name, MeterRawAggregator meterRawAggregator) {
+        super(name);
+
+        if (deviceId != null && meterRawAggregator != null) {
+            this.deviceId = deviceId;
+            this.meterRawAggregator = meterRawAggregator;
+            this.meterTypeDescriptor = meterRawAggregator.getMeterRawSensor().getMeterTypeDescriptor();
+            this.meterAggregate = meterRawAggregator.loadUpdatedValue();
+
+            setObservable(true); //Enable observing
+            setObserveType(CoAP.Type.CON); //One notification per window: every one is confirmed
+
+            //Specify Resource Attributes according to the CoRE Link-Format and the CoRE Interfaces
+            getAttributes().setTitle(String.format("%sAggregate", meterTypeDescriptor.getTitle()));
+            getAttributes().setObservable(); //mark observable in the Link-Format
+            getAttributes().addAttribute("rt", meterRawAggregator.getType());
+            getAttributes().addAttribute("if", CoreInterfaces.CORE_S.getValue());
+            getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
+            getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.TEXT_PLAIN));
+
+            meterRawAggregator.addDataListener(new ResourceDataListener<MeterAggregate>() {
+                @Override
+                public void onDataChanged(SmartObjectResource<MeterAggregate> resource, MeterAggregate updatedValue) {
+                    meterAggregate = updatedValue;
+                    changed();
+                }
+            });
+        } else
+            logger.error("Error -> NULL Raw Reference");
+    }
+
+    private Optional<String> getJsonSenmlResponse() {
+        try {
+
+            MeterAggregate aggregate = this.meterAggregate;
+
+            SenMLPack senMLPack = new SenMLPack();
+
+            SenMLRecord baseRecord = new SenMLRecord();
+            baseRecord.setBn(String.format("%s:%s/", this.deviceId, getURI().substring(1)));
+            baseRecord.setBver(VERSION);
+            baseRecord.setBu(meterTypeDescriptor.getUnit());
+            baseRecord.setUt(this.meterRawAggregator.getWindowDuration());
+            senMLPack.add(baseRecord);
+
+            if (aggregate != null) {
+                baseRecord.setBt(aggregate.getWindowStart());
+                senMLPack.add(createRecord("mean", aggregate.getMean()));
+                senMLPack.add(createRecord("min", aggregate.getMin()));
+                senMLPack.add(createRecord("max", aggregate.getMax()));
+
+                SenMLRecord sumRecord = new SenMLRecord();
+                sumRecord.setN("sum");
+                sumRecord.setS(aggregate.getSum());
+                senMLPack.add(sumRecord);
+
+                SenMLRecord countRecord = createRecord("count", aggregate.getCount());
+                countRecord.setU(COUNT_UNIT);
+                senMLPack.add(countRecord);
+            }
+
+            return Optional.of(objectMapper.writeValueAsString(senMLPack));
+
+        } catch (Exception e) {
+            logger.error("Error Generating SenML Record ! Msg: {}", e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static SenMLRecord createRecord(String name, Number value) {
+        SenMLRecord senMLRecord = new SenMLRecord();
+        senMLRecord.setN(name);
+        senMLRecord.setV(value);
+        return senMLRecord;
+    }
+
+    public MeterAggregate getMeterAggregate() {
+        return meterAggregate;
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+
+        MeterAggregate aggregate = this.meterAggregate;
+
+        //The aggregate does not change until the end of the next window (Max-Age is in seconds)
+        if (aggregate != null)
+            exchange.setMaxAge(Math.max(0, aggregate.getWindowEnd() + aggregate.getWindowDuration() - System.currentTimeMillis()) / 1000);
+
+        if (exchange.getRequestOptions().getAccept() == MediaTypeRegistry.APPLICATION_SENML_JSON ||
+                exchange.getRequestOptions().getAccept() == MediaTypeRegistry.APPLICATION_JSON) {
+
+            Optional<String> senmlPayload = getJsonSenmlResponse();
+
+            if (senmlPayload.isPresent())
+                exchange.respond(CoAP.ResponseCode.CONTENT, senmlPayload.get(), exchange.getRequestOptions().getAccept());
+            else
+                exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+
+        } else
+            exchange.respond(CoAP.ResponseCode.CONTENT, aggregate != null ? String.valueOf(aggregate.getMean()) : "", MediaTypeRegistry.TEXT_PLAIN);
+    }
+}
@@ -0,0 +1,204 @@
+package it.unimore.dipi.iot.server.coap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.server.coap.observe.ConditionalObserveFilter;
+import it.unimore.dipi.iot.server.coap.observe.ObserveNotificationMode;
+import it.unimore.dipi.iot.server.coap.observe.ObserveNotificationTypeController;
+import it.unimore.dipi.iot.server.model.MeterTypeDescriptor;
+import it.unimore.dipi.iot.server.raw.DoubleResourceDataListener;
+import it.unimore.dipi.iot.server.raw.DoubleSmartObjectResource;
+import it.unimore.dipi.iot.server.raw.MeterRawSensor;
+import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.SenMLPack;
+import it.unimore.dipi.iot.utils.SenMLRecord;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * This is the generic consumption CoAP resource (water, energy, gas, ...).
+ * Title, unit and resource type are taken from the {@link MeterTypeDescriptor} of the raw meter.
+ * The resource has attributes "rt", "obs", "if" and "ct" as standard CoRE Interface
+ * Observers can register with the conditional attributes pmin, pmax, gt, lt and st as query parameters
+ * Notifications are NON, a CON is sent periodically to check the observer (see {@link #DEFAULT_NOTIFICATION_MODE})
+ * The SenML records carry the cumulative total of the meter in the sum field "s" (E.g. liters for a l/s meter):
+ * a collector can bill from the difference of two sums without receiving every notification
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 09:45
+ * @project coap-smart-building
+ */
+
+public class CoapMeterResource extends CoapResource implements SenMLBatchItem {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapMeterResource.class);
+
+    private static final Number VERSION = 0.1;
+
+    //A CON every 10 notifications or at least every minute
+    public static final ObserveNotificationMode DEFAULT_NOTIFICATION_MODE = ObserveNotificationMode.mixed(10, 60 * 1000);
+
+    //Jackson Object Mapper + Ignore Null Fields in order to properly generate the SenML Payload
+    //The mapper is thread-safe once configured, so it is shared by every meter resource
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private volatile double updatedValue = 0.0;
+
+    private volatile double updatedTotal = 0.0;
+
+    private MeterRawSensor meterRawSensor;
+
+    private MeterTypeDescriptor meterTypeDescriptor;
+
+    private String deviceId;
+
+    private String baseName;
+
+    private ConditionalObserveFilter conditionalObserveFilter;
+
+    private ObserveNotificationTypeController notificationTypeController;
+
+    private volatile Runnable batchChangeListener;
+
+
+    public CoapMeterResource(String deviceId, String name, MeterRawSensor meterRawSensor) {
+        super(name);
+
+        if (deviceId != null && meterRawSensor != null) {
+            this.deviceId = deviceId;
+            this.meterRawSensor = meterRawSensor;
+            this.meterTypeDescriptor = meterRawSensor.getMeterTypeDescriptor();
+            this.updatedTotal = meterRawSensor.getTotal();
+            this.baseName = String.format("%s:%s", this.deviceId, name);
+
+            setObservable(true); //Enable observing
+            setObserveType(null); //The notification type is chosen per relation by the notificationTypeController
+
+            //Specify Resource Attributes according to the CoRE Link-Format and the CoRE Interfaces
+            getAttributes().setTitle(meterTypeDescriptor.getTitle());
+            getAttributes().setObservable(); //mark observable in the Link-Format
+
+            //Domain specific E.g. smartBuilding.floor.<floor_id>.system.<system_id>.device.<type>.<device_id>
+            getAttributes().addAttribute("rt", meterRawSensor.getType());
+            getAttributes().addAttribute("if", CoreInterfaces.CORE_S.getValue());
+            getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
+            getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.TEXT_PLAIN));
+
+            //Notifications are filtered per observer according to its conditional attributes
+            this.conditionalObserveFilter = new ConditionalObserveFilter(this::getUpdatedValue);
+            addObserver(this.conditionalObserveFilter);
+
+            this.notificationTypeController = new ObserveNotificationTypeController(DEFAULT_NOTIFICATION_MODE);
+            addObserver(this.notificationTypeController);
+
+            this.meterRawSensor.addDoubleDataListener(new DoubleResourceDataListener() {
+                @Override
+                public void onDataChanged(DoubleSmartObjectResource resource, double value) {
+                    //The total is updated before the value is notified
+                    updatedTotal = meterRawSensor.getTotal();
+                    updatedValue = value;
+                    changed(conditionalObserveFilter);
+
+                    Runnable batchListener = batchChangeListener;
+                    if (batchListener != null)
+                        batchListener.run();
+                }
+            });
+        } else
+            logger.error("Error -> NULL Raw Reference");
+    }
+
+    private Optional<String> getJsonSenmlResponse() {
+        try {
+
+            SenMLPack senMLPack = new SenMLPack();
+
+            SenMLRecord senMLRecord = new SenMLRecord();
+            senMLRecord.setBn(this.baseName);
+            senMLRecord.setBver(VERSION);
+            senMLRecord.setU(meterTypeDescriptor.getUnit());
+            senMLRecord.setV(updatedValue);
+            senMLRecord.setS(updatedTotal);
+            senMLRecord.setT(System.currentTimeMillis());
+
+            senMLPack.add(senMLRecord);
+
+            return Optional.of(objectMapper.writeValueAsString(senMLPack));
+
+        } catch (Exception e) {
+            logger.error("Error Generating SenML Record ! Msg: {}", e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void appendSenMLRecords(SenMLPack senMLPack, String recordName) {
+        SenMLRecord senMLRecord = new SenMLRecord();
+        senMLRecord.setN(recordName);
+        senMLRecord.setU(meterTypeDescriptor.getUnit());
+        senMLRecord.setV(updatedValue);
+        senMLRecord.setS(updatedTotal);
+        senMLPack.add(senMLRecord);
+    }
+
+    @Override
+    public void setBatchChangeListener(Runnable batchChangeListener) {
+        this.batchChangeListener = batchChangeListener;
+    }
+
+    public ObserveNotificationMode getNotificationMode() {
+        return notificationTypeController.getNotificationMode();
+    }
+
+    public void setNotificationMode(ObserveNotificationMode notificationMode) {
+        this.notificationTypeController.setNotificationMode(notificationMode);
+    }
+
+    public double getUpdatedValue() {
+        return updatedValue;
+    }
+
+    public double getUpdatedTotal() {
+        return updatedTotal;
+    }
+
+    @Override
+    public void checkObserveRelation(Exchange exchange, Response response) {
+        ObserveRelation relation = exchange.getRelation();
+        boolean isNotification = relation != null && relation.isEstablished();
+
+        super.checkObserveRelation(exchange, response);
+
+        if (isNotification)
+            this.notificationTypeController.applyNotificationType(relation, response);
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+        //Do not consider requests made within an update period of each other (Max-Age is in seconds)
+        exchange.setMaxAge(meterTypeDescriptor.getUpdatePeriod() / 1000);
+
+        if (exchange.getRequestOptions().getAccept() == MediaTypeRegistry.APPLICATION_SENML_JSON ||
+                exchange.getRequestOptions().getAccept() == MediaTypeRegistry.APPLICATION_JSON) {
+
+            Optional<String> senmlPayload = getJsonSenmlResponse();
+
+            if (senmlPayload.isPresent())
+                exchange.respond(CoAP.ResponseCode.CONTENT, senmlPayload.get(), exchange.getRequestOptions().getAccept());
+            else
+                exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+
+        } else
+            exchange.respond(CoAP.ResponseCode.CONTENT, String.valueOf(updatedValue), MediaTypeRegistry.TEXT_PLAIN);
+    }
+}
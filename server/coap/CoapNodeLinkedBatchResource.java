@@ -0,0 +1,238 @@
+package it.unimore.dipi.iot.server.coap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.SenMLPack;
+import it.unimore.dipi.iot.utils.SenMLRecord;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.LinkFormat;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This is the node-wide Linked Batch (core.lb) resource, E.g. /snapshot
+ * - GET with link-format      returns the links of every provider and of its members
+ * - GET with senml (default)  returns the current value of every meter, switch and parameter of the node in one SenML pack,
+ *                             records are named "<provider>/<member>" (E.g. "water-provider/switch")
+ * - PUT/POST with senml       updates several actuators and parameters at once (E.g. {"n":"gas-provider/switch","vb":false})
+ *
+ * Large snapshots are transferred with Block2 by the Californium blockwise layer.
+ * An update is applied only if every record addresses a writable member with a valid value, otherwise nothing changes:
+ * - a name that is not a member of this node (E.g. prefixed by another device id) is rejected with 4.04 Not Found
+ * - a read-only member (E.g. a meter) is rejected with 4.05 Method Not Allowed
+ * - an invalid value is rejected with 4.00 Bad Request
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 15:05
+ * @project coap-smart-building
+ */
+
+public class CoapNodeLinkedBatchResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapNodeLinkedBatchResource.class);
+
+    private static final Number VERSION = 0.1;
+
+    private static final String OBJECT_TITLE = "NodeSnapshot";
+
+    private static final String RESOURCE_TYPE = "iot.node";
+
+    //Jackson Object Mapper + Ignore Null Fields in order to properly generate the SenML Payload
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Map<String, CoapProviderBatchResource> providerMap = new ConcurrentHashMap<>();
+
+    private String deviceId;
+
+    private String baseName;
+
+
+    public CoapNodeLinkedBatchResource(String deviceId, String name) {
+        super(name);
+
+        this.deviceId = deviceId;
+        this.baseName = String.format("%s:", deviceId);
+
+        //Specify Resource Attributes according to the CoRE Link-Format and the CoRE Interfaces
+        getAttributes().setTitle(OBJECT_TITLE);
+        getAttributes().addAttribute("rt", RESOURCE_TYPE);
+        getAttributes().addAttribute("if", CoreInterfaces.CORE_LB.getValue());
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_LINK_FORMAT));
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
+    }
+
+    public void addProvider(CoapProviderBatchResource providerResource) {
+        this.providerMap.put(providerResource.getName(), providerResource);
+    }
+
+    public void removeProvider(CoapProviderBatchResource providerResource) {
+        this.providerMap.remove(providerResource.getName(), providerResource);
+    }
+
+    private Optional<String> getJsonSenmlResponse() {
+        try {
+
+            SenMLPack senMLPack = new SenMLPack();
+
+            SenMLRecord baseRecord = new SenMLRecord();
+            baseRecord.setBn(this.baseName);
+            baseRecord.setBver(VERSION);
+            baseRecord.setBt(System.currentTimeMillis());
+
+            senMLPack.add(baseRecord);
+
+            this.providerMap.values().forEach(provider -> provider.appendSenMLRecords(senMLPack, provider.getName() + "/"));
+
+            return Optional.of(objectMapper.writeValueAsString(senMLPack));
+
+        } catch (Exception e) {
+            logger.error("Error Generating SenML Record ! Msg: {}", e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
+    private String getLinkFormatResponse() {
+        StringBuilder sb = new StringBuilder();
+        this.providerMap.values().forEach(provider -> {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(LinkFormat.serializeTree(provider));
+        });
+        return sb.toString();
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+
+        int accept = exchange.getRequestOptions().getAccept();
+
+        if (accept == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+
+            exchange.respond(CoAP.ResponseCode.CONTENT, getLinkFormatResponse(), MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+
+        } else if (accept == MediaTypeRegistry.UNDEFINED
+                || accept == MediaTypeRegistry.APPLICATION_SENML_JSON
+                || accept == MediaTypeRegistry.APPLICATION_JSON) {
+
+            Optional<String> senmlPayload = getJsonSenmlResponse();
+
+            if (senmlPayload.isPresent())
+                exchange.respond(CoAP.ResponseCode.CONTENT, senmlPayload.get(),
+                        accept == MediaTypeRegistry.UNDEFINED ? MediaTypeRegistry.APPLICATION_SENML_JSON : accept);
+            else
+                exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+
+        } else
+            exchange.respond(CoAP.ResponseCode.NOT_ACCEPTABLE);
+    }
+
+    @Override
+    public void handlePUT(CoapExchange exchange) {
+        handleSenmlUpdate(exchange);
+    }
+
+    @Override
+    public void handlePOST(CoapExchange exchange) {
+        handleSenmlUpdate(exchange);
+    }
+
+    private void handleSenmlUpdate(CoapExchange exchange) {
+        try {
+
+            if (exchange.getRequestPayload() == null || exchange.getRequestPayload().length == 0) {
+                logger.warn("Received a batch update with an empty body !");
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+                return;
+            }
+
+            SenMLPack senMLPack = objectMapper.readValue(exchange.getRequestPayload(), SenMLPack.class);
+
+            //Resolve and validate every record before applying any of them
+            List<WritableSenMLBatchItem> targetItemList = new ArrayList<>();
+            List<SenMLRecord> targetRecordList = new ArrayList<>();
+            String currentBaseName = "";
+
+            for (SenMLRecord senMLRecord : senMLPack) {
+
+                if (senMLRecord.getBn() != null)
+                    currentBaseName = senMLRecord.getBn();
+
+                if (senMLRecord.getN() == null && senMLRecord.getV() == null && senMLRecord.getVb() == null)
+                    continue; //base record only
+
+                SenMLBatchItem item = resolveBatchItem(currentBaseName + (senMLRecord.getN() != null ? senMLRecord.getN() : ""));
+
+                CoAP.ResponseCode rejectionCode = null;
+                if (item == null)
+                    rejectionCode = CoAP.ResponseCode.NOT_FOUND;
+                else if (!(item instanceof WritableSenMLBatchItem))
+                    rejectionCode = CoAP.ResponseCode.METHOD_NOT_ALLOWED;
+                else if (!((WritableSenMLBatchItem) item).acceptsSenMLUpdate(senMLRecord))
+                    rejectionCode = CoAP.ResponseCode.BAD_REQUEST;
+
+                if (rejectionCode != null) {
+                    logger.warn("Rejected batch update record ({}): {}", rejectionCode, senMLRecord);
+                    exchange.respond(rejectionCode);
+                    return;
+                }
+
+                targetItemList.add((WritableSenMLBatchItem) item);
+                targetRecordList.add(senMLRecord);
+            }
+
+            if (targetItemList.isEmpty()) {
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+                return;
+            }
+
+            for (int i = 0; i < targetItemList.size(); i++)
+                targetItemList.get(i).applySenMLUpdate(targetRecordList.get(i));
+
+            logger.info("Batch update applied to {} resources", targetItemList.size());
+            exchange.respond(CoAP.ResponseCode.CHANGED);
+
+        } catch (Exception e) {
+            logger.error("Error handling batch update: {}", e.getLocalizedMessage());
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @param recordName full record name, E.g. "dipi:iot:<uuid>:water-provider/switch" or "water-provider/switch"
+     * @return the addressed batch member, null if there is none or if the name belongs to another device
+     */
+    private SenMLBatchItem resolveBatchItem(String recordName) {
+
+        //A name with a device id must carry the one of this node, a name without it is relative to this node
+        String relativeName;
+        if (recordName.startsWith(this.baseName))
+            relativeName = recordName.substring(this.baseName.length());
+        else if (recordName.indexOf(':') < 0)
+            relativeName = recordName;
+        else
+            return null;
+
+        if (relativeName.startsWith("/"))
+            relativeName = relativeName.substring(1);
+
+        int separator = relativeName.indexOf('/');
+        if (separator <= 0)
+            return null;
+
+        CoapProviderBatchResource provider = this.providerMap.get(relativeName.substring(0, separator));
+        return provider != null ? provider.getBatchItem(relativeName.substring(separator + 1)) : null;
+    }
+}
@@ -0,0 +1,175 @@
+package it.unimore.dipi.iot.server.coap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.server.coap.observe.ObserveNotificationMode;
+import it.unimore.dipi.iot.server.coap.observe.ObserveNotificationTypeController;
+import it.unimore.dipi.iot.utils.CoreInterfaces;
+import it.unimore.dipi.iot.utils.SenMLPack;
+import it.unimore.dipi.iot.utils.SenMLRecord;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Exchange;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * This is the provider CoAP resource (E.g. /water-provider) acting as Batch (core.b) resource.
+ * A GET returns the current value of every child (meter, switch and parameter) in a single SenML pack:
+ * the first record holds the base name "<device_id>:<provider>/" and each child is a record named after it.
+ * The resource is observable as a unit: observers are notified every time a child changes.
+ * Notifications are NON, a CON is sent periodically to check the observer (see {@link #DEFAULT_NOTIFICATION_MODE})
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 14:20
+ * @project coap-smart-building
+ */
+
+public class CoapProviderBatchResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapProviderBatchResource.class);
+
+    private static final Number VERSION = 0.1;
+
+    private static final String OBJECT_TITLE = "ProviderBatch";
+
+    private static final String RESOURCE_TYPE = "iot.provider";
+
+    //Every meter update is a batch notification: a CON every 20 notifications or at least every minute
+    public static final ObserveNotificationMode DEFAULT_NOTIFICATION_MODE = ObserveNotificationMode.mixed(20, 60 * 1000);
+
+    //Jackson Object Mapper + Ignore Null Fields in order to properly generate the SenML Payload
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    private String deviceId;
+
+    private String baseName;
+
+    private final Runnable childChangeListener = this::changed;
+
+    private final ObserveNotificationTypeController notificationTypeController = new ObserveNotificationTypeController(DEFAULT_NOTIFICATION_MODE);
+
+
+    public CoapProviderBatchResource(String deviceId, String name) {
+        super(name);
+
+        this.deviceId = deviceId;
+        this.baseName = String.format("%s:%s/", deviceId, name);
+
+        setObservable(true); //Enable observing
+        setObserveType(null); //The notification type is chosen per relation by the notificationTypeController
+        addObserver(this.notificationTypeController);
+
+        //Specify Resource Attributes according to the CoRE Link-Format and the CoRE Interfaces
+        getAttributes().setTitle(OBJECT_TITLE);
+        getAttributes().setObservable(); //mark observable in the Link-Format
+        getAttributes().addAttribute("rt", RESOURCE_TYPE);
+        getAttributes().addAttribute("if", CoreInterfaces.CORE_B.getValue());
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
+    }
+
+    @Override
+    public synchronized void add(Resource child) {
+        super.add(child);
+        if (child instanceof SenMLBatchItem)
+            ((SenMLBatchItem) child).setBatchChangeListener(this.childChangeListener);
+    }
+
+    @Override
+    public synchronized boolean delete(Resource child) {
+        if (child instanceof SenMLBatchItem)
+            ((SenMLBatchItem) child).setBatchChangeListener(null);
+        return super.delete(child);
+    }
+
+    public ObserveNotificationMode getNotificationMode() {
+        return notificationTypeController.getNotificationMode();
+    }
+
+    public void setNotificationMode(ObserveNotificationMode notificationMode) {
+        this.notificationTypeController.setNotificationMode(notificationMode);
+    }
+
+    @Override
+    public void checkObserveRelation(Exchange exchange, Response response) {
+        ObserveRelation relation = exchange.getRelation();
+        boolean isNotification = relation != null && relation.isEstablished();
+
+        super.checkObserveRelation(exchange, response);
+
+        if (isNotification)
+            this.notificationTypeController.applyNotificationType(relation, response);
+    }
+
+    /**
+     * Appends the records of every batch member, named relatively to the given prefix
+     *
+     * @param senMLPack    the target pack
+     * @param recordPrefix prefix of the record names, E.g. "" or "water-provider/"
+     */
+    public void appendSenMLRecords(SenMLPack senMLPack, String recordPrefix) {
+        for (Resource child : getChildren()) {
+            if (child instanceof SenMLBatchItem)
+                ((SenMLBatchItem) child).appendSenMLRecords(senMLPack, recordPrefix + child.getName());
+        }
+    }
+
+    /**
+     * @param recordName the record name relative to this provider, E.g. "switch"
+     * @return the batch member with that name, null if there is none
+     */
+    public SenMLBatchItem getBatchItem(String recordName) {
+        Resource child = getChild(recordName);
+        return child instanceof SenMLBatchItem ? (SenMLBatchItem) child : null;
+    }
+
+    private Optional<String> getJsonSenmlResponse() {
+        try {
+
+            SenMLPack senMLPack = new SenMLPack();
+
+            SenMLRecord baseRecord = new SenMLRecord();
+            baseRecord.setBn(this.baseName);
+            baseRecord.setBver(VERSION);
+            baseRecord.setBt(System.currentTimeMillis());
+
+            senMLPack.add(baseRecord);
+            appendSenMLRecords(senMLPack, "");
+
+            return Optional.of(objectMapper.writeValueAsString(senMLPack));
+
+        } catch (Exception e) {
+            logger.error("Error Generating SenML Record ! Msg: {}", e.getLocalizedMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void handleGET(CoapExchange exchange) {
+
+        int accept = exchange.getRequestOptions().getAccept();
+
+        if (accept == MediaTypeRegistry.UNDEFINED
+                || accept == MediaTypeRegistry.APPLICATION_SENML_JSON
+                || accept == MediaTypeRegistry.APPLICATION_JSON) {
+
+            Optional<String> senmlPayload = getJsonSenmlResponse();
+
+            if (senmlPayload.isPresent())
+                exchange.respond(CoAP.ResponseCode.CONTENT, senmlPayload.get(),
+                        accept == MediaTypeRegistry.UNDEFINED ? MediaTypeRegistry.APPLICATION_SENML_JSON : accept);
+            else
+                exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+
+        } else
+            exchange.respond(CoAP.ResponseCode.NOT_ACCEPTABLE);
+    }
+}
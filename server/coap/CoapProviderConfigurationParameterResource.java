@@ -3,15 +3,13 @@ package it.unimore.dipi.iot.server.coap;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import it.unimore.dipi.iot.server.model.ChangeResourceParameterDescriptor;
-import it.unimore.dipi.iot.server.model.GenericCounterConfigurationModel;
+import it.unimore.dipi.iot.server.model.ProviderConfigurationSnapshot;
 import it.unimore.dipi.iot.server.raw.ProviderRawConfigurationParameter;
 import it.unimore.dipi.iot.server.raw.ResourceDataListener;
 import it.unimore.dipi.iot.server.raw.SmartObjectResource;
 import it.unimore.dipi.iot.utils.CoreInterfaces;
 import it.unimore.dipi.iot.utils.SenMLPack;
 import it.unimore.dipi.iot.utils.SenMLRecord;
-import org.eclipse.californium.core.CoapResource;
-import org.eclipse.californium.core.Utils;
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.server.resources.CoapExchange;
@@ -26,7 +24,7 @@ import java.util.Optional;
  * @project coap-smart-building
  */
 
-public class CoapProviderConfigurationParameterResource extends CoapResource {
+public class CoapProviderConfigurationParameterResource extends TrafficLoggedCoapResource implements WritableSenMLBatchItem {
 
     private static final Logger logger = LoggerFactory.getLogger(CoapProviderConfigurationParameterResource.class);
 
@@ -36,12 +34,12 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
 
     private ProviderRawConfigurationParameter providerRawConfigurationParameter;
 
-    private GenericCounterConfigurationModel configurationModel;
-
     private ObjectMapper objectMapper;
 
     private String deviceId;
 
+    private volatile Runnable batchChangeListener;
+
     public CoapProviderConfigurationParameterResource(String deviceId, String name, ProviderRawConfigurationParameter providerRawConfigurationParameter) {
         super(name);
 
@@ -49,7 +47,6 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
 
             this.deviceId = deviceId;
             this.providerRawConfigurationParameter = providerRawConfigurationParameter;
-            this.configurationModel = providerRawConfigurationParameter.getGenericCounterConfigurationModel();
 
             //Jackson Object Mapper + Ignore Null Fields in order to properly generate the SenML Payload
             this.objectMapper = new ObjectMapper();
@@ -67,11 +64,15 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
             getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.TEXT_PLAIN));
             getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
 
-            providerRawConfigurationParameter.addDataListener(new ResourceDataListener<GenericCounterConfigurationModel>() {
+            //Notified once per configuration version, the representation is read from the published snapshot
+            providerRawConfigurationParameter.addDataListener(new ResourceDataListener<ProviderConfigurationSnapshot>() {
                 @Override
-                public void onDataChanged(SmartObjectResource<GenericCounterConfigurationModel> resource, GenericCounterConfigurationModel updatedValue) {
-                    configurationModel = updatedValue;
+                public void onDataChanged(SmartObjectResource<ProviderConfigurationSnapshot> resource, ProviderConfigurationSnapshot updatedValue) {
                     changed();
+
+                    Runnable batchListener = batchChangeListener;
+                    if (batchListener != null)
+                        batchListener.run();
                 }
             });
         } else
@@ -82,6 +83,9 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
 
         try {
 
+            //A single snapshot: every record comes from the same configuration version
+            ProviderConfigurationSnapshot configurationSnapshot = this.providerRawConfigurationParameter.getConfigurationSnapshot();
+
             SenMLPack senMLPack = new SenMLPack();
 
             SenMLRecord baseRecord = new SenMLRecord();
@@ -90,11 +94,28 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
 
             SenMLRecord maxConsRecord = new SenMLRecord();
             maxConsRecord.setN("max_consumption_value");
-            maxConsRecord.setU(this.configurationModel.getRawMaterialMeasureUnit());
-            maxConsRecord.setV(this.configurationModel.getMaxValueConsumption());
+            maxConsRecord.setU(configurationSnapshot.getRawMaterialMeasureUnit());
+            maxConsRecord.setV(configurationSnapshot.getMaxValueConsumption());
+
+            SenMLRecord hysteresisRecord = new SenMLRecord();
+            hysteresisRecord.setN("hysteresis");
+            hysteresisRecord.setU(configurationSnapshot.getRawMaterialMeasureUnit());
+            hysteresisRecord.setV(configurationSnapshot.getHysteresis());
+
+            SenMLRecord sustainedSamplesRecord = new SenMLRecord();
+            sustainedSamplesRecord.setN("sustained_samples");
+            sustainedSamplesRecord.setV(configurationSnapshot.getSustainedSamples());
+
+            SenMLRecord maxRateRecord = new SenMLRecord();
+            maxRateRecord.setN("max_rate_of_change");
+            maxRateRecord.setU(String.format("%s/s", configurationSnapshot.getRawMaterialMeasureUnit()));
+            maxRateRecord.setV(configurationSnapshot.getMaxRateOfChange());
 
             senMLPack.add(baseRecord);
             senMLPack.add(maxConsRecord);
+            senMLPack.add(hysteresisRecord);
+            senMLPack.add(sustainedSamplesRecord);
+            senMLPack.add(maxRateRecord);
 
             return Optional.of(this.objectMapper.writeValueAsString(senMLPack));
 
@@ -104,6 +125,33 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
         }
     }
 
+    @Override
+    public void appendSenMLRecords(SenMLPack senMLPack, String recordName) {
+        ProviderConfigurationSnapshot configurationSnapshot = this.providerRawConfigurationParameter.getConfigurationSnapshot();
+
+        SenMLRecord senMLRecord = new SenMLRecord();
+        senMLRecord.setN(recordName);
+        senMLRecord.setU(configurationSnapshot.getRawMaterialMeasureUnit());
+        senMLRecord.setV(configurationSnapshot.getMaxValueConsumption());
+        senMLPack.add(senMLRecord);
+    }
+
+    @Override
+    public void setBatchChangeListener(Runnable batchChangeListener) {
+        this.batchChangeListener = batchChangeListener;
+    }
+
+    @Override
+    public boolean acceptsSenMLUpdate(SenMLRecord senMLRecord) {
+        return senMLRecord.getV() != null && senMLRecord.getV().doubleValue() > 0;
+    }
+
+    @Override
+    public void applySenMLUpdate(SenMLRecord senMLRecord) {
+        ProviderConfigurationSnapshot configurationSnapshot = this.providerRawConfigurationParameter.updateConfiguration(senMLRecord.getV().doubleValue(), null, null, null);
+        logger.info("Resource Status Updated by batch: {}", configurationSnapshot);
+    }
+
     @Override
     public void handleGET(CoapExchange exchange) {
         try {
@@ -118,7 +166,7 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
                     exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
 
             } else
-                exchange.respond(CoAP.ResponseCode.CONTENT, this.objectMapper.writeValueAsString(configurationModel));
+                exchange.respond(CoAP.ResponseCode.CONTENT, this.objectMapper.writeValueAsString(this.providerRawConfigurationParameter.getConfigurationSnapshot()));
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -126,11 +174,17 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
         }
     }
 
+    private static boolean isValidParameter(ChangeResourceParameterDescriptor changedParameter) {
+        return changedParameter.getChangedValue() > 0
+                && (changedParameter.getHysteresis() == null || changedParameter.getHysteresis() >= 0)
+                && (changedParameter.getSustainedSamples() == null || changedParameter.getSustainedSamples() >= 1)
+                && (changedParameter.getMaxRateOfChange() == null || changedParameter.getMaxRateOfChange() >= 0);
+    }
+
     @Override
     public void handlePUT(CoapExchange exchange) {
         try {
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(exchange.advanced().getRequest()));
-            logger.info("Received PUT Request with body: {}", exchange.getRequestText());
+            getTrafficLogger().log("PUT", exchange.advanced().getRequest());
 
             if (exchange.getRequestPayload() != null) {
 
@@ -140,13 +194,20 @@ public class CoapProviderConfigurationParameterResource extends CoapResource {
                 //Deserializing DTO into proper inner class
                 ChangeResourceParameterDescriptor changedParameter = this.objectMapper.readValue(receivedPayload, ChangeResourceParameterDescriptor.class);
 
-                //Setting configuration model
-                // changing Max Value Consumption parameter
-                this.configurationModel.setMaxValueConsumption(changedParameter.getChangedValue());
+                if (!isValidParameter(changedParameter)) {
+                    logger.warn("Received a PUT request with invalid parameters: {}", changedParameter);
+                    exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+                    return;
+                }
+
+                //Publishing the next configuration version:
+                // the Max Value Consumption parameter and the optional switch-off rule settings (null keeps the current value)
+                ProviderConfigurationSnapshot configurationSnapshot = this.providerRawConfigurationParameter.updateConfiguration(changedParameter.getChangedValue()
+                        , changedParameter.getHysteresis()
+                        , changedParameter.getSustainedSamples()
+                        , changedParameter.getMaxRateOfChange());
 
-                //Updating raw resource
-                this.providerRawConfigurationParameter.setGenericCounterConfigurationModel(configurationModel);
-                logger.info("Resource Status Updated: {}", this.configurationModel);
+                logger.info("Resource Status Updated: {}", configurationSnapshot);
 
                 exchange.respond(CoAP.ResponseCode.CHANGED);
 
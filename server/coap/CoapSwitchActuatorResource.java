@@ -8,8 +8,6 @@ import it.unimore.dipi.iot.server.raw.SwitchRawActuator;
 import it.unimore.dipi.iot.utils.CoreInterfaces;
 import it.unimore.dipi.iot.utils.SenMLPack;
 import it.unimore.dipi.iot.utils.SenMLRecord;
-import org.eclipse.californium.core.CoapResource;
-import org.eclipse.californium.core.Utils;
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.server.resources.CoapExchange;
@@ -24,7 +22,7 @@ import java.util.Optional;
  * @project coap-smart-building
  */
 
-public class CoapSwitchActuatorResource extends CoapResource {
+public class CoapSwitchActuatorResource extends TrafficLoggedCoapResource implements WritableSenMLBatchItem {
 
     private static final Logger logger = LoggerFactory.getLogger(CoapSwitchActuatorResource.class);
 
@@ -40,6 +38,8 @@ public class CoapSwitchActuatorResource extends CoapResource {
 
     private String deviceId;
 
+    private volatile Runnable batchChangeListener;
+
 
     public CoapSwitchActuatorResource(String deviceId, String name, SwitchRawActuator switchRawActuator) {
         super(name);
@@ -72,6 +72,10 @@ public class CoapSwitchActuatorResource extends CoapResource {
                     logger.info("Raw Resource Notification Callback ! New Value: {}", updatedValue);
                     isOn = updatedValue;
                     changed();
+
+                    Runnable batchListener = batchChangeListener;
+                    if (batchListener != null)
+                        batchListener.run();
                 }
             });
 
@@ -99,6 +103,31 @@ public class CoapSwitchActuatorResource extends CoapResource {
         }
     }
 
+    @Override
+    public void appendSenMLRecords(SenMLPack senMLPack, String recordName) {
+        SenMLRecord senMLRecord = new SenMLRecord();
+        senMLRecord.setN(recordName);
+        senMLRecord.setVb(this.isOn);
+        senMLPack.add(senMLRecord);
+    }
+
+    @Override
+    public void setBatchChangeListener(Runnable batchChangeListener) {
+        this.batchChangeListener = batchChangeListener;
+    }
+
+    @Override
+    public boolean acceptsSenMLUpdate(SenMLRecord senMLRecord) {
+        return senMLRecord.getVb() != null;
+    }
+
+    @Override
+    public void applySenMLUpdate(SenMLRecord senMLRecord) {
+        this.isOn = senMLRecord.getVb();
+        this.switchRawActuator.setActive(this.isOn); //All listeners and all observers are notified
+        logger.info("Resource Status Updated by batch: {}", this.isOn);
+    }
+
     @Override
     public void handleGET(CoapExchange exchange) {
         if (exchange.getRequestOptions().getAccept() == MediaTypeRegistry.APPLICATION_JSON ||
@@ -118,8 +147,7 @@ public class CoapSwitchActuatorResource extends CoapResource {
     public void handlePOST(CoapExchange exchange) {
 
         try {
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(exchange.advanced().getRequest()));
-            logger.info("Received POST Request with body: {}", exchange.getRequestPayload());
+            getTrafficLogger().log("POST", exchange.advanced().getRequest());
 
             if (exchange.getRequestPayload() == null) {
 
@@ -142,8 +170,7 @@ public class CoapSwitchActuatorResource extends CoapResource {
     public void handlePUT(CoapExchange exchange) {
 
         try {
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(exchange.advanced().getRequest()));
-            logger.info("Received PUT Request with body: {}", exchange.getRequestText());
+            getTrafficLogger().log("PUT", exchange.advanced().getRequest());
 
             if (exchange.getRequestPayload() != null) {
 
@@ -0,0 +1,110 @@
+package it.unimore.dipi.iot.server.coap;
+
+import it.unimore.dipi.iot.server.raw.SwitchRawActuator;
+import it.unimore.dipi.iot.utils.CoreInterfaces;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This is the group command resource of a node (E.g. /switches).
+ * The switch actuators join CoAP group (multicast) addresses, E.g. one per floor and one per supply type:
+ * a PUT "true"/"false" sent to a group address switches every member of that group with a single request.
+ * A unicast PUT switches every switch of the node.
+ *
+ * As per RFC 7252 the error responses to multicast requests are not sent.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 19:50
+ * @project coap-smart-building
+ */
+
+public class CoapSwitchGroupResource extends CoapResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoapSwitchGroupResource.class);
+
+    private static final String OBJECT_TITLE = "SwitchGroup";
+
+    private static final String RESOURCE_TYPE = "iot.actuator.switch.group";
+
+    private String deviceId;
+
+    //Group address -> member switches
+    private final Map<InetAddress, List<SwitchRawActuator>> groupMemberMap = new ConcurrentHashMap<>();
+
+    private final List<SwitchRawActuator> nodeSwitchList = new CopyOnWriteArrayList<>();
+
+
+    public CoapSwitchGroupResource(String deviceId, String name) {
+        super(name);
+
+        this.deviceId = deviceId;
+
+        //Specify Resource Attributes according to the CoRE Link-Format and the CoRE Interfaces
+        getAttributes().setTitle(OBJECT_TITLE);
+        getAttributes().addAttribute("rt", RESOURCE_TYPE);
+        getAttributes().addAttribute("if", CoreInterfaces.CORE_A.getValue());
+        getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.TEXT_PLAIN));
+    }
+
+    /**
+     * @param groupAddress     the group (multicast) address joined by the switch
+     * @param switchRawActuator the member switch
+     */
+    public void addMember(InetAddress groupAddress, SwitchRawActuator switchRawActuator) {
+        this.groupMemberMap.computeIfAbsent(groupAddress, key -> new CopyOnWriteArrayList<>()).add(switchRawActuator);
+        if (!this.nodeSwitchList.contains(switchRawActuator))
+            this.nodeSwitchList.add(switchRawActuator);
+    }
+
+    public Set<InetAddress> getGroupAddresses() {
+        return this.groupMemberMap.keySet();
+    }
+
+    @Override
+    public void handlePUT(CoapExchange exchange) {
+
+        try {
+            String payload = exchange.getRequestText() != null ? exchange.getRequestText().trim() : "";
+
+            if (!payload.equals("true") && !payload.equals("false")) {
+                exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+                return;
+            }
+
+            Request request = exchange.advanced().getRequest();
+
+            //A multicast request keeps the group address as destination
+            List<SwitchRawActuator> targetSwitchList = exchange.isMulticastRequest()
+                    ? this.groupMemberMap.get(request.getDestinationContext().getPeerAddress().getAddress())
+                    : this.nodeSwitchList;
+
+            if (targetSwitchList == null || targetSwitchList.isEmpty()) {
+                exchange.respond(CoAP.ResponseCode.NOT_FOUND);
+                return;
+            }
+
+            Boolean submittedValue = Boolean.parseBoolean(payload);
+            targetSwitchList.forEach(switchRawActuator -> switchRawActuator.setActive(submittedValue));
+
+            logger.debug("Group command -> {} switches of {} set to {}", targetSwitchList.size(), deviceId, submittedValue);
+
+            exchange.respond(CoAP.ResponseCode.CHANGED, Integer.toString(targetSwitchList.size()), MediaTypeRegistry.TEXT_PLAIN);
+
+        } catch (Exception e) {
+            logger.error("Error Handling PUT -> {}", e.getLocalizedMessage());
+            exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package it.unimore.dipi.iot.server.coap;
+
+import it.unimore.dipi.iot.utils.SenMLPack;
+
+/**
+ * A CoAP resource that can be read as a member of a batch (core.b) resource.
+ * The batch collects the current value of each member in a single SenML pack
+ * and is notified whenever a member changes, in order to be observable as a unit.
+ * Writable members (actuators, parameters) can also be updated by a SenML record sent to a batch (see {@link WritableSenMLBatchItem}).
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 14:10
+ * @project coap-smart-building
+ */
+
+public interface SenMLBatchItem {
+
+    /**
+     * Appends the current value of the resource to the batch pack
+     *
+     * @param senMLPack  the batch pack, its first record holds the base name
+     * @param recordName the name of the record, relative to the batch base name
+     */
+    public void appendSenMLRecords(SenMLPack senMLPack, String recordName);
+
+    /**
+     * @param batchChangeListener called every time the resource value changes, null to remove it
+     */
+    public void setBatchChangeListener(Runnable batchChangeListener);
+}
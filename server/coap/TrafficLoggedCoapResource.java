@@ -0,0 +1,33 @@
+package it.unimore.dipi.iot.server.coap;
+
+import it.unimore.dipi.iot.utils.TrafficLogger;
+import org.eclipse.californium.core.CoapResource;
+
+/**
+ * A CoAP resource with a traffic log of its requests (see {@link TrafficLogger}).
+ * The traffic logger is named after the URI of the resource without the leading '/' and with '.' as separator,
+ * E.g. water-provider.switch for /water-provider/switch and presence-entry for /presence-entry.
+ * The URI is known once the resource is added to its parent: the logger is looked up on the first request and then cached.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 08:10
+ * @project coap-smart-building
+ */
+
+public abstract class TrafficLoggedCoapResource extends CoapResource {
+
+    private volatile TrafficLogger trafficLogger;
+
+    public TrafficLoggedCoapResource(String name) {
+        super(name);
+    }
+
+    protected TrafficLogger getTrafficLogger() {
+        TrafficLogger resourceTrafficLogger = this.trafficLogger;
+        if (resourceTrafficLogger == null) {
+            resourceTrafficLogger = TrafficLogger.getLogger(getURI().substring(1).replace('/', '.'));
+            this.trafficLogger = resourceTrafficLogger;
+        }
+        return resourceTrafficLogger;
+    }
+}
@@ -0,0 +1,28 @@
+package it.unimore.dipi.iot.server.coap;
+
+import it.unimore.dipi.iot.utils.SenMLRecord;
+
+/**
+ * A batch member that can also be updated by a SenML record sent to a batch (actuators, parameters).
+ * The members that do not implement it are read-only: the batch rejects their updates with 4.05 Method Not Allowed.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 07:30
+ * @project coap-smart-building
+ */
+
+public interface WritableSenMLBatchItem extends SenMLBatchItem {
+
+    /**
+     * @param senMLRecord the record addressed to this resource
+     * @return true if the record is a valid update for this resource
+     */
+    public boolean acceptsSenMLUpdate(SenMLRecord senMLRecord);
+
+    /**
+     * Updates the resource with a record previously checked by {@link #acceptsSenMLUpdate(SenMLRecord)}
+     *
+     * @param senMLRecord the record addressed to this resource
+     */
+    public void applySenMLUpdate(SenMLRecord senMLRecord);
+}
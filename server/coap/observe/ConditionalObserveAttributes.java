@@ -0,0 +1,159 @@
+package it.unimore.dipi.iot.server.coap.observe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * CoRE dynamic linking conditional attributes given as query parameters of an observe registration
+ * E.g. coap://<node>/water-provider/H2O?pmin=10&pmax=60&st=0.2
+ *
+ * - pmin  minimum period (seconds) between two notifications
+ * - pmax  maximum period (seconds) without a notification
+ * - gt    notify when the value crosses this upper threshold
+ * - lt    notify when the value crosses this lower threshold
+ * - st    notify when the value moved at least this step from the last notified value
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 12:05
+ * @project coap-smart-building
+ */
+
+public class ConditionalObserveAttributes {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionalObserveAttributes.class);
+
+    public static final String PMIN_ATTRIBUTE = "pmin";
+
+    public static final String PMAX_ATTRIBUTE = "pmax";
+
+    public static final String GT_ATTRIBUTE = "gt";
+
+    public static final String LT_ATTRIBUTE = "lt";
+
+    public static final String ST_ATTRIBUTE = "st";
+
+    private final long pminMillis;
+
+    private final long pmaxMillis;
+
+    private final double greaterThan;
+
+    private final double lessThan;
+
+    private final double step;
+
+    public ConditionalObserveAttributes(long pminMillis, long pmaxMillis, double greaterThan, double lessThan, double step) {
+        this.pminMillis = pminMillis;
+        this.pmaxMillis = pmaxMillis;
+        this.greaterThan = greaterThan;
+        this.lessThan = lessThan;
+        this.step = step;
+    }
+
+    /**
+     * Parse the conditional attributes of the Uri-Query options.
+     * Invalid values are ignored, as well as a pmax not greater than pmin.
+     *
+     * @param uriQuery the Uri-Query options of the registration request
+     * @return the attributes, null if the request has no conditional attribute
+     */
+    public static ConditionalObserveAttributes parse(List<String> uriQuery) {
+
+        long pminMillis = 0;
+        long pmaxMillis = 0;
+        double greaterThan = Double.NaN;
+        double lessThan = Double.NaN;
+        double step = Double.NaN;
+        boolean found = false;
+
+        for (String query : uriQuery) {
+
+            int separator = query.indexOf('=');
+            if (separator <= 0)
+                continue;
+
+            String name = query.substring(0, separator);
+            String value = query.substring(separator + 1);
+
+            try {
+                switch (name) {
+                    case PMIN_ATTRIBUTE:
+                        pminMillis = (long) (Double.parseDouble(value) * 1000);
+                        found = true;
+                        break;
+                    case PMAX_ATTRIBUTE:
+                        pmaxMillis = (long) (Double.parseDouble(value) * 1000);
+                        found = true;
+                        break;
+                    case GT_ATTRIBUTE:
+                        greaterThan = Double.parseDouble(value);
+                        found = true;
+                        break;
+                    case LT_ATTRIBUTE:
+                        lessThan = Double.parseDouble(value);
+                        found = true;
+                        break;
+                    case ST_ATTRIBUTE:
+                        step = Double.parseDouble(value);
+                        found = true;
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid conditional attribute {} ! Msg: {}", query, e.getLocalizedMessage());
+            }
+        }
+
+        if (!found)
+            return null;
+
+        if (pmaxMillis > 0 && pmaxMillis <= pminMillis) {
+            logger.warn("Ignoring pmax {}ms not greater than pmin {}ms", pmaxMillis, pminMillis);
+            pmaxMillis = 0;
+        }
+
+        if (!(step > 0))
+            step = Double.NaN;
+
+        return new ConditionalObserveAttributes(Math.max(0, pminMillis), pmaxMillis, greaterThan, lessThan, step);
+    }
+
+    public long getPminMillis() {
+        return pminMillis;
+    }
+
+    public long getPmaxMillis() {
+        return pmaxMillis;
+    }
+
+    public double getGreaterThan() {
+        return greaterThan;
+    }
+
+    public double getLessThan() {
+        return lessThan;
+    }
+
+    public double getStep() {
+        return step;
+    }
+
+    public boolean hasValueCondition() {
+        return !Double.isNaN(greaterThan) || !Double.isNaN(lessThan) || !Double.isNaN(step);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ConditionalObserveAttributes{");
+        sb.append("pminMillis=").append(pminMillis);
+        sb.append(", pmaxMillis=").append(pmaxMillis);
+        sb.append(", greaterThan=").append(greaterThan);
+        sb.append(", lessThan=").append(lessThan);
+        sb.append(", step=").append(step);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package it.unimore.dipi.iot.server.coap.observe;
+
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.observe.ObserveRelationFilter;
+import org.eclipse.californium.core.server.resources.ResourceObserverAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Per observer notification filter implementing the conditional attributes (pmin, pmax, gt, lt, st).
+ *
+ * The filter is registered as observer of the resource: the attributes are parsed once, when an observe
+ * relation is established, and dropped when the relation is removed.
+ * The resource then calls {@link org.eclipse.californium.core.CoapResource#changed(ObserveRelationFilter)}
+ * with this filter on every update, each check reads the current value through the supplier and allocates nothing.
+ *
+ * Conditions are evaluated when the resource changes: a pmax shorter than the update period
+ * is honoured at the next update, and an update suppressed by pmin is sent at the next update after pmin.
+ * Relations registered without conditional attributes get every notification.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 12:20
+ * @project coap-smart-building
+ */
+
+public class ConditionalObserveFilter extends ResourceObserverAdapter implements ObserveRelationFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionalObserveFilter.class);
+
+    private final Map<ObserveRelation, ConditionalObserveState> relationStateMap = new ConcurrentHashMap<>();
+
+    private final DoubleSupplier valueSupplier;
+
+    public ConditionalObserveFilter(DoubleSupplier valueSupplier) {
+        this.valueSupplier = valueSupplier;
+    }
+
+    @Override
+    public void addedObserveRelation(ObserveRelation relation) {
+
+        ConditionalObserveAttributes attributes = ConditionalObserveAttributes.parse(
+                relation.getExchange().getRequest().getOptions().getUriQuery());
+
+        if (attributes != null) {
+            //The registration response carries the current value
+            this.relationStateMap.put(relation, new ConditionalObserveState(attributes, this.valueSupplier.getAsDouble(), System.currentTimeMillis()));
+            logger.info("Conditional observe relation {} -> {}", relation.getKey(), attributes);
+        }
+    }
+
+    @Override
+    public void removedObserveRelation(ObserveRelation relation) {
+        this.relationStateMap.remove(relation);
+    }
+
+    @Override
+    public boolean accept(ObserveRelation relation) {
+        ConditionalObserveState state = this.relationStateMap.get(relation);
+        return state == null || state.shouldNotify(this.valueSupplier.getAsDouble(), System.currentTimeMillis());
+    }
+
+    /**
+     * Last notified value and time of a single observe relation
+     */
+    private static class ConditionalObserveState {
+
+        private final ConditionalObserveAttributes attributes;
+
+        private double lastNotifiedValue;
+
+        private long lastNotificationMillis;
+
+        private ConditionalObserveState(ConditionalObserveAttributes attributes, double lastNotifiedValue, long lastNotificationMillis) {
+            this.attributes = attributes;
+            this.lastNotifiedValue = lastNotifiedValue;
+            this.lastNotificationMillis = lastNotificationMillis;
+        }
+
+        private synchronized boolean shouldNotify(double value, long now) {
+
+            long elapsedMillis = now - this.lastNotificationMillis;
+
+            if (elapsedMillis < this.attributes.getPminMillis())
+                return false;
+
+            boolean notify;
+
+            if (this.attributes.getPmaxMillis() > 0 && elapsedMillis >= this.attributes.getPmaxMillis())
+                notify = true;
+            else if (!this.attributes.hasValueCondition())
+                notify = true;
+            else
+                notify = crossed(this.attributes.getGreaterThan(), value)
+                        || crossed(this.attributes.getLessThan(), value)
+                        || Math.abs(value - this.lastNotifiedValue) >= this.attributes.getStep();
+
+            if (notify) {
+                this.lastNotifiedValue = value;
+                this.lastNotificationMillis = now;
+            }
+
+            return notify;
+        }
+
+        private boolean crossed(double threshold, double value) {
+            //NaN thresholds (not requested) are never crossed
+            return (this.lastNotifiedValue <= threshold && value > threshold)
+                    || (this.lastNotifiedValue > threshold && value <= threshold);
+        }
+    }
+}
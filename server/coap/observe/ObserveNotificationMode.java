@@ -0,0 +1,58 @@
+package it.unimore.dipi.iot.server.coap.observe;
+
+/**
+ * How the notifications of an observable resource are sent.
+ * - confirmable   every notification is a CON and needs an ACK
+ * - mixed         notifications are NON, but a CON is sent every N notifications or every T milliseconds
+ *                 (whichever comes first) to check that the observer is still alive
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 16:10
+ * @project coap-smart-building
+ */
+
+public class ObserveNotificationMode {
+
+    public static final ObserveNotificationMode CONFIRMABLE = new ObserveNotificationMode(1, 0);
+
+    private final int confirmableEvery;
+
+    private final long confirmableIntervalMillis;
+
+    private ObserveNotificationMode(int confirmableEvery, long confirmableIntervalMillis) {
+        this.confirmableEvery = confirmableEvery;
+        this.confirmableIntervalMillis = confirmableIntervalMillis;
+    }
+
+    /**
+     * @param confirmableEvery          a CON is sent every confirmableEvery notifications
+     * @param confirmableIntervalMillis a CON is sent if the last one is older than this interval, 0 to disable
+     * @return the mixed NON/CON mode
+     */
+    public static ObserveNotificationMode mixed(int confirmableEvery, long confirmableIntervalMillis) {
+        if (confirmableEvery < 1)
+            throw new IllegalArgumentException("confirmableEvery must be at least 1");
+        return new ObserveNotificationMode(confirmableEvery, Math.max(0, confirmableIntervalMillis));
+    }
+
+    public boolean isAlwaysConfirmable() {
+        return confirmableEvery == 1;
+    }
+
+    public int getConfirmableEvery() {
+        return confirmableEvery;
+    }
+
+    public long getConfirmableIntervalMillis() {
+        return confirmableIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ObserveNotificationMode{");
+        sb.append("confirmableEvery=").append(confirmableEvery);
+        sb.append(", confirmableIntervalMillis=").append(confirmableIntervalMillis);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package it.unimore.dipi.iot.server.coap.observe;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.observe.ObserveRelation;
+import org.eclipse.californium.core.server.resources.ResourceObserverAdapter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the message type (CON or NON) of every notification according to the {@link ObserveNotificationMode}.
+ * The CON counter and the time of the last CON are kept per observe relation,
+ * so each observer is checked for liveness independently.
+ *
+ * The controller is registered as observer of the resource, the resource calls
+ * {@link #applyNotificationType(ObserveRelation, Response)} for every notification (not for the registration response).
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 16:20
+ * @project coap-smart-building
+ */
+
+public class ObserveNotificationTypeController extends ResourceObserverAdapter {
+
+    private final Map<ObserveRelation, ConfirmationState> relationStateMap = new ConcurrentHashMap<>();
+
+    private volatile ObserveNotificationMode notificationMode;
+
+    public ObserveNotificationTypeController(ObserveNotificationMode notificationMode) {
+        this.notificationMode = notificationMode;
+    }
+
+    public ObserveNotificationMode getNotificationMode() {
+        return notificationMode;
+    }
+
+    public void setNotificationMode(ObserveNotificationMode notificationMode) {
+        this.notificationMode = notificationMode;
+    }
+
+    @Override
+    public void addedObserveRelation(ObserveRelation relation) {
+        //The registration response counts as the first check
+        this.relationStateMap.put(relation, new ConfirmationState(System.currentTimeMillis()));
+    }
+
+    @Override
+    public void removedObserveRelation(ObserveRelation relation) {
+        this.relationStateMap.remove(relation);
+    }
+
+    /**
+     * Set the type of a notification. Error responses are left untouched: they are always sent as CON.
+     *
+     * @param relation the established observe relation
+     * @param response the notification
+     */
+    public void applyNotificationType(ObserveRelation relation, Response response) {
+
+        if (!CoAP.ResponseCode.isSuccess(response.getCode()))
+            return;
+
+        ObserveNotificationMode mode = this.notificationMode;
+
+        if (mode.isAlwaysConfirmable()) {
+            response.setType(CoAP.Type.CON);
+            return;
+        }
+
+        ConfirmationState state = this.relationStateMap.get(relation);
+        boolean confirmable = state == null || state.nextIsConfirmable(mode, System.currentTimeMillis());
+        response.setType(confirmable ? CoAP.Type.CON : CoAP.Type.NON);
+    }
+
+    /**
+     * Notifications sent since the last CON of a single observe relation
+     */
+    private static class ConfirmationState {
+
+        private int sinceLastConfirmable;
+
+        private long lastConfirmableMillis;
+
+        private ConfirmationState(long lastConfirmableMillis) {
+            this.lastConfirmableMillis = lastConfirmableMillis;
+        }
+
+        private synchronized boolean nextIsConfirmable(ObserveNotificationMode mode, long now) {
+
+            this.sinceLastConfirmable++;
+
+            boolean confirmable = this.sinceLastConfirmable >= mode.getConfirmableEvery()
+                    || (mode.getConfirmableIntervalMillis() > 0 && now - this.lastConfirmableMillis >= mode.getConfirmableIntervalMillis());
+
+            if (confirmable) {
+                this.sinceLastConfirmable = 0;
+                this.lastConfirmableMillis = now;
+            }
+
+            return confirmable;
+        }
+    }
+}
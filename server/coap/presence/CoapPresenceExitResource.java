@@ -2,14 +2,13 @@ package it.unimore.dipi.iot.server.coap.presence;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.server.coap.TrafficLoggedCoapResource;
 import it.unimore.dipi.iot.server.raw.ResourceDataListener;
 import it.unimore.dipi.iot.server.raw.SmartObjectResource;
 import it.unimore.dipi.iot.server.raw.presence.PresenceRawSensor;
 import it.unimore.dipi.iot.utils.CoreInterfaces;
 import it.unimore.dipi.iot.utils.SenMLPack;
 import it.unimore.dipi.iot.utils.SenMLRecord;
-import org.eclipse.californium.core.CoapResource;
-import org.eclipse.californium.core.Utils;
 import org.eclipse.californium.core.coap.CoAP;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.server.resources.CoapExchange;
@@ -20,14 +19,15 @@ import java.util.Optional;
 
 /**
  * The resource counts people exit.
- * Increasing its value every POST with null body that received
+ * Increasing its value every POST: an empty body counts one person, the body can also carry
+ * a number of people or a SenML pack of timestamped exit events (batch of a turnstile)
  *
  * @author Riccardo Prevedi
  * @created 11/09/2022 - 17:20
  * @project coap-smart-building
  */
 
-public class CoapPresenceExitResource extends CoapResource {
+public class CoapPresenceExitResource extends TrafficLoggedCoapResource {
 
     private static final Logger logger = LoggerFactory.getLogger(CoapPresenceExitResource.class);
 
@@ -41,8 +41,6 @@ public class CoapPresenceExitResource extends CoapResource {
 
     private PresenceRawSensor presenceRawSensor;
 
-    private Integer updatedPresenceValue = 0;
-
     private String deviceId;
 
     private ObjectMapper objectMapper;
@@ -81,7 +79,7 @@ public class CoapPresenceExitResource extends CoapResource {
 
             SenMLRecord senMLRecord = new SenMLRecord();
             senMLRecord.setBn(String.format("%s:%s", this.deviceId, this.getName()));
-            senMLRecord.setV(this.updatedPresenceValue);
+            senMLRecord.setV(this.presenceRawSensor.getPeopleOut());
             senMLRecord.setU(UNIT);
             senMLRecord.setBver(VERSION);
 
@@ -107,26 +105,32 @@ public class CoapPresenceExitResource extends CoapResource {
             else
                 exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
         } else
-            exchange.respond(CoAP.ResponseCode.CONTENT, String.valueOf(updatedPresenceValue), MediaTypeRegistry.TEXT_PLAIN);
+            exchange.respond(CoAP.ResponseCode.CONTENT, String.valueOf(presenceRawSensor.getPeopleOut()), MediaTypeRegistry.TEXT_PLAIN);
     }
 
     @Override
     public void handlePOST(CoapExchange exchange) {
 
         try {
-            logger.info("Request Pretty Print:\n{}", Utils.prettyPrint(exchange.advanced().getRequest()));
-            logger.info("Received POST Request with body: {}", exchange.getRequestPayload());
+            //The turnstiles POST at the highest rate of the node: the traffic log is sampled and rate limited
+            getTrafficLogger().log("POST", exchange.advanced().getRequest());
 
-            if (exchange.getRequestPayload() == null) {
+            if (!PresenceEventBatch.isSupportedContentFormat(exchange.getRequestOptions().getContentFormat())) {
+                exchange.respond(CoAP.ResponseCode.UNSUPPORTED_CONTENT_FORMAT);
+                return;
+            }
 
-                presenceRawSensor.increasePeopleOut();
-                updatedPresenceValue = presenceRawSensor.getPeopleOut();
+            //Empty body, people count or SenML pack of events
+            PresenceEventBatch presenceEventBatch = PresenceEventBatch.parse(exchange.getRequestPayload(),
+                    exchange.getRequestOptions().getContentFormat());
 
-                exchange.respond(CoAP.ResponseCode.CHANGED);
+            presenceRawSensor.addPeopleOut(presenceEventBatch.getCount(), presenceEventBatch.getLastEventTimestamp());
 
-            } else
-                exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
+            exchange.respond(CoAP.ResponseCode.CHANGED);
 
+        } catch (IllegalArgumentException e) {
+            logger.warn("Received an invalid POST Request ! Msg: {}", e.getLocalizedMessage());
+            exchange.respond(CoAP.ResponseCode.BAD_REQUEST);
         } catch (Exception e) {
             logger.error("Error Handling POST -> {}", e.getLocalizedMessage());
             exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
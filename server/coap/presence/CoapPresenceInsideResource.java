@@ -2,6 +2,7 @@ package it.unimore.dipi.iot.server.coap.presence;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.server.coap.observe.ConditionalObserveFilter;
 import it.unimore.dipi.iot.server.raw.ResourceDataListener;
 import it.unimore.dipi.iot.server.raw.SmartObjectResource;
 import it.unimore.dipi.iot.server.raw.presence.PresenceRawSensor;
@@ -20,6 +21,8 @@ import java.util.Optional;
 
 /**
  * the resource counts how many people are actually inside
+ * Observers can register with the conditional attributes pmin, pmax, gt, lt and st as query parameters
+ * E.g. ?gt=0 to be notified only when the zone becomes occupied or empty
  *
  * @author Riccardo Prevedi
  * @created 11/09/2022 - 17:20
@@ -38,12 +41,13 @@ public class CoapPresenceInsideResource extends CoapResource {
 
     private PresenceRawSensor presenceRawSensor;
 
-    private Integer updatedPresenceValue = 0;
 
     private String deviceId;
 
     private ObjectMapper objectMapper;
 
+    private ConditionalObserveFilter conditionalObserveFilter;
+
 
     public CoapPresenceInsideResource(String deviceId, String name, PresenceRawSensor presenceRawSensor) {
         super(name);
@@ -68,13 +72,17 @@ public class CoapPresenceInsideResource extends CoapResource {
             getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.APPLICATION_SENML_JSON));
             getAttributes().addAttribute("ct", Integer.toString(MediaTypeRegistry.TEXT_PLAIN));
 
+            //Notifications are filtered per observer according to its conditional attributes
+            this.conditionalObserveFilter = new ConditionalObserveFilter(() -> this.presenceRawSensor.getPeople());
+            addObserver(this.conditionalObserveFilter);
+
             //Hear when presences within the zone are updated
             presenceRawSensor.addDataListener(new ResourceDataListener<Integer>() {
                 @Override
                 public void onDataChanged(SmartObjectResource<Integer> resource, Integer updatedValue) {
-                    logger.info("Presence Count inside the zone updating ! Number of people actually: {}", updatedValue);
-                    updatedPresenceValue = updatedValue;
-                    changed();
+                    //The notified value may be older than the current one: the observers always get the current one
+                    logger.info("Presence Count inside the zone updating ! Number of people actually: {}", presenceRawSensor.getPeople());
+                    changed(conditionalObserveFilter);
                 }
             });
 
@@ -88,7 +96,7 @@ public class CoapPresenceInsideResource extends CoapResource {
 
             SenMLRecord senMLRecord = new SenMLRecord();
             senMLRecord.setBn(String.format("%s:%s", this.deviceId, this.getName()));
-            senMLRecord.setV(this.updatedPresenceValue);
+            senMLRecord.setV(this.presenceRawSensor.getPeople());
             senMLRecord.setU(UNIT);
             senMLRecord.setBver(VERSION);
 
@@ -114,7 +122,7 @@ public class CoapPresenceInsideResource extends CoapResource {
             else
                 exchange.respond(CoAP.ResponseCode.INTERNAL_SERVER_ERROR);
         } else
-            exchange.respond(CoAP.ResponseCode.CONTENT, String.valueOf(updatedPresenceValue), MediaTypeRegistry.TEXT_PLAIN);
+            exchange.respond(CoAP.ResponseCode.CONTENT, String.valueOf(presenceRawSensor.getPeople()), MediaTypeRegistry.TEXT_PLAIN);
     }
 
 }
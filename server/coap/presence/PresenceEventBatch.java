@@ -0,0 +1,118 @@
+package it.unimore.dipi.iot.server.coap.presence;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unimore.dipi.iot.utils.SenMLPack;
+import it.unimore.dipi.iot.utils.SenMLRecord;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The people counted by a single entry/exit POST. The payload can be:
+ * - empty                  one person
+ * - a number (text/plain)  E.g. "12", that many people
+ * - a SenML pack           one record per event, "v" is the number of people of the event (1 if absent)
+ *                          and "bt" + "t" its time in ms (the reception time if absent)
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 18:50
+ * @project coap-smart-building
+ */
+
+class PresenceEventBatch {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final int count;
+
+    private final long lastEventTimestamp;
+
+    private PresenceEventBatch(int count, long lastEventTimestamp) {
+        this.count = count;
+        this.lastEventTimestamp = lastEventTimestamp;
+    }
+
+    static boolean isSupportedContentFormat(int contentFormat) {
+        return contentFormat == MediaTypeRegistry.UNDEFINED
+                || contentFormat == MediaTypeRegistry.TEXT_PLAIN
+                || contentFormat == MediaTypeRegistry.APPLICATION_SENML_JSON
+                || contentFormat == MediaTypeRegistry.APPLICATION_JSON;
+    }
+
+    /**
+     * @param payload       the POST payload, null or empty for a single person
+     * @param contentFormat the POST content format
+     * @return the batch
+     * @throws IllegalArgumentException if the payload is malformed or a count (or the batch total) is not a positive int
+     */
+    static PresenceEventBatch parse(byte[] payload, int contentFormat) {
+
+        long now = System.currentTimeMillis();
+
+        if (payload == null || payload.length == 0)
+            return new PresenceEventBatch(1, now);
+
+        String text = new String(payload, StandardCharsets.UTF_8).trim();
+
+        if (contentFormat == MediaTypeRegistry.APPLICATION_SENML_JSON
+                || contentFormat == MediaTypeRegistry.APPLICATION_JSON
+                || (contentFormat == MediaTypeRegistry.UNDEFINED && text.startsWith("[")))
+            return parseSenMLPack(text, now);
+
+        try {
+            return new PresenceEventBatch((int) checkCount(Long.parseLong(text)), now);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid people count: " + text);
+        }
+    }
+
+    private static PresenceEventBatch parseSenMLPack(String text, long now) {
+
+        SenMLPack senMLPack;
+        try {
+            senMLPack = objectMapper.readValue(text, SenMLPack.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid SenML pack: " + e.getLocalizedMessage());
+        }
+
+        if (senMLPack == null || senMLPack.isEmpty())
+            throw new IllegalArgumentException("Empty SenML pack");
+
+        long count = 0;
+        long lastEventTimestamp = 0;
+        long baseTime = 0;
+
+        for (SenMLRecord senMLRecord : senMLPack) {
+
+            //The base time applies to the record and to the following ones
+            if (senMLRecord.getBt() != null)
+                baseTime = senMLRecord.getBt().longValue();
+
+            Number value = senMLRecord.getV();
+            if (value != null && value.doubleValue() != value.longValue())
+                throw new IllegalArgumentException("Invalid people count: " + value);
+
+            //Each term is at most Integer.MAX_VALUE: the long sum cannot overflow before it is checked
+            count = checkCount(count + checkCount(value != null ? value.longValue() : 1));
+
+            long eventTimestamp = baseTime + (senMLRecord.getT() != null ? senMLRecord.getT().longValue() : 0);
+            lastEventTimestamp = Math.max(lastEventTimestamp, eventTimestamp > 0 ? eventTimestamp : now);
+        }
+
+        return new PresenceEventBatch((int) count, lastEventTimestamp);
+    }
+
+    private static long checkCount(long count) {
+        if (count < 1 || count > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid people count: " + count);
+        return count;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getLastEventTimestamp() {
+        return lastEventTimestamp;
+    }
+}
@@ -0,0 +1,82 @@
+package it.unimore.dipi.iot.server.control;
+
+import org.eclipse.californium.core.coap.CoAP;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregated outcome of a fan-out: the response code of every target that answered
+ * and the failure reason (timeout, deadline, rejection, send error) of every target that did not.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 19:15
+ * @project coap-smart-building
+ */
+
+public class FanOutResult {
+
+    private final Map<String, CoAP.ResponseCode> responseMap = new ConcurrentHashMap<>();
+
+    private final Map<String, String> failureMap = new ConcurrentHashMap<>();
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long elapsedMillis;
+
+    private volatile boolean superseded = false;
+
+    void addResponse(String targetUri, CoAP.ResponseCode responseCode) {
+        this.responseMap.put(targetUri, responseCode);
+    }
+
+    void addFailure(String targetUri, String reason) {
+        this.failureMap.put(targetUri, reason);
+    }
+
+    void supersede() {
+        this.superseded = true;
+    }
+
+    void complete() {
+        this.elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * @return true if every target answered with a success code
+     */
+    public boolean isSuccess() {
+        return failureMap.isEmpty() && responseMap.values().stream().allMatch(CoAP.ResponseCode::isSuccess);
+    }
+
+    /**
+     * @return true if a newer fan-out replaced this one before every target was updated
+     */
+    public boolean isSuperseded() {
+        return superseded;
+    }
+
+    public Map<String, CoAP.ResponseCode> getResponses() {
+        return Collections.unmodifiableMap(responseMap);
+    }
+
+    public Map<String, String> getFailures() {
+        return Collections.unmodifiableMap(failureMap);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("FanOutResult{");
+        sb.append("responses=").append(responseMap);
+        sb.append(", failures=").append(failureMap);
+        sb.append(", elapsedMillis=").append(elapsedMillis);
+        sb.append(", superseded=").append(superseded);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package it.unimore.dipi.iot.server.control;
+
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends a group command: a single NON PUT to a CoAP group (multicast) address, E.g. "supply off" for a whole floor.
+ * The responses of the members are collected asynchronously in a {@link FanOutResult} (keyed by responder address)
+ * until the expected number of responses arrived or the collection window expired.
+ * The collection windows run on a wheel shared with the owner: the sender has no thread of its own.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 20:05
+ * @project coap-smart-building
+ */
+
+public class GroupCommandSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommandSender.class);
+
+    private final Endpoint endpoint;
+
+    private final HashedTimerWheel timerWheel;
+
+    /**
+     * @param endpoint   the endpoint used to send the multicast requests
+     * @param timerWheel the wheel of the collection windows, shared with the owner: its tick is the window precision
+     */
+    public GroupCommandSender(Endpoint endpoint, HashedTimerWheel timerWheel) {
+        this.endpoint = endpoint;
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * @param groupAddress        the group address and port, E.g. 239.255.1.1:5693
+     * @param path                the target resource path, E.g. /switches
+     * @param payload             the PUT payload
+     * @param expectedResponses   the collection ends as soon as this number of members answered, 0 to wait the whole window
+     * @param collectWindowMillis max time to collect the responses
+     * @return completed with the responses received
+     */
+    public CompletableFuture<FanOutResult> put(InetSocketAddress groupAddress, String path, String payload,
+                                               int expectedResponses, long collectWindowMillis) {
+
+        GroupCommand groupCommand = new GroupCommand(expectedResponses);
+
+        try {
+            //As per RFC 7252 multicast requests must be NON
+            Request request = groupCommand.request;
+            request.setURI(String.format("coap://%s:%d%s", groupAddress.getAddress().getHostAddress(), groupAddress.getPort(), path));
+            request.setConfirmable(false);
+            request.setPayload(payload);
+            request.addMessageObserver(groupCommand);
+
+            groupCommand.window.schedule(collectWindowMillis);
+            this.endpoint.sendRequest(request);
+
+        } catch (Exception e) {
+            logger.error("Error sending the group command to {} ! Msg: {}", groupAddress, e.getLocalizedMessage());
+            groupCommand.result.addFailure(groupAddress.toString(), "invalid request: " + e.getLocalizedMessage());
+            groupCommand.complete();
+        }
+
+        return groupCommand.future;
+    }
+
+    /**
+     * The responses of a single group request
+     */
+    private class GroupCommand extends MessageObserverAdapter implements Runnable {
+
+        private final CompletableFuture<FanOutResult> future = new CompletableFuture<>();
+
+        private final FanOutResult result = new FanOutResult();
+
+        private final Request request = Request.newPut();
+
+        private final HashedTimerWheel.Deadline window = timerWheel.newDeadline(this);
+
+        private final AtomicInteger responses = new AtomicInteger(0);
+
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        private final int expectedResponses;
+
+        private GroupCommand(int expectedResponses) {
+            this.expectedResponses = expectedResponses;
+        }
+
+        //Collection window expired
+        @Override
+        public void run() {
+            complete();
+        }
+
+        @Override
+        public void onResponse(Response response) {
+            if (completed.get())
+                return;
+
+            result.addResponse(response.getSourceContext().getPeerAddress().toString(), response.getCode());
+
+            if (expectedResponses > 0 && responses.incrementAndGet() >= expectedResponses)
+                complete();
+        }
+
+        @Override
+        public void onSendError(Throwable error) {
+            result.addFailure(request.getURI(), "send error: " + error.getLocalizedMessage());
+            complete();
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                window.cancel();
+                //Release the exchange (the multicast exchange would otherwise live for NON_LIFETIME)
+                request.cancel();
+                result.complete();
+                future.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package it.unimore.dipi.iot.server.control;
+
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the same PUT to many targets concurrently (E.g. every switch of a floor).
+ * - the requests are asynchronous: the whole fan-out takes about one round trip
+ * - at most maxInFlight requests are outstanding, the next target is sent as soon as one completes
+ * - every target has its own deadline: an unreachable target is cancelled and does not hold up the others
+ * - the completion is aggregated in a {@link FanOutResult}
+ *
+ * The fan-outs are serialized: a new fan-out supersedes the running one (its unsent targets are dropped and its
+ * outstanding requests cancelled) and starts only when every exchange of the running one is over.
+ * A target never receives the PUT of an older fan-out after the one of a newer fan-out (E.g. a late ON after an OFF).
+ * When many fan-outs are requested while one is running, only the last one is sent.
+ *
+ * The requests go through the endpoint of the target in a {@link ClientEndpointPool}, the deadlines run on a
+ * wheel shared with the owner: the fan-out has neither sockets nor threads of its own.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 19:20
+ * @project coap-smart-building
+ */
+
+public class ParallelPutFanOut {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelPutFanOut.class);
+
+    private final ClientEndpointPool endpointPool;
+
+    private final HashedTimerWheel timerWheel;
+
+    private final int maxInFlight;
+
+    private final long deadlineMillis;
+
+    //Guarded by this
+    private FanOut runningFanOut = null;
+
+    //Guarded by this, the fan-out waiting for the running one to be over
+    private FanOut nextFanOut = null;
+
+    /**
+     * @param endpointPool   the client endpoints used to send the requests, chosen by target
+     * @param timerWheel     the wheel of the target deadlines, its tick is the deadline precision
+     * @param maxInFlight    max number of outstanding requests of a single fan-out
+     * @param deadlineMillis max time given to each target to answer
+     */
+    public ParallelPutFanOut(ClientEndpointPool endpointPool, HashedTimerWheel timerWheel, int maxInFlight, long deadlineMillis) {
+        if (maxInFlight < 1 || deadlineMillis <= 0)
+            throw new IllegalArgumentException("maxInFlight and deadlineMillis must be positive");
+
+        this.endpointPool = endpointPool;
+        this.timerWheel = timerWheel;
+        this.maxInFlight = maxInFlight;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * @param targetUris    the target resources, E.g. coap://192.168.10.43:5783/water-provider/switch
+     * @param payload       the PUT payload
+     * @param contentFormat the payload content format, {@link MediaTypeRegistry#UNDEFINED} to omit the option
+     * @return completed when every target answered, failed or exceeded its deadline,
+     * or when the fan-out is superseded by a newer one (see {@link FanOutResult#isSuperseded()})
+     */
+    public CompletableFuture<FanOutResult> put(Collection<String> targetUris, String payload, int contentFormat) {
+
+        FanOut fanOut = new FanOut(targetUris, payload, contentFormat);
+        FanOut replacedFanOut = null;
+        FanOut supersededFanOut = null;
+
+        synchronized (this) {
+            if (this.runningFanOut == null)
+                this.runningFanOut = fanOut;
+            else {
+                replacedFanOut = this.nextFanOut;
+                supersededFanOut = this.runningFanOut;
+                this.nextFanOut = fanOut;
+            }
+        }
+
+        //Never sent: every target is dropped
+        if (replacedFanOut != null)
+            replacedFanOut.supersede();
+
+        if (supersededFanOut != null)
+            supersededFanOut.supersede();
+        else
+            fanOut.start();
+
+        return fanOut.future;
+    }
+
+    //The running fan-out is over: start the waiting one, if any
+    private void runNext() {
+
+        FanOut fanOut;
+
+        synchronized (this) {
+            fanOut = this.nextFanOut;
+            this.nextFanOut = null;
+            this.runningFanOut = fanOut;
+        }
+
+        if (fanOut != null)
+            fanOut.start();
+    }
+
+    private class FanOut {
+
+        private final CompletableFuture<FanOutResult> future = new CompletableFuture<>();
+
+        private final FanOutResult result = new FanOutResult();
+
+        private final Queue<String> pendingTargets;
+
+        private final AtomicInteger remainingTargets;
+
+        private final String payload;
+
+        private final int contentFormat;
+
+        private final Set<TargetExchange> inFlightExchanges = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean superseded = false;
+
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private FanOut(Collection<String> targetUris, String payload, int contentFormat) {
+            this.pendingTargets = new ConcurrentLinkedQueue<>(targetUris);
+            this.remainingTargets = new AtomicInteger(this.pendingTargets.size());
+            this.payload = payload;
+            this.contentFormat = contentFormat;
+        }
+
+        private void start() {
+            if (this.remainingTargets.get() == 0) {
+                finish();
+                return;
+            }
+
+            for (int i = 0; i < maxInFlight; i++)
+                sendNext();
+        }
+
+        private void sendNext() {
+            String targetUri;
+            while ((targetUri = this.pendingTargets.poll()) != null) {
+
+                if (!this.superseded) {
+                    new TargetExchange(this, targetUri).send();
+                    return;
+                }
+
+                this.result.addFailure(targetUri, "superseded");
+                if (this.remainingTargets.decrementAndGet() == 0) {
+                    finish();
+                    return;
+                }
+            }
+        }
+
+        //Drop the unsent targets and cancel the outstanding requests, the fan-out is over when they are cancelled
+        private void supersede() {
+            this.superseded = true;
+            this.result.supersede();
+            this.inFlightExchanges.forEach(TargetExchange::cancel);
+            sendNext();
+
+            //No target at all
+            if (this.remainingTargets.get() == 0)
+                finish();
+        }
+
+        private void completed() {
+            if (this.remainingTargets.decrementAndGet() == 0)
+                finish();
+            else
+                sendNext();
+        }
+
+        private void finish() {
+            if (!this.finished.compareAndSet(false, true))
+                return;
+
+            this.result.complete();
+            this.future.complete(this.result);
+
+            //A fan-out never started (superseded while waiting) does not hold the running slot
+            boolean isRunning;
+            synchronized (ParallelPutFanOut.this) {
+                isRunning = runningFanOut == this;
+            }
+
+            if (isRunning)
+                runNext();
+        }
+    }
+
+    /**
+     * The PUT to a single target: the first of response, error or deadline completes it
+     */
+    private class TargetExchange extends MessageObserverAdapter implements Runnable {
+
+        private final FanOut fanOut;
+
+        private final String targetUri;
+
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        private final Request request = Request.newPut();
+
+        private final HashedTimerWheel.Deadline deadline;
+
+        private TargetExchange(FanOut fanOut, String targetUri) {
+            this.fanOut = fanOut;
+            this.targetUri = targetUri;
+            this.deadline = timerWheel.newDeadline(this);
+        }
+
+        private void send() {
+            try {
+                request.setURI(targetUri);
+                request.setConfirmable(true);
+                request.setPayload(fanOut.payload);
+                if (fanOut.contentFormat != MediaTypeRegistry.UNDEFINED)
+                    request.getOptions().setContentFormat(fanOut.contentFormat);
+
+                request.addMessageObserver(this);
+                deadline.schedule(deadlineMillis);
+                fanOut.inFlightExchanges.add(this);
+
+                //Superseded in the meantime: the request is not sent
+                if (fanOut.superseded) {
+                    fail("superseded");
+                    return;
+                }
+
+                endpointPool.getEndpoint(targetUri).sendRequest(request);
+
+            } catch (Exception e) {
+                fail("invalid request: " + e.getLocalizedMessage());
+            }
+        }
+
+        //The request is not retransmitted any more
+        private void cancel() {
+            if (fail("superseded"))
+                request.cancel();
+        }
+
+        //Deadline expired
+        @Override
+        public void run() {
+            if (fail("deadline exceeded"))
+                request.cancel();
+        }
+
+        @Override
+        public void onResponse(Response response) {
+            if (completed.compareAndSet(false, true)) {
+                deadline.cancel();
+                fanOut.inFlightExchanges.remove(this);
+                fanOut.result.addResponse(targetUri, response.getCode());
+                fanOut.completed();
+            }
+        }
+
+        @Override
+        public void onTimeout() {
+            fail("timeout");
+        }
+
+        @Override
+        public void onReject() {
+            fail("rejected");
+        }
+
+        @Override
+        public void onCancel() {
+            fail("cancelled");
+        }
+
+        @Override
+        public void onSendError(Throwable error) {
+            fail("send error: " + error.getLocalizedMessage());
+        }
+
+        private boolean fail(String reason) {
+            if (completed.compareAndSet(false, true)) {
+                deadline.cancel();
+                fanOut.inFlightExchanges.remove(this);
+                if (fanOut.superseded)
+                    logger.debug("PUT to {} dropped -> {}", targetUri, reason);
+                else
+                    logger.warn("PUT to {} failed -> {}", targetUri, reason);
+                fanOut.result.addFailure(targetUri, reason);
+                fanOut.completed();
+                return true;
+            }
+            return false;
+        }
+    }
+}
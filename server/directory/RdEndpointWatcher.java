@@ -0,0 +1,254 @@
+package it.unimore.dipi.iot.server.directory;
+
+import it.unimore.dipi.iot.utils.LinkFormatParser;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Follows the endpoints registered to the Resource Directory by observing its endpoint lookup with "delta",
+ * E.g. coap://192.168.56.101:5683/rd-lookup/ep?d=firstFloor&delta
+ * - the first response is the whole lookup: every endpoint is reported as added
+ * - the notifications carry only the added endpoints and the removed ones (flagged with "rm")
+ * so the listener can attach and detach its observations as the building changes, without polling the RD.
+ *
+ * The observation is renewed every {@link #RESYNC_PERIOD}: the whole lookup is compared with the known endpoints.
+ * If the RD lookup is not observable (E.g. an external RD) the lookup is polled every {@link #POLL_PERIOD}.
+ * The listener is invoked serially.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 23:10
+ * @project coap-smart-building
+ */
+
+public class RdEndpointWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RdEndpointWatcher.class);
+
+    private static final String SECTOR_RD_ATTRIBUTE = "d";
+
+    private static final String REMOVE_ATTRIBUTE = "rm";
+
+    private static final long RETRY_DELAY = 10 * 1000; //10sec
+
+    private static final long POLL_PERIOD = 60 * 1000; //1min
+
+    private static final long RESYNC_PERIOD = 60 * 60 * 1000; //1h
+
+    public interface EndpointListener {
+
+        /**
+         * @param endpoint the base URL of the endpoint, E.g. coap://192.168.43.172:5783
+         * @param sector   the sector "d" of the endpoint, null if it has none
+         */
+        void onEndpointAdded(String endpoint, String sector);
+
+        void onEndpointRemoved(String endpoint, String sector);
+    }
+
+    private final CoapClient coapClient;
+
+    private final String lookupUrl;
+
+    private final EndpointListener endpointListener;
+
+    private final Timer timer = new Timer("rd-endpoint-watcher", true);
+
+    //Guarded by this: endpoint -> sector of the endpoints reported as added
+    private final Map<String, String> endpointSectorMap = new HashMap<>();
+
+    private CoapObserveRelation observeRelation = null;
+
+    //Incremented by each observation: the responses of a replaced observation are ignored
+    private long observeGeneration = 0;
+
+    //The next response is the whole lookup
+    private boolean fullLookupExpected = true;
+
+    private boolean stopped = false;
+
+    /**
+     * @param lookupUrl the endpoint lookup URL with the "delta" query parameter
+     */
+    public RdEndpointWatcher(CoapClient coapClient, String lookupUrl, EndpointListener endpointListener) {
+        this.coapClient = coapClient;
+        this.lookupUrl = lookupUrl;
+        this.endpointListener = endpointListener;
+    }
+
+    public void start() {
+        observe();
+
+        this.timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                resync();
+            }
+        }, RESYNC_PERIOD, RESYNC_PERIOD);
+    }
+
+    public synchronized void stop() {
+        this.stopped = true;
+        this.timer.cancel();
+
+        if (this.observeRelation != null)
+            this.observeRelation.proactiveCancel();
+    }
+
+    public synchronized Set<String> getEndpoints() {
+        return new HashSet<>(this.endpointSectorMap.keySet());
+    }
+
+    private synchronized void observe() {
+
+        if (this.stopped)
+            return;
+
+        this.fullLookupExpected = true;
+
+        long generation = ++this.observeGeneration;
+
+        Request request = Request.newGet().setURI(this.lookupUrl).setObserve();
+        request.setConfirmable(true);
+
+        logger.info("Observing the Resource Directory lookup: {}", this.lookupUrl);
+
+        this.observeRelation = this.coapClient.observe(request, new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse coapResponse) {
+                onLookupResponse(generation, coapResponse);
+            }
+
+            @Override
+            public void onError() {
+                synchronized (RdEndpointWatcher.this) {
+                    if (generation != observeGeneration)
+                        return;
+                }
+                logger.error("OBSERVING {} FAILED ! Retrying in {}ms", lookupUrl, RETRY_DELAY);
+                schedule(RETRY_DELAY);
+            }
+        });
+    }
+
+    private synchronized void resync() {
+        if (this.observeRelation != null)
+            this.observeRelation.proactiveCancel();
+        observe();
+    }
+
+    private synchronized void onLookupResponse(long generation, CoapResponse coapResponse) {
+
+        if (this.stopped || generation != this.observeGeneration)
+            return;
+
+        if (!CoAP.ResponseCode.isSuccess(coapResponse.getCode())) {
+            //E.g. 5.03: the RD lost the changes of the relation, the whole lookup is needed again
+            logger.warn("Resource Directory lookup terminated ({}) ! Observing again", coapResponse.getCode());
+            schedule(coapResponse.getCode() == CoAP.ResponseCode.SERVICE_UNAVAILABLE ? 0 : RETRY_DELAY);
+            return;
+        }
+
+        //Endpoint -> sector, the links are parsed in a single pass over the payload
+        Map<String, String> linkSectorMap = new LinkedHashMap<>();
+        Set<String> removedEndpoints = new HashSet<>();
+
+        LinkFormatParser.parse(coapResponse.getPayload(), link -> {
+            if (link.hasAttribute(REMOVE_ATTRIBUTE))
+                removedEndpoints.add(link.getUri());
+            else
+                linkSectorMap.put(link.getUri(), link.getAttributeValue(SECTOR_RD_ATTRIBUTE));
+        });
+
+        boolean observable = coapResponse.getOptions().hasObserve();
+
+        if (this.fullLookupExpected || !observable)
+            applyFullLookup(linkSectorMap);
+        else
+            applyDelta(linkSectorMap, removedEndpoints);
+
+        this.fullLookupExpected = false;
+
+        if (!observable) {
+            logger.warn("Resource Directory lookup {} not observable ! Polling it every {}ms", this.lookupUrl, POLL_PERIOD);
+            schedule(POLL_PERIOD);
+        }
+    }
+
+    //Guarded by this
+    private void applyFullLookup(Map<String, String> linkSectorMap) {
+
+        linkSectorMap.forEach(this::addEndpoint);
+
+        //The endpoints no longer registered
+        for (String endpoint : new HashSet<>(this.endpointSectorMap.keySet()))
+            if (!linkSectorMap.containsKey(endpoint))
+                removeEndpoint(endpoint);
+    }
+
+    //Guarded by this
+    private void applyDelta(Map<String, String> linkSectorMap, Set<String> removedEndpoints) {
+        removedEndpoints.forEach(this::removeEndpoint);
+        linkSectorMap.forEach(this::addEndpoint);
+    }
+
+    //Guarded by this
+    private void addEndpoint(String endpoint, String sector) {
+
+        if (this.endpointSectorMap.containsKey(endpoint))
+            return;
+
+        this.endpointSectorMap.put(endpoint, sector);
+
+        logger.info("Endpoint {} added (Sector: {})", endpoint, sector);
+
+        try {
+            this.endpointListener.onEndpointAdded(endpoint, sector);
+        } catch (Exception e) {
+            logger.error("Error handling the endpoint {} ! Msg: {}", endpoint, e.getLocalizedMessage());
+        }
+    }
+
+    //Guarded by this
+    private void removeEndpoint(String endpoint) {
+
+        if (!this.endpointSectorMap.containsKey(endpoint))
+            return;
+
+        String sector = this.endpointSectorMap.remove(endpoint);
+
+        logger.info("Endpoint {} removed (Sector: {})", endpoint, sector);
+
+        try {
+            this.endpointListener.onEndpointRemoved(endpoint, sector);
+        } catch (Exception e) {
+            logger.error("Error handling the endpoint {} ! Msg: {}", endpoint, e.getLocalizedMessage());
+        }
+    }
+
+    private void schedule(long delay) {
+        try {
+            this.timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    observe();
+                }
+            }, delay);
+        } catch (IllegalStateException e) {
+            //The watcher has been stopped
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package it.unimore.dipi.iot.server.directory;
+
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.LinkFormat;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.server.resources.Resource;
+import org.eclipse.californium.core.server.resources.ResourceObserverAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the registration of a node to the Resource Directory up to date.
+ * - the node registers once with its whole link-format and an explicit lifetime "lt"
+ * - before the lifetime ends the registration is refreshed with an empty POST to its location (/rd/{id})
+ * - the resources added to or removed from the tree at runtime are sent as incremental iPATCH updates:
+ * only the changed links, the removed ones flagged with "rm". The changes are coalesced for a short time
+ * - if the registration is lost (E.g. the RD restarted) or the RD does not support the incremental update,
+ * the node registers again with its whole link-format
+ *
+ * A single request is in flight at a time, the requests are asynchronous and they are scheduled on a timer wheel.
+ * A burst of tree changes sends at most one update per coalescing time: only the first change of the burst
+ * schedules it, the following ones are sent with it.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 22:10
+ * @project coap-smart-building
+ */
+
+public class RdRegistrationClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(RdRegistrationClient.class);
+
+    private static final String RD_URI = "/rd";
+
+    private static final String REMOVE_ATTRIBUTE = "rm";
+
+    //The registration is refreshed when 3/4 of the lifetime are elapsed
+    private static final double REFRESH_RATIO = 0.75;
+
+    private static final long RETRY_DELAY = 10 * 1000; //10sec
+
+    private static final long UPDATE_COALESCING_TIME = 500; //0.5sec
+
+    //The unregistration at shutdown does not wait for an unreachable RD
+    private static final long UNREGISTRATION_TIMEOUT = 2 * 1000; //2sec
+
+    private final CoapClient coapClient;
+
+    private final String rdBaseUrl;
+
+    private final String endpointName;
+
+    private final String sectorName;
+
+    private final String base;
+
+    private final long lifetime;
+
+    private final Resource rootResource;
+
+    private final HashedTimerWheel.Deadline syncDeadline;
+
+    //Resource -> observer of its children
+    private final Map<Resource, TreeObserver> treeObserverMap = new ConcurrentHashMap<>();
+
+    //Guarded by this: resource URI -> link to send (the "rm" link for a removed resource)
+    private final Map<String, String> pendingLinkMap = new LinkedHashMap<>();
+
+    //Guarded by this
+    private String registrationUrl = null;
+
+    private boolean incrementalUpdateSupported = true;
+
+    private boolean requestInFlight = false;
+
+    //A request is already scheduled within the coalescing time or the retry delay: the tree changes wait for it
+    private boolean syncScheduled = false;
+
+    private boolean stopped = false;
+
+    /**
+     * @param rdBaseUrl    the RD base URL, E.g. coap://192.168.56.101:5683
+     * @param base         the base URL of the node, E.g. coap://192.168.43.172:5783
+     * @param lifetime     the lifetime of the registration in seconds
+     * @param rootResource the root of the resource tree to register
+     * @param timerWheel   the wheel scheduling the refreshes and the updates
+     */
+    public RdRegistrationClient(CoapClient coapClient, String rdBaseUrl, String endpointName, String sectorName, String base,
+                                long lifetime, Resource rootResource, HashedTimerWheel timerWheel) {
+
+        if (lifetime <= 0)
+            throw new IllegalArgumentException("lifetime must be positive");
+
+        this.coapClient = coapClient;
+        this.rdBaseUrl = rdBaseUrl;
+        this.endpointName = endpointName;
+        this.sectorName = sectorName;
+        this.base = base;
+        this.lifetime = lifetime;
+        this.rootResource = rootResource;
+        this.syncDeadline = timerWheel.newDeadline(this::synchronize);
+    }
+
+    /**
+     * Register the node and start following the changes of its resource tree
+     */
+    public void start() {
+        observeTree(this.rootResource, true);
+        this.syncDeadline.schedule(0);
+    }
+
+    /**
+     * Stop refreshing the registration and remove it from the RD (blocking call, at most UNREGISTRATION_TIMEOUT)
+     */
+    public void stop() {
+
+        String url;
+
+        synchronized (this) {
+            this.stopped = true;
+            url = this.registrationUrl;
+            this.registrationUrl = null;
+        }
+
+        this.syncDeadline.cancel();
+        observeTree(this.rootResource, false);
+
+        if (url == null)
+            return;
+
+        Request request = Request.newDelete().setURI(url);
+        CompletableFuture<CoapResponse> responseFuture = new CompletableFuture<>();
+
+        try {
+            this.coapClient.advanced(new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse coapResponse) {
+                    responseFuture.complete(coapResponse);
+                }
+
+                @Override
+                public void onError() {
+                    responseFuture.complete(null);
+                }
+            }, request);
+
+            CoapResponse response = responseFuture.get(UNREGISTRATION_TIMEOUT, TimeUnit.MILLISECONDS);
+            logger.info("Unregistered from Resource Directory: {} -> {}", url, response != null ? response.getCode() : "no response");
+
+        } catch (TimeoutException e) {
+            //The RD removes the registration when its lifetime expires
+            request.cancel();
+            logger.warn("Unregistering from Resource Directory timed out after {}ms: {}", UNREGISTRATION_TIMEOUT, url);
+        } catch (Exception e) {
+            logger.error("Error Unregistering from Resource Directory ! Msg: {}", e.getLocalizedMessage());
+        }
+    }
+
+    public synchronized String getRegistrationUrl() {
+        return registrationUrl;
+    }
+
+    /**
+     * Send the request the registration needs (registration, incremental update or refresh), it runs on the timer wheel
+     */
+    private synchronized void synchronize() {
+
+        this.syncScheduled = false;
+
+        if (this.stopped || this.requestInFlight)
+            return;
+
+        Request request;
+
+        if (this.registrationUrl == null || (!this.pendingLinkMap.isEmpty() && !this.incrementalUpdateSupported)) {
+
+            //coap://192.168.56.101:5683/rd?ep=node1&d=firstFloor&lt=3600&base=coap://<sourceIp>:<sourcePort>
+            request = Request.newPost().setURI(String.format("%s%s?ep=%s&d=%s&lt=%d&base=%s"
+                    , this.rdBaseUrl
+                    , RD_URI
+                    , this.endpointName
+                    , this.sectorName
+                    , this.lifetime
+                    , this.base));
+
+            //The whole tree already holds the pending changes
+            this.pendingLinkMap.clear();
+            request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+            request.setPayload(LinkFormat.serializeTree(this.rootResource));
+
+            send(request, RequestType.REGISTRATION, null);
+
+        } else if (!this.pendingLinkMap.isEmpty()) {
+
+            Map<String, String> sentLinkMap = new LinkedHashMap<>(this.pendingLinkMap);
+            this.pendingLinkMap.clear();
+
+            request = new Request(CoAP.Code.IPATCH).setURI(this.registrationUrl);
+            request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+            request.setPayload(String.join(",", sentLinkMap.values()));
+
+            send(request, RequestType.UPDATE, sentLinkMap);
+
+        } else {
+            //Refresh: no payload, the RD keeps the registered links
+            request = Request.newPost().setURI(this.registrationUrl);
+
+            send(request, RequestType.REFRESH, null);
+        }
+    }
+
+    //Guarded by this
+    private void send(Request request, RequestType requestType, Map<String, String> sentLinkMap) {
+
+        this.requestInFlight = true;
+
+        logger.debug("Sending {} to Resource Directory: {}", requestType, request.getURI());
+
+        this.coapClient.advanced(new CoapHandler() {
+            @Override
+            public void onLoad(CoapResponse coapResponse) {
+                onResponse(requestType, coapResponse, sentLinkMap);
+            }
+
+            @Override
+            public void onError() {
+                onResponse(requestType, null, sentLinkMap);
+            }
+        }, request);
+    }
+
+    private synchronized void onResponse(RequestType requestType, CoapResponse coapResponse, Map<String, String> sentLinkMap) {
+
+        this.requestInFlight = false;
+
+        if (this.stopped)
+            return;
+
+        if (coapResponse == null) {
+
+            logger.warn("Resource Directory {} failed (no response) ! Retrying in {}ms", requestType, RETRY_DELAY);
+
+            //The changes not delivered are sent again, unless newer ones are pending for the same resources
+            if (sentLinkMap != null)
+                restorePendingLinks(sentLinkMap);
+
+            scheduleSync(Math.min(RETRY_DELAY, getRefreshDelay()));
+            return;
+        }
+
+        if (CoAP.ResponseCode.isSuccess(coapResponse.getCode())) {
+
+            if (requestType == RequestType.REGISTRATION) {
+                this.registrationUrl = String.format("%s/%s", this.rdBaseUrl, coapResponse.getOptions().getLocationPathString());
+                logger.info("Registered to Resource Directory with lifetime {}s -> Location: {}", this.lifetime, this.registrationUrl);
+            } else
+                logger.debug("Resource Directory {} done -> {}", requestType, coapResponse.getCode());
+
+        } else if (coapResponse.getCode() == CoAP.ResponseCode.NOT_FOUND) {
+
+            //The registration expired or the RD lost it: register the whole tree again
+            logger.warn("Registration {} not found on the Resource Directory ! Registering again", this.registrationUrl);
+            this.registrationUrl = null;
+
+        } else if (requestType == RequestType.UPDATE) {
+
+            //E.g. 4.05 Method Not Allowed: the RD does not support the incremental update
+            logger.warn("Incremental update not supported by the Resource Directory ({}) ! Registering again", coapResponse.getCode());
+            this.incrementalUpdateSupported = false;
+            restorePendingLinks(sentLinkMap);
+
+        } else {
+
+            logger.error("Resource Directory {} rejected ! Code: {} Payload: {}", requestType, coapResponse.getCode(), coapResponse.getResponseText());
+            scheduleSync(Math.min(RETRY_DELAY, getRefreshDelay()));
+            return;
+        }
+
+        if (this.registrationUrl == null || !this.pendingLinkMap.isEmpty())
+            scheduleSync(this.registrationUrl == null ? 0 : UPDATE_COALESCING_TIME);
+        else
+            //A tree change brings the next request forward
+            this.syncDeadline.schedule(getRefreshDelay());
+    }
+
+    //Guarded by this
+    private void scheduleSync(long delay) {
+        this.syncScheduled = true;
+        this.syncDeadline.schedule(delay);
+    }
+
+    //Guarded by this
+    private void restorePendingLinks(Map<String, String> sentLinkMap) {
+        sentLinkMap.forEach(this.pendingLinkMap::putIfAbsent);
+    }
+
+    private long getRefreshDelay() {
+        return (long) (this.lifetime * 1000 * REFRESH_RATIO);
+    }
+
+    private synchronized void onTreeChanged() {
+
+        if (this.stopped || this.requestInFlight || this.registrationUrl == null || this.syncScheduled)
+            return;
+
+        //The next request is sent after the coalescing time (the completion of the current one schedules it otherwise)
+        scheduleSync(UPDATE_COALESCING_TIME);
+    }
+
+    //Guarded by this
+    private void addPendingLinks(Resource resource) {
+
+        if (resource.isVisible()) {
+            StringBuilder link = LinkFormat.serializeResource(resource);
+            //Drop the trailing separator
+            link.setLength(link.length() - 1);
+            this.pendingLinkMap.put(resource.getURI(), link.toString());
+        }
+
+        for (Resource child : resource.getChildren())
+            addPendingLinks(child);
+    }
+
+    /**
+     * A removed resource has no path anymore: its URI is rebuilt from the parent it has been removed from
+     */
+    //Guarded by this
+    private void addPendingRemovals(Resource resource, String uri) {
+
+        if (resource.isVisible())
+            this.pendingLinkMap.put(uri, String.format("<%s>;%s", uri, REMOVE_ATTRIBUTE));
+
+        for (Resource child : resource.getChildren())
+            addPendingRemovals(child, String.format("%s/%s", uri, child.getName()));
+    }
+
+    private void observeTree(Resource resource, boolean observe) {
+        if (observe)
+            resource.addObserver(this.treeObserverMap.computeIfAbsent(resource, TreeObserver::new));
+        else {
+            TreeObserver treeObserver = this.treeObserverMap.remove(resource);
+            if (treeObserver != null)
+                resource.removeObserver(treeObserver);
+        }
+
+        for (Resource child : resource.getChildren())
+            observeTree(child, observe);
+    }
+
+    /**
+     * Collects the links of the children added to or removed from a resource
+     */
+    private class TreeObserver extends ResourceObserverAdapter {
+
+        private final Resource parent;
+
+        private TreeObserver(Resource parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void addedChild(Resource child) {
+            observeTree(child, true);
+
+            synchronized (RdRegistrationClient.this) {
+                addPendingLinks(child);
+            }
+
+            onTreeChanged();
+        }
+
+        @Override
+        public void removedChild(Resource child) {
+            observeTree(child, false);
+
+            synchronized (RdRegistrationClient.this) {
+                addPendingRemovals(child, String.format("%s/%s", this.parent.getURI(), child.getName()));
+            }
+
+            onTreeChanged();
+        }
+    }
+
+    private enum RequestType {
+        REGISTRATION, UPDATE, REFRESH
+    }
+}
@@ -17,6 +17,13 @@ public class ChangeResourceParameterDescriptor {
 
     private double changedValue;
 
+    //Optional switch-off rule settings, null keeps the current value
+    private Double hysteresis;
+
+    private Integer sustainedSamples;
+
+    private Double maxRateOfChange;
+
     public ChangeResourceParameterDescriptor() {
     }
 
@@ -32,10 +39,37 @@ public class ChangeResourceParameterDescriptor {
         this.changedValue = changedValue;
     }
 
+    public Double getHysteresis() {
+        return hysteresis;
+    }
+
+    public void setHysteresis(Double hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    public Integer getSustainedSamples() {
+        return sustainedSamples;
+    }
+
+    public void setSustainedSamples(Integer sustainedSamples) {
+        this.sustainedSamples = sustainedSamples;
+    }
+
+    public Double getMaxRateOfChange() {
+        return maxRateOfChange;
+    }
+
+    public void setMaxRateOfChange(Double maxRateOfChange) {
+        this.maxRateOfChange = maxRateOfChange;
+    }
+
     @Override
     public String toString() {
         final StringBuffer sb = new StringBuffer("ChangeResourceParameterDescriptor{");
         sb.append("changedValue=").append(changedValue);
+        sb.append(", hysteresis=").append(hysteresis);
+        sb.append(", sustainedSamples=").append(sustainedSamples);
+        sb.append(", maxRateOfChange=").append(maxRateOfChange);
         sb.append('}');
         return sb.toString();
     }
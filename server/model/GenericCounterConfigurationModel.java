@@ -8,10 +8,21 @@ package it.unimore.dipi.iot.server.model;
 
 public abstract class GenericCounterConfigurationModel {
 
+    //Default switch-off rule: clear the alarm 10% below the max value, raise it after 3 consecutive samples
+    public static final double DEFAULT_HYSTERESIS_RATIO = 0.1;
+
+    public static final int DEFAULT_SUSTAINED_SAMPLES = 3;
+
     private double maxValueConsumption;
 
     private String rawMaterialMeasureUnit;
 
+    private double hysteresis;
+
+    private int sustainedSamples = DEFAULT_SUSTAINED_SAMPLES;
+
+    private double maxRateOfChange; //unit/s, 0 disables the rate of change rule
+
 
     public GenericCounterConfigurationModel() {
     }
@@ -19,6 +30,7 @@ public abstract class GenericCounterConfigurationModel {
     public GenericCounterConfigurationModel(double maxValueConsumption, String rawMaterialMeasureUnit) {
         this.maxValueConsumption = maxValueConsumption;
         this.rawMaterialMeasureUnit = rawMaterialMeasureUnit;
+        this.hysteresis = maxValueConsumption * DEFAULT_HYSTERESIS_RATIO;
     }
 
     public double getMaxValueConsumption() {
@@ -37,12 +49,39 @@ public abstract class GenericCounterConfigurationModel {
         this.rawMaterialMeasureUnit = rawMaterialMeasureUnit;
     }
 
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public void setHysteresis(double hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    public int getSustainedSamples() {
+        return sustainedSamples;
+    }
+
+    public void setSustainedSamples(int sustainedSamples) {
+        this.sustainedSamples = sustainedSamples;
+    }
+
+    public double getMaxRateOfChange() {
+        return maxRateOfChange;
+    }
+
+    public void setMaxRateOfChange(double maxRateOfChange) {
+        this.maxRateOfChange = maxRateOfChange;
+    }
+
 
     @Override
     public String toString() {
         final StringBuffer sb = new StringBuffer("GenericCounterConfigurationModel{");
         sb.append("maxValueConsumption=").append(maxValueConsumption);
         sb.append(", rawMaterialMeasureUnit='").append(rawMaterialMeasureUnit).append('\'');
+        sb.append(", hysteresis=").append(hysteresis);
+        sb.append(", sustainedSamples=").append(sustainedSamples);
+        sb.append(", maxRateOfChange=").append(maxRateOfChange);
         sb.append('}');
         return sb.toString();
     }
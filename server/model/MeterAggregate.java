@@ -0,0 +1,91 @@
+package it.unimore.dipi.iot.server.model;
+
+/**
+ * Immutable aggregate of the readings of a meter over a time window (E.g. one minute or one hour).
+ * Mean, min and max are computed on the readings of the window, the sum is the consumption of the window
+ * (difference of the meter totals, in the unit of the value multiplied by seconds, E.g. l for l/s).
+ * The sums of consecutive windows add up exactly to the difference of the meter totals.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 06:10
+ * @project coap-smart-building
+ */
+
+public final class MeterAggregate {
+
+    private final long windowStart;
+
+    private final long windowDuration;
+
+    private final int count;
+
+    private final double mean;
+
+    private final double min;
+
+    private final double max;
+
+    private final double sum;
+
+    public MeterAggregate(long windowStart, long windowDuration, int count, double mean, double min, double max, double sum) {
+        this.windowStart = windowStart;
+        this.windowDuration = windowDuration;
+        this.count = count;
+        this.mean = mean;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * @return the start of the window, epoch millis aligned to the window duration
+     */
+    public long getWindowStart() {
+        return windowStart;
+    }
+
+    public long getWindowDuration() {
+        return windowDuration;
+    }
+
+    public long getWindowEnd() {
+        return windowStart + windowDuration;
+    }
+
+    /**
+     * @return the number of readings in the window, lower than expected for the first window after a start
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("MeterAggregate{");
+        sb.append("windowStart=").append(windowStart);
+        sb.append(", windowDuration=").append(windowDuration);
+        sb.append(", count=").append(count);
+        sb.append(", mean=").append(mean);
+        sb.append(", min=").append(min);
+        sb.append(", max=").append(max);
+        sb.append(", sum=").append(sum);
+        sb.append('}');
+        return sb.toString();
+    }
+}
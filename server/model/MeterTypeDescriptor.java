@@ -0,0 +1,126 @@
+package it.unimore.dipi.iot.server.model;
+
+/**
+ * This class describes a meter type (water, energy, gas, ...).
+ * A single descriptor drives both the emulated raw meter and the CoAP resource exposing it,
+ * so a new meter type only requires a new descriptor instance.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 09:12
+ * @project coap-smart-building
+ */
+
+public class MeterTypeDescriptor {
+
+    public static final MeterTypeDescriptor WATER = new MeterTypeDescriptor(
+            "water-provider", "H2O", "iot.sensor.water", "WaterConsumptionSensor", "l/s",
+            0.1, 0.5, 0.1, 0.5, 5000, 5000);
+
+    public static final MeterTypeDescriptor ENERGY = new MeterTypeDescriptor(
+            "energy-provider", "EN", "iot.sensor.energy", "EnergySensor", "kWh",
+            0.5, 1.0, 0.1, 1.0, 5000, 5000);
+
+    public static final MeterTypeDescriptor GAS = new MeterTypeDescriptor(
+            "gas-provider", "gas", "iot.sensor.gas", "GasSensor", "m3/s",
+            0.001, 0.005, 0.001, 0.004, 5000, 5000);
+
+    private final String providerName;
+
+    private final String resourceName;
+
+    private final String resourceType;
+
+    private final String title;
+
+    private final String unit;
+
+    private final double minValue;
+
+    private final double maxValue;
+
+    private final double minVariation;
+
+    private final double maxVariation;
+
+    private final long updatePeriod;
+
+    private final long taskDelayTime;
+
+    public MeterTypeDescriptor(String providerName, String resourceName, String resourceType, String title, String unit,
+                               double minValue, double maxValue, double minVariation, double maxVariation,
+                               long updatePeriod, long taskDelayTime) {
+        this.providerName = providerName;
+        this.resourceName = resourceName;
+        this.resourceType = resourceType;
+        this.title = title;
+        this.unit = unit;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.minVariation = minVariation;
+        this.maxVariation = maxVariation;
+        this.updatePeriod = updatePeriod;
+        this.taskDelayTime = taskDelayTime;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public double getMinValue() {
+        return minValue;
+    }
+
+    public double getMaxValue() {
+        return maxValue;
+    }
+
+    public double getMinVariation() {
+        return minVariation;
+    }
+
+    public double getMaxVariation() {
+        return maxVariation;
+    }
+
+    public long getUpdatePeriod() {
+        return updatePeriod;
+    }
+
+    public long getTaskDelayTime() {
+        return taskDelayTime;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("MeterTypeDescriptor{");
+        sb.append("providerName='").append(providerName).append('\'');
+        sb.append(", resourceName='").append(resourceName).append('\'');
+        sb.append(", resourceType='").append(resourceType).append('\'');
+        sb.append(", title='").append(title).append('\'');
+        sb.append(", unit='").append(unit).append('\'');
+        sb.append(", minValue=").append(minValue);
+        sb.append(", maxValue=").append(maxValue);
+        sb.append(", minVariation=").append(minVariation);
+        sb.append(", maxVariation=").append(maxVariation);
+        sb.append(", updatePeriod=").append(updatePeriod);
+        sb.append(", taskDelayTime=").append(taskDelayTime);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package it.unimore.dipi.iot.server.model;
+
+/**
+ * Immutable snapshot of a provider configuration, E.g. the max water consumption and its switch-off rule settings.
+ * Every change creates a new snapshot with the next version: a reader holding a snapshot always sees consistent values,
+ * and the version tells the listeners whether a snapshot has already been handled.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 00:20
+ * @project coap-smart-building
+ */
+
+public final class ProviderConfigurationSnapshot {
+
+    public static final long INITIAL_VERSION = 1;
+
+    private final long version;
+
+    private final double maxValueConsumption;
+
+    private final String rawMaterialMeasureUnit;
+
+    private final double hysteresis;
+
+    private final int sustainedSamples;
+
+    private final double maxRateOfChange; //unit/s, 0 disables the rate of change rule
+
+    public ProviderConfigurationSnapshot(long version, double maxValueConsumption, String rawMaterialMeasureUnit,
+                                         double hysteresis, int sustainedSamples, double maxRateOfChange) {
+        this.version = version;
+        this.maxValueConsumption = maxValueConsumption;
+        this.rawMaterialMeasureUnit = rawMaterialMeasureUnit;
+        this.hysteresis = hysteresis;
+        this.sustainedSamples = sustainedSamples;
+        this.maxRateOfChange = maxRateOfChange;
+    }
+
+    /**
+     * @param configurationModel the default configuration of the provider
+     * @return the first snapshot of the configuration
+     */
+    public static ProviderConfigurationSnapshot of(GenericCounterConfigurationModel configurationModel) {
+        return new ProviderConfigurationSnapshot(INITIAL_VERSION,
+                configurationModel.getMaxValueConsumption(),
+                configurationModel.getRawMaterialMeasureUnit(),
+                configurationModel.getHysteresis(),
+                configurationModel.getSustainedSamples(),
+                configurationModel.getMaxRateOfChange());
+    }
+
+    /**
+     * @param maxValueConsumption the new max value, null keeps the current one
+     * @param hysteresis          the new hysteresis, null keeps the current one
+     * @param sustainedSamples    the new sustained samples, null keeps the current value
+     * @param maxRateOfChange     the new max rate of change, null keeps the current one
+     * @return the next version of the configuration
+     */
+    public ProviderConfigurationSnapshot withChanges(Double maxValueConsumption, Double hysteresis, Integer sustainedSamples, Double maxRateOfChange) {
+        return new ProviderConfigurationSnapshot(this.version + 1,
+                maxValueConsumption != null ? maxValueConsumption : this.maxValueConsumption,
+                this.rawMaterialMeasureUnit,
+                hysteresis != null ? hysteresis : this.hysteresis,
+                sustainedSamples != null ? sustainedSamples : this.sustainedSamples,
+                maxRateOfChange != null ? maxRateOfChange : this.maxRateOfChange);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public double getMaxValueConsumption() {
+        return maxValueConsumption;
+    }
+
+    public String getRawMaterialMeasureUnit() {
+        return rawMaterialMeasureUnit;
+    }
+
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public int getSustainedSamples() {
+        return sustainedSamples;
+    }
+
+    public double getMaxRateOfChange() {
+        return maxRateOfChange;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ProviderConfigurationSnapshot{");
+        sb.append("version=").append(version);
+        sb.append(", maxValueConsumption=").append(maxValueConsumption);
+        sb.append(", rawMaterialMeasureUnit='").append(rawMaterialMeasureUnit).append('\'');
+        sb.append(", hysteresis=").append(hysteresis);
+        sb.append(", sustainedSamples=").append(sustainedSamples);
+        sb.append(", maxRateOfChange=").append(maxRateOfChange);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package it.unimore.dipi.iot.server.network;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.eclipse.californium.elements.util.ExecutorsUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Pool of client CoAP endpoints, each one with its own UDP socket (ephemeral port) and its own protocol thread.
+ * The requests and the observe relations are assigned to an endpoint by hashing their destination (host and port):
+ * all the exchanges with a server go through the same socket, so their order is kept,
+ * while the exchanges with many servers (E.g. hundreds of thousands of observe relations) are spread across the sockets.
+ *
+ * The endpoints share the secondary executor (deduplication and exchange timeouts).
+ * The handlers of the returned clients run on the protocol thread of the endpoint: they must not block,
+ * the blocking calls (E.g. a discovery started by a notification) run on another executor.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 01:50
+ * @project coap-smart-building
+ */
+
+public class ClientEndpointPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientEndpointPool.class);
+
+    public static final int DEFAULT_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final int DEFAULT_COAP_PORT = 5683;
+
+    private final String name;
+
+    private final List<CoapEndpoint> endpointList = new ArrayList<>();
+
+    private final List<CoapClient> clientList = new ArrayList<>();
+
+    private final List<ScheduledExecutorService> executorList = new ArrayList<>();
+
+    private final ScheduledExecutorService secondaryExecutor;
+
+    /**
+     * @param name the prefix of the thread names
+     * @param size the number of endpoints (sockets and protocol threads)
+     * @throws IllegalStateException if an endpoint cannot be started: a pool never has a broken slot
+     */
+    public ClientEndpointPool(String name, int size) {
+
+        if (size < 1)
+            throw new IllegalArgumentException("size must be at least 1");
+
+        this.name = name;
+        this.secondaryExecutor = ExecutorsUtil.newDefaultSecondaryScheduler(String.format("%s-Timer#", name));
+
+        for (int i = 0; i < size; i++) {
+
+            ScheduledExecutorService mainExecutor = ExecutorsUtil.newSingleThreadScheduledExecutor(new DaemonThreadFactory(String.format("%s-%d#", name, i)));
+            this.executorList.add(mainExecutor);
+
+            CoapEndpoint endpoint = new CoapEndpoint.Builder()
+                    .setInetSocketAddress(new InetSocketAddress(0))
+                    .build();
+            endpoint.setExecutors(mainExecutor, this.secondaryExecutor);
+
+            this.endpointList.add(endpoint);
+            this.clientList.add(new CoapClient().setEndpoint(endpoint));
+
+            //The destinations hashed to a dead endpoint would fail silently: the whole pool is given up
+            try {
+                endpoint.start();
+            } catch (IOException e) {
+                logger.error("Error starting the client endpoint {} of {} ! Msg: {}", i, name, e.getLocalizedMessage());
+                destroy();
+                throw new IllegalStateException(String.format("Unable to start the client endpoint %d of %s", i, name), e);
+            }
+        }
+
+        logger.info("ClientEndpointPool {} started with {} endpoints", name, size);
+    }
+
+    /**
+     * @param uri the destination of the requests, E.g. coap://<node_ip>:<node_port>/<resource_uri>
+     * @return the client bound to the endpoint of the destination, its URI is not set:
+     * the requests have to carry the full URI
+     */
+    public CoapClient getClient(String uri) {
+        return this.clientList.get(indexOf(uri));
+    }
+
+    /**
+     * @param index any number, E.g. the sequence number of a request: consecutive numbers go to different endpoints
+     * @return the client of the endpoint index modulo the size of the pool
+     */
+    public CoapClient getClient(int index) {
+        return this.clientList.get(Math.floorMod(index, this.clientList.size()));
+    }
+
+    public Endpoint getEndpoint(String uri) {
+        return this.endpointList.get(indexOf(uri));
+    }
+
+    public int size() {
+        return this.endpointList.size();
+    }
+
+    //The same host and port always map to the same endpoint, a URI without a valid host maps to the first one
+    private int indexOf(String uri) {
+
+        try {
+            URI parsedUri = URI.create(uri);
+
+            if (parsedUri.getHost() == null)
+                return 0;
+
+            int port = parsedUri.getPort() != -1 ? parsedUri.getPort() : DEFAULT_COAP_PORT;
+            int hash = (parsedUri.getHost().toLowerCase(Locale.ROOT) + ':' + port).hashCode();
+
+            //Spread the hash, the String hash code of similar addresses differs only in the low bits
+            return Math.floorMod(hash ^ (hash >>> 16), this.endpointList.size());
+
+        } catch (IllegalArgumentException e) {
+            logger.error("Error hashing the destination {} ! Msg: {}", uri, e.getLocalizedMessage());
+            return 0;
+        }
+    }
+
+    public void destroy() {
+
+        this.clientList.forEach(CoapClient::shutdown);
+        this.endpointList.forEach(CoapEndpoint::destroy);
+
+        //The executors are set from outside: the endpoints do not shut them down
+        this.executorList.forEach(ScheduledExecutorService::shutdownNow);
+        this.secondaryExecutor.shutdownNow();
+
+        logger.info("ClientEndpointPool {} destroyed", this.name);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ClientEndpointPool{");
+        sb.append("name='").append(name).append('\'');
+        sb.append(", size=").append(endpointList.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
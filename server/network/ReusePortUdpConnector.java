@@ -0,0 +1,347 @@
+package it.unimore.dipi.iot.server.network;
+
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.elements.Connector;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.EndpointContextMatcher;
+import org.eclipse.californium.elements.RawData;
+import org.eclipse.californium.elements.RawDataChannel;
+import org.eclipse.californium.elements.UDPConnector;
+import org.eclipse.californium.elements.UdpEndpointContext;
+import org.eclipse.californium.elements.exception.EndpointMismatchException;
+import org.eclipse.californium.elements.util.ClockUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UDP connector binding several sockets to the same address with SO_REUSEPORT, each one with its own receiver thread.
+ * The kernel spreads the datagrams across the sockets by hashing the source address and port:
+ * the datagrams of a peer always reach the same socket, the receive path of many peers runs on many cores.
+ * A single {@link CoapEndpoint} sits on top of the sockets, so deduplication and observe relations are not affected.
+ *
+ * The datagrams are sent on the calling thread (the CoAP protocol stage), through the socket the peer is hashed to.
+ * If the platform does not support SO_REUSEPORT a single socket is bound.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 00:50
+ * @project coap-smart-building
+ */
+
+public class ReusePortUdpConnector implements Connector {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReusePortUdpConnector.class);
+
+    //After a receive error the receiver waits before trying again, the wait doubles up to the max one
+    private static final long MIN_RECEIVE_RETRY_DELAY = 10; //ms
+
+    private static final long MAX_RECEIVE_RETRY_DELAY = 1000; //1sec
+
+    private final InetSocketAddress localAddress;
+
+    private final int socketCount;
+
+    private final int receiverPacketSize;
+
+    private final int receiveBufferSize;
+
+    private final List<DatagramSocket> socketList = new ArrayList<>();
+
+    private final List<Thread> receiverThreadList = new ArrayList<>();
+
+    //Copy of the socket list for the send path
+    private volatile DatagramSocket[] sockets = new DatagramSocket[0];
+
+    private volatile boolean running = false;
+
+    private volatile InetSocketAddress effectiveAddress;
+
+    private volatile RawDataChannel rawDataReceiver;
+
+    private volatile EndpointContextMatcher endpointContextMatcher;
+
+    /**
+     * @param localAddress       the address to bind, the port 0 binds every socket to the same ephemeral port
+     * @param socketCount        the number of sockets (and receiver threads)
+     * @param receiverPacketSize the largest datagram received, the larger ones are discarded
+     * @param receiveBufferSize  the receive buffer of each socket, {@link UDPConnector#UNDEFINED} keeps the default
+     */
+    public ReusePortUdpConnector(InetSocketAddress localAddress, int socketCount, int receiverPacketSize, int receiveBufferSize) {
+
+        if (socketCount < 1)
+            throw new IllegalArgumentException("socketCount must be at least 1");
+
+        this.localAddress = localAddress;
+        this.socketCount = socketCount;
+        this.receiverPacketSize = receiverPacketSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.effectiveAddress = localAddress;
+    }
+
+    /**
+     * Build the CoAP endpoint of an address: with more than one socket on top of this connector,
+     * otherwise with the standard Californium UDP connector
+     *
+     * @param socketCount the number of sockets bound to the address
+     */
+    public static CoapEndpoint createEndpoint(InetSocketAddress address, int socketCount) {
+
+        if (socketCount > 1)
+            return createReusePortEndpoint(address, socketCount);
+
+        return new CoapEndpoint.Builder().setInetSocketAddress(address).build();
+    }
+
+    /**
+     * Build the CoAP endpoint of an address on top of this connector, also with a single socket
+     * (E.g. the baseline of a benchmark of the socket count)
+     *
+     * @param socketCount the number of sockets bound to the address
+     */
+    public static CoapEndpoint createReusePortEndpoint(InetSocketAddress address, int socketCount) {
+
+        NetworkConfig networkConfig = NetworkConfig.getStandard();
+
+        return new CoapEndpoint.Builder()
+                .setConnector(new ReusePortUdpConnector(address
+                        , socketCount
+                        , networkConfig.getInt(NetworkConfig.Keys.UDP_CONNECTOR_DATAGRAM_SIZE)
+                        , networkConfig.getInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER)))
+                .build();
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+
+        if (this.running)
+            return;
+
+        try {
+            bindSockets();
+        } catch (IOException e) {
+            closeSockets();
+            throw e;
+        }
+
+        this.sockets = this.socketList.toArray(new DatagramSocket[0]);
+        this.running = true;
+
+        for (int i = 0; i < this.socketList.size(); i++) {
+            Thread receiverThread = new Thread(new Receiver(this.socketList.get(i)), String.format("UDP-Receiver-%s[%d]", this.effectiveAddress, i));
+            receiverThread.setDaemon(true);
+            this.receiverThreadList.add(receiverThread);
+            receiverThread.start();
+        }
+
+        logger.info("ReusePortUdpConnector listening on {} with {} sockets", this.effectiveAddress, this.socketList.size());
+    }
+
+    //Guarded by this
+    private void bindSockets() throws IOException {
+
+        InetSocketAddress bindAddress = this.localAddress;
+
+        for (int i = 0; i < this.socketCount; i++) {
+
+            DatagramSocket socket = new DatagramSocket(null);
+
+            try {
+                socket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            } catch (UnsupportedOperationException e) {
+                if (i > 0) {
+                    socket.close();
+                    break;
+                }
+                logger.warn("SO_REUSEPORT not supported ! Binding a single socket on {}", bindAddress);
+                bindSocket(socket, bindAddress);
+                break;
+            }
+
+            bindSocket(socket, bindAddress);
+
+            //The following sockets share the port of the first one (E.g. an ephemeral port)
+            bindAddress = (InetSocketAddress) socket.getLocalSocketAddress();
+        }
+
+        this.effectiveAddress = (InetSocketAddress) this.socketList.get(0).getLocalSocketAddress();
+    }
+
+    //Guarded by this
+    private void bindSocket(DatagramSocket socket, InetSocketAddress bindAddress) throws IOException {
+        this.socketList.add(socket);
+
+        if (this.receiveBufferSize != UDPConnector.UNDEFINED)
+            socket.setReceiveBufferSize(this.receiveBufferSize);
+
+        socket.bind(bindAddress);
+    }
+
+    //Guarded by this
+    private void closeSockets() {
+        this.socketList.forEach(DatagramSocket::close);
+        this.socketList.clear();
+        this.sockets = new DatagramSocket[0];
+    }
+
+    @Override
+    public synchronized void stop() {
+
+        if (!this.running)
+            return;
+
+        this.running = false;
+
+        //Closing the sockets unblocks the receiver threads
+        closeSockets();
+
+        for (Thread receiverThread : this.receiverThreadList) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.receiverThreadList.clear();
+
+        logger.info("ReusePortUdpConnector on {} stopped", this.effectiveAddress);
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        this.rawDataReceiver = null;
+    }
+
+    @Override
+    public void send(RawData rawData) {
+
+        DatagramSocket[] currentSockets = this.sockets;
+
+        if (!this.running || currentSockets.length == 0) {
+            rawData.onError(new InterruptedIOException("Connector is not running."));
+            return;
+        }
+
+        EndpointContext destination = rawData.getEndpointContext();
+        InetSocketAddress destinationAddress = destination.getPeerAddress();
+        EndpointContext connectionContext = new UdpEndpointContext(destinationAddress);
+
+        EndpointContextMatcher matcher = this.endpointContextMatcher;
+        if (matcher != null && !matcher.isToBeSent(destination, connectionContext)) {
+            logger.warn("ReusePortUdpConnector ({}) drops {} bytes to {}", this.effectiveAddress, rawData.getSize(), destinationAddress);
+            rawData.onError(new EndpointMismatchException());
+            return;
+        }
+
+        //The same socket the peer is hashed to by this connector: the sends of a peer do not contend with the others
+        DatagramSocket socket = currentSockets[Math.floorMod(destinationAddress.hashCode(), currentSockets.length)];
+
+        try {
+            rawData.onContextEstablished(connectionContext);
+            socket.send(new DatagramPacket(rawData.getBytes(), rawData.getSize(), destinationAddress));
+            rawData.onSent();
+        } catch (IOException e) {
+            rawData.onError(e);
+        }
+    }
+
+    @Override
+    public void setRawDataReceiver(RawDataChannel rawDataReceiver) {
+        this.rawDataReceiver = rawDataReceiver;
+    }
+
+    @Override
+    public void setEndpointContextMatcher(EndpointContextMatcher endpointContextMatcher) {
+        this.endpointContextMatcher = endpointContextMatcher;
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return effectiveAddress;
+    }
+
+    @Override
+    public String getProtocol() {
+        return "UDP";
+    }
+
+    public int getSocketCount() {
+        return sockets.length;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ReusePortUdpConnector{");
+        sb.append("effectiveAddress=").append(effectiveAddress);
+        sb.append(", socketCount=").append(socketCount);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Receive loop of one socket
+     */
+    private class Receiver implements Runnable {
+
+        private final DatagramSocket socket;
+
+        private Receiver(DatagramSocket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+
+            //One more byte to detect the truncated datagrams
+            int size = receiverPacketSize + 1;
+            DatagramPacket datagram = new DatagramPacket(new byte[size], size);
+
+            long retryDelay = 0;
+
+            while (running) {
+                try {
+                    datagram.setLength(size);
+                    this.socket.receive(datagram);
+                    retryDelay = 0;
+
+                    RawDataChannel receiver = rawDataReceiver;
+
+                    if (datagram.getLength() >= size) {
+                        logger.debug("ReusePortUdpConnector ({}) discarded a truncated datagram from {}", effectiveAddress, datagram.getSocketAddress());
+                    } else if (receiver != null) {
+                        byte[] bytes = Arrays.copyOfRange(datagram.getData(), datagram.getOffset(), datagram.getOffset() + datagram.getLength());
+                        receiver.receiveData(RawData.inbound(bytes,
+                                new UdpEndpointContext(new InetSocketAddress(datagram.getAddress(), datagram.getPort())),
+                                false,
+                                ClockUtil.nanoRealtime()));
+                    }
+                } catch (IOException e) {
+                    if (!running)
+                        return;
+
+                    //A persistent error (E.g. a closed socket) is not retried in a busy loop
+                    retryDelay = Math.min(MAX_RECEIVE_RETRY_DELAY, Math.max(MIN_RECEIVE_RETRY_DELAY, 2 * retryDelay));
+                    logger.error("Error receiving on {} ! Msg: {} -> retrying in {}ms", effectiveAddress, e.getLocalizedMessage(), retryDelay);
+
+                    try {
+                        Thread.sleep(retryDelay);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                } catch (Exception e) {
+                    logger.error("Error handling a datagram on {} ! Msg: {}", effectiveAddress, e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package it.unimore.dipi.iot.server.occupancy;
+
+import it.unimore.dipi.iot.server.directory.RdEndpointWatcher;
+import it.unimore.dipi.iot.server.network.ClientEndpointPool;
+import it.unimore.dipi.iot.utils.HashedTimerWheel;
+import it.unimore.dipi.iot.utils.LinkFormatParser;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.elements.util.DaemonThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Discovers the presence sources of a zone through the Resource Directory and feeds the {@link ZoneOccupancyTable}.
+ * - the endpoints of the zone are followed with the RD endpoint lookup ?d=<zone>&delta ({@link RdEndpointWatcher}):
+ * an endpoint registering later (E.g. a presence node started or restarted after this node) is discovered as well
+ * - the presence sensors of each endpoint are found with /.well-known/core?rt=iot.sensor.presence
+ * - each presence sensor is observed, every notification updates the occupancy of its zone
+ * - an observation that fails is dropped from the zone and started again after {@link #RETRY_DELAY},
+ * as long as its endpoint is registered; the sources of an endpoint leaving the RD are forgotten
+ *
+ * The discoveries are blocking calls: they run on a dedicated thread, in the order the endpoints are notified.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 18:25
+ * @project coap-smart-building
+ */
+
+public class PresenceSourceDiscovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceSourceDiscovery.class);
+
+    private static final String EP_LOOKUP_URI = "/rd-lookup/ep";
+
+    private static final String WELL_KNOWN_CORE_URI = "/.well-known/core";
+
+    private static final String PRESENCE_RESOURCE_TYPE = "iot.sensor.presence";
+
+    private static final long RETRY_DELAY = 10 * 1000; //10sec
+
+    private final ClientEndpointPool clientEndpointPool;
+
+    private final String zone;
+
+    private final ZoneOccupancyTable zoneOccupancyTable;
+
+    private final HashedTimerWheel timerWheel;
+
+    private final RdEndpointWatcher rdEndpointWatcher;
+
+    //The discovery of an endpoint is a blocking call: it does not run on the CoAP handler threads
+    private final ExecutorService discoveryExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("presence-discovery#"));
+
+    //Endpoint -> its presence sources, used by the discovery thread only
+    private final Map<String, List<PresenceSource>> endpointSourceMap = new HashMap<>();
+
+    /**
+     * @param clientEndpointPool the clients used for discovery and observation, chosen by destination
+     * @param rdBaseUrl          the RD base URL, E.g. coap://192.168.56.101:5683
+     * @param zone               the RD sector of the followed endpoints, E.g. firstFloor
+     * @param zoneOccupancyTable the table to feed
+     * @param timerWheel         the wheel scheduling the new observations of the failed sources
+     */
+    public PresenceSourceDiscovery(ClientEndpointPool clientEndpointPool, String rdBaseUrl, String zone,
+                                   ZoneOccupancyTable zoneOccupancyTable, HashedTimerWheel timerWheel) {
+        this.clientEndpointPool = clientEndpointPool;
+        this.zone = zone;
+        this.zoneOccupancyTable = zoneOccupancyTable;
+        this.timerWheel = timerWheel;
+
+        String lookupUrl = String.format("%s%s?d=%s&delta", rdBaseUrl, EP_LOOKUP_URI, zone);
+
+        this.rdEndpointWatcher = new RdEndpointWatcher(clientEndpointPool.getClient(lookupUrl), lookupUrl, new RdEndpointWatcher.EndpointListener() {
+            @Override
+            public void onEndpointAdded(String endpoint, String sector) {
+                discoveryExecutor.execute(() -> addEndpoint(endpoint));
+            }
+
+            @Override
+            public void onEndpointRemoved(String endpoint, String sector) {
+                discoveryExecutor.execute(() -> removeEndpoint(endpoint));
+            }
+        });
+    }
+
+    /**
+     * Start following the presence sources of the zone
+     */
+    public void start() {
+        this.rdEndpointWatcher.start();
+    }
+
+    /**
+     * Cancel every observation
+     */
+    public void stop() {
+        this.rdEndpointWatcher.stop();
+        this.discoveryExecutor.execute(() -> new ArrayList<>(this.endpointSourceMap.keySet()).forEach(this::removeEndpoint));
+        this.discoveryExecutor.shutdown();
+    }
+
+    private void addEndpoint(String endpoint) {
+
+        List<PresenceSource> presenceSourceList = new ArrayList<>();
+
+        forEachLink(String.format("%s%s?rt=%s", endpoint, WELL_KNOWN_CORE_URI, PRESENCE_RESOURCE_TYPE), resourceLink -> {
+            if (!resourceLink.getUri().equals(WELL_KNOWN_CORE_URI))
+                presenceSourceList.add(new PresenceSource(String.format("%s%s", endpoint, resourceLink.getUri())));
+        });
+
+        //A new registration of a known endpoint replaces its sources
+        removeEndpoint(endpoint);
+
+        this.endpointSourceMap.put(endpoint, presenceSourceList);
+        presenceSourceList.forEach(PresenceSource::observe);
+
+        logger.info("Presence sources of {} in the zone {}: {}", endpoint, this.zone, presenceSourceList.size());
+    }
+
+    private void removeEndpoint(String endpoint) {
+
+        List<PresenceSource> presenceSourceList = this.endpointSourceMap.remove(endpoint);
+
+        if (presenceSourceList != null)
+            presenceSourceList.forEach(PresenceSource::cancel);
+    }
+
+    private void forEachLink(String url, LinkFormatParser.LinkHandler linkHandler) {
+
+        Request request = new Request(CoAP.Code.GET);
+        request.setURI(url);
+        request.setConfirmable(true);
+
+        try {
+
+            CoapResponse coapResp = this.clientEndpointPool.getClient(url).advanced(request);
+
+            if (coapResp != null && coapResp.getOptions().getContentFormat() == MediaTypeRegistry.APPLICATION_LINK_FORMAT) {
+                LinkFormatParser.parse(coapResp.getPayload(), linkHandler);
+                return;
+            }
+
+            logger.error("CoRE Link Format Response not found at {} !", url);
+
+        } catch (Exception e) {
+            logger.error("Error discovering {} ! Msg: {}", url, e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * A presence sensor observed on behalf of the zone, observed again when its observation fails
+     */
+    private class PresenceSource {
+
+        private final String sourceUrl;
+
+        private final HashedTimerWheel.Deadline retryDeadline;
+
+        //Guarded by this
+        private CoapObserveRelation observeRelation = null;
+
+        //Guarded by this: incremented by each observation, the callbacks of a replaced observation are ignored
+        private long observeGeneration = 0;
+
+        //Guarded by this
+        private boolean cancelled = false;
+
+        private PresenceSource(String sourceUrl) {
+            this.sourceUrl = sourceUrl;
+            this.retryDeadline = timerWheel.newDeadline(this::observe);
+        }
+
+        private synchronized void observe() {
+
+            if (this.cancelled)
+                return;
+
+            long generation = ++this.observeGeneration;
+
+            logger.info("OBSERVING ... presence source {} for the zone {}", this.sourceUrl, zone);
+
+            Request request = Request.newGet().setURI(this.sourceUrl).setObserve();
+            request.setConfirmable(true);
+
+            this.observeRelation = clientEndpointPool.getClient(this.sourceUrl).observe(request, new CoapHandler() {
+                @Override
+                public void onLoad(CoapResponse coapResponse) {
+                    onNotification(generation, coapResponse);
+                }
+
+                @Override
+                public void onError() {
+                    onObserveError(generation);
+                }
+            });
+        }
+
+        private synchronized void onNotification(long generation, CoapResponse coapResponse) {
+
+            if (this.cancelled || generation != this.observeGeneration)
+                return;
+
+            try {
+                zoneOccupancyTable.updatePresence(zone, this.sourceUrl, Integer.parseInt(coapResponse.getResponseText().trim()));
+            } catch (NumberFormatException e) {
+                logger.error("Error parsing the presence notification of {} ! Msg: {}", this.sourceUrl, e.getLocalizedMessage());
+            }
+        }
+
+        private synchronized void onObserveError(long generation) {
+
+            if (this.cancelled || generation != this.observeGeneration)
+                return;
+
+            //Its last count is no longer trusted: without sources the zone is considered occupied
+            logger.error("OBSERVING {} FAILED ! Observing again in {}ms", this.sourceUrl, RETRY_DELAY);
+            zoneOccupancyTable.removeSource(zone, this.sourceUrl);
+            this.retryDeadline.schedule(RETRY_DELAY);
+        }
+
+        private synchronized void cancel() {
+
+            this.cancelled = true;
+            this.retryDeadline.cancel();
+
+            if (this.observeRelation != null)
+                this.observeRelation.proactiveCancel();
+
+            zoneOccupancyTable.removeSource(zone, this.sourceUrl);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuffer sb = new StringBuffer("PresenceSource{");
+            sb.append("sourceUrl='").append(sourceUrl).append('\'');
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package it.unimore.dipi.iot.server.occupancy;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Occupancy state of the building zones, keyed by the RD sector (the "d" attribute, E.g. "firstFloor").
+ * Every zone can be fed by any number of presence sources (the URL of a presence-inside resource):
+ * the zone is occupied if at least one source counts somebody inside.
+ *
+ * Updates come from the observe callbacks, reads from the meter threads:
+ * each zone publishes its state as one immutable snapshot, so reads never lock and never mix two updates.
+ * A zone without presence sources is considered occupied, in order to never switch off a supply blindly.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 18:10
+ * @project coap-smart-building
+ */
+
+public class ZoneOccupancyTable {
+
+    private final Map<String, ZoneOccupancy> zoneMap = new ConcurrentHashMap<>();
+
+    /**
+     * @param zone           the RD sector of the source
+     * @param sourceId       the presence source (E.g. its URL)
+     * @param presenceNumber people counted inside by the source
+     */
+    public void updatePresence(String zone, String sourceId, int presenceNumber) {
+        this.zoneMap.computeIfAbsent(zone, key -> new ZoneOccupancy()).update(sourceId, presenceNumber);
+    }
+
+    /**
+     * Forget a source (E.g. its observation failed): its count no longer contributes to the zone
+     */
+    public void removeSource(String zone, String sourceId) {
+        ZoneOccupancy zoneOccupancy = this.zoneMap.get(zone);
+        if (zoneOccupancy != null)
+            zoneOccupancy.remove(sourceId);
+    }
+
+    /**
+     * @param zone the RD sector
+     * @return true if somebody is inside the zone, or if the zone has no presence source
+     */
+    public boolean arePeopleInside(String zone) {
+        ZoneOccupancy zoneOccupancy = this.zoneMap.get(zone);
+        return zoneOccupancy == null || zoneOccupancy.arePeopleInside();
+    }
+
+    /**
+     * @return people counted inside the zone by all its sources
+     */
+    public int getPresenceNumber(String zone) {
+        ZoneOccupancy zoneOccupancy = this.zoneMap.get(zone);
+        return zoneOccupancy == null ? 0 : zoneOccupancy.occupancyState.get().presenceNumber;
+    }
+
+    public Set<String> getZones() {
+        return this.zoneMap.keySet();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("ZoneOccupancyTable{");
+        sb.append("zoneMap=").append(zoneMap);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * Occupancy of a single zone: updates are serialized, the aggregated state is published as a whole
+     */
+    private static class ZoneOccupancy {
+
+        private final Map<String, Integer> sourcePresenceMap = new ConcurrentHashMap<>();
+
+        private final AtomicReference<OccupancyState> occupancyState = new AtomicReference<>(new OccupancyState(0, false));
+
+        private synchronized void update(String sourceId, int sourcePresenceNumber) {
+            this.sourcePresenceMap.put(sourceId, Math.max(0, sourcePresenceNumber));
+            publish();
+        }
+
+        private synchronized void remove(String sourceId) {
+            this.sourcePresenceMap.remove(sourceId);
+            publish();
+        }
+
+        private void publish() {
+            int total = 0;
+            for (int sourcePresenceNumber : this.sourcePresenceMap.values())
+                total += sourcePresenceNumber;
+
+            this.occupancyState.set(new OccupancyState(total, !this.sourcePresenceMap.isEmpty()));
+        }
+
+        private boolean arePeopleInside() {
+            OccupancyState state = this.occupancyState.get();
+            return !state.hasSources || state.presenceNumber > 0;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuffer sb = new StringBuffer("ZoneOccupancy{");
+            sb.append("sourcePresenceMap=").append(sourcePresenceMap);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Aggregated state of a zone after an update: the count and the presence of sources always belong together
+     */
+    private static class OccupancyState {
+
+        private final int presenceNumber;
+
+        private final boolean hasSources;
+
+        private OccupancyState(int presenceNumber, boolean hasSources) {
+            this.presenceNumber = presenceNumber;
+            this.hasSources = hasSources;
+        }
+    }
+}
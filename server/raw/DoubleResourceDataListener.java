@@ -0,0 +1,15 @@
+package it.unimore.dipi.iot.server.raw;
+
+/**
+ * Primitive specialization of {@link ResourceDataListener} for double valued resources:
+ * readings are delivered without boxing.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 10:40
+ * @project coap-smart-building
+ */
+
+@FunctionalInterface
+public interface DoubleResourceDataListener {
+    public void onDataChanged(DoubleSmartObjectResource resource, double updatedValue);
+}
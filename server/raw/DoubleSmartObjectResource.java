@@ -0,0 +1,98 @@
+package it.unimore.dipi.iot.server.raw;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * This is a prototype for every double valued sensor type.
+ * Readings are dispatched to {@link DoubleResourceDataListener}s as primitives, so a reading costs no allocation.
+ * Generic {@link ResourceDataListener}s are still supported and receive the boxed value only when registered.
+ *
+ * The listeners are kept in a copy-on-write array: a dispatch iterates a stable snapshot without allocating,
+ * while listeners are added or removed concurrently.
+ * When a notification executor is set, a reading costs a single task handoff instead.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 10:42
+ * @project coap-smart-building
+ */
+
+public abstract class DoubleSmartObjectResource extends SmartObjectResource<Double> {
+
+    private final static Logger logger = LoggerFactory.getLogger(DoubleSmartObjectResource.class);
+
+    private static final DoubleResourceDataListener[] NO_LISTENERS = new DoubleResourceDataListener[0];
+
+    private volatile DoubleResourceDataListener[] doubleResourceListeners = NO_LISTENERS;
+
+    public DoubleSmartObjectResource() {
+        super();
+    }
+
+    public DoubleSmartObjectResource(String deviceId, String type) {
+        super(deviceId, type);
+    }
+
+    public abstract double loadUpdatedDoubleValue();
+
+    @Override
+    public Double loadUpdatedValue() {
+        return loadUpdatedDoubleValue();
+    }
+
+    public synchronized void addDoubleDataListener(DoubleResourceDataListener resourceDataListener) {
+        if (resourceDataListener != null) {
+            DoubleResourceDataListener[] listeners = Arrays.copyOf(this.doubleResourceListeners, this.doubleResourceListeners.length + 1);
+            listeners[listeners.length - 1] = resourceDataListener;
+            this.doubleResourceListeners = listeners;
+        }
+    }
+
+    public synchronized void removeDoubleDataListener(DoubleResourceDataListener resourceDataListener) {
+        DoubleResourceDataListener[] listeners = this.doubleResourceListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == resourceDataListener) {
+                DoubleResourceDataListener[] updatedListeners = new DoubleResourceDataListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updatedListeners, 0, i);
+                System.arraycopy(listeners, i + 1, updatedListeners, i, listeners.length - i - 1);
+                this.doubleResourceListeners = updatedListeners;
+                return;
+            }
+        }
+    }
+
+    public void notifyUpdate(double updatedValue) {
+        boolean hasDoubleListeners = this.doubleResourceListeners.length > 0;
+        boolean hasBoxedListeners = this.resourceListenerList != null && this.resourceListenerList.size() > 0;
+
+        if (hasDoubleListeners) {
+            Executor executor = getNotificationExecutor();
+            if (executor != null)
+                executor.execute(() -> dispatchDoubleUpdate(updatedValue));
+            else
+                dispatchDoubleUpdate(updatedValue);
+        }
+
+        //Boxing only happens if someone registered a generic listener
+        if (hasBoxedListeners)
+            super.notifyUpdate(updatedValue);
+        else if (!hasDoubleListeners)
+            logger.error("Empty or Null Resource Data Listener ! Nothing to notify ...");
+    }
+
+    private void dispatchDoubleUpdate(double updatedValue) {
+        DoubleResourceDataListener[] listeners = this.doubleResourceListeners;
+        for (DoubleResourceDataListener listener : listeners) {
+            long start = System.nanoTime();
+            try {
+                listener.onDataChanged(this, updatedValue);
+            } catch (Exception e) {
+                logger.error("Resource Data Listener {} failed on {} ! Msg: {}", listener, getType(), e.getLocalizedMessage());
+            }
+            checkListenerTiming(listener, start);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package it.unimore.dipi.iot.server.raw;
+
+import it.unimore.dipi.iot.server.model.MeterAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the readings of a {@link MeterRawSensor} over consecutive windows aligned to the clock
+ * (E.g. every minute at :00 seconds) and notifies one {@link MeterAggregate} per window.
+ * A window is closed by the first reading of the next one: the aggregate is notified at most an update period
+ * after the end of the window, on the thread of the meter, without any additional timer.
+ * The value of the reading closing a window belongs to the next one (the meter holds it until the next reading),
+ * the consumption up to that reading belongs to the closed window.
+ *
+ * The aggregation state is used by the meter thread only, a reading costs no allocation.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 06:20
+ * @project coap-smart-building
+ */
+
+public class MeterRawAggregator extends SmartObjectResource<MeterAggregate> {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeterRawAggregator.class);
+
+    public static final long MINUTE_WINDOW = 60 * 1000;
+
+    public static final long HOUR_WINDOW = 60 * MINUTE_WINDOW;
+
+    //Appended to the resource type of the meter (E.g. iot.sensor.water.aggregate): the collectors of raw readings skip it
+    public static final String RESOURCE_TYPE_SUFFIX = ".aggregate";
+
+    private final MeterRawSensor meterRawSensor;
+
+    private final long windowDuration;
+
+    private volatile MeterAggregate lastAggregate = null;
+
+    //Current window, 0 before the first reading
+    private long windowStart = 0;
+
+    private int count = 0;
+
+    private double valueSum = 0.0;
+
+    private double min = 0.0;
+
+    private double max = 0.0;
+
+    private double totalAtStart = 0.0;
+
+    /**
+     * @param meterRawSensor the aggregated meter
+     * @param windowDuration the window duration in millis, E.g. {@link #MINUTE_WINDOW}
+     */
+    public MeterRawAggregator(MeterRawSensor meterRawSensor, long windowDuration) {
+        super(meterRawSensor.getDeviceId(), meterRawSensor.getType() + RESOURCE_TYPE_SUFFIX);
+
+        if (windowDuration <= 0)
+            throw new IllegalArgumentException("windowDuration must be positive");
+
+        this.meterRawSensor = meterRawSensor;
+        this.windowDuration = windowDuration;
+
+        this.meterRawSensor.addDoubleDataListener(new DoubleResourceDataListener() {
+            @Override
+            public void onDataChanged(DoubleSmartObjectResource resource, double updatedValue) {
+                onReading(updatedValue, System.currentTimeMillis());
+            }
+        });
+    }
+
+    private void onReading(double value, long timestamp) {
+
+        long readingWindowStart = timestamp - timestamp % this.windowDuration;
+        double total = this.meterRawSensor.getTotal();
+
+        if (this.windowStart != 0 && readingWindowStart != this.windowStart) {
+
+            MeterAggregate aggregate = new MeterAggregate(this.windowStart, this.windowDuration, this.count,
+                    this.valueSum / this.count, this.min, this.max, total - this.totalAtStart);
+
+            this.lastAggregate = aggregate;
+            this.windowStart = 0;
+
+            logger.debug("{} window closed: {}", getType(), aggregate);
+
+            notifyUpdate(aggregate);
+        }
+
+        if (this.windowStart == 0) {
+            this.windowStart = readingWindowStart;
+            this.count = 0;
+            this.valueSum = 0.0;
+            this.min = value;
+            this.max = value;
+            this.totalAtStart = total;
+        }
+
+        this.count++;
+        this.valueSum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    public long getWindowDuration() {
+        return windowDuration;
+    }
+
+    public MeterRawSensor getMeterRawSensor() {
+        return meterRawSensor;
+    }
+
+    /**
+     * @return the aggregate of the last closed window, null before the first one is closed
+     */
+    @Override
+    public MeterAggregate loadUpdatedValue() {
+        return lastAggregate;
+    }
+}
@@ -0,0 +1,156 @@
+package it.unimore.dipi.iot.server.raw;
+
+import it.unimore.dipi.iot.server.model.MeterTypeDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+
+/**
+ * This is the generic consumption raw data generator.
+ * Value ranges, variations and update period come from the {@link MeterTypeDescriptor},
+ * e.g. the water consumption value is generated in the range 0.1 and 0.5 l/s and updated every 5 sec
+ *
+ * The meter is also a totalizer: every update adds the previous value multiplied by the elapsed seconds to the total,
+ * e.g. the total of the water meter is the consumed water in liters (unit of the value multiplied by seconds, as the SenML sum).
+ * The total only grows, so a reader missing some updates still gets the exact consumption from the difference of two totals.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 09:30
+ * @project coap-smart-building
+ */
+
+public class MeterRawSensor extends DoubleSmartObjectResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeterRawSensor.class);
+
+    private final MeterTypeDescriptor meterTypeDescriptor;
+
+    //Written by the update timer, read by the CoAP handler threads
+    private volatile double consumptionValue;
+
+    //Guarded by this: read by the CoAP handler threads, the aggregators and the state binder flush at shutdown
+    private double totalValue = 0.0;
+
+    //Time of the last update, 0 before the first one
+    private long lastUpdateNanos = 0;
+
+    //Set by the switch listener, read by the update timer
+    private volatile Boolean isActive;
+
+    private Random random = null;
+
+    private Timer updateTimer = null;
+
+
+    public MeterRawSensor(MeterTypeDescriptor meterTypeDescriptor) {
+        super(UUID.randomUUID().toString(), meterTypeDescriptor.getResourceType());
+        this.meterTypeDescriptor = meterTypeDescriptor;
+        this.isActive = true;
+        init();
+    }
+
+    public void init() {
+
+        try {
+            this.random = new Random(System.currentTimeMillis());
+            this.consumptionValue = meterTypeDescriptor.getMinValue()
+                    + random.nextDouble() * (meterTypeDescriptor.getMaxValue() - meterTypeDescriptor.getMinValue());
+
+            startPeriodicEventValueUpdatedTask();
+        } catch (Exception e) {
+            logger.error("Error init the IoT Resource ! Msg: {}", e.getLocalizedMessage());
+        }
+    }
+
+    public void startPeriodicEventValueUpdatedTask() {
+        try {
+            this.updateTimer = new Timer();
+            this.updateTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+
+                    //The previous value held until now
+                    long now = System.nanoTime();
+                    if (lastUpdateNanos != 0)
+                        addToTotal(consumptionValue * (now - lastUpdateNanos) / 1e9);
+                    lastUpdateNanos = now;
+
+                    if (isActive) {
+                        double variation = meterTypeDescriptor.getMinVariation()
+                                + random.nextDouble() * meterTypeDescriptor.getMaxVariation() * (random.nextDouble() > 0.5 ? 1 : -1);
+                        consumptionValue = consumptionValue + variation > 0 ? consumptionValue + variation : 0.0;
+                    } else
+                        consumptionValue = 0.0;
+
+                    notifyUpdate(consumptionValue);
+                }
+            }, meterTypeDescriptor.getTaskDelayTime(), meterTypeDescriptor.getUpdatePeriod());
+        } catch (Exception e) {
+            logger.error("Error executing periodic resource value ! Msg: {}", e.getLocalizedMessage());
+        }
+    }
+
+    public void stopPeriodicEventValueUpdatedTask() {
+        if (this.updateTimer != null)
+            this.updateTimer.cancel();
+    }
+
+    private synchronized void addToTotal(double amount) {
+        totalValue += amount;
+    }
+
+    /**
+     * Set the total saved before a restart, the listeners are not notified
+     */
+    public synchronized void restoreTotal(double total) {
+        totalValue = total;
+    }
+
+    /**
+     * @return the cumulative consumption, in the unit of the value multiplied by seconds (E.g. l for l/s)
+     */
+    public synchronized double getTotal() {
+        return totalValue;
+    }
+
+    public MeterTypeDescriptor getMeterTypeDescriptor() {
+        return meterTypeDescriptor;
+    }
+
+    public Boolean getActive() {
+        return isActive;
+    }
+
+    public void setActive(Boolean active) {
+        isActive = active;
+    }
+
+    @Override
+    public double loadUpdatedDoubleValue() {
+        return consumptionValue;
+    }
+
+    public static void main(String[] args) {
+        MeterRawSensor rawSensor = new MeterRawSensor(MeterTypeDescriptor.WATER);
+        rawSensor.setActive(true);
+        logger.info("New {} Resource Created with Id: {} ! {} New Value: {}"
+                , rawSensor.getType()
+                , rawSensor.getDeviceId()
+                , rawSensor.getMeterTypeDescriptor().getTitle()
+                , rawSensor.loadUpdatedDoubleValue());
+
+        rawSensor.addDoubleDataListener(new DoubleResourceDataListener() {
+            @Override
+            public void onDataChanged(DoubleSmartObjectResource resource, double updatedValue) {
+                if (resource != null)
+                    logger.info("Device: {} -> New Value Received: {} Total: {}", resource.getDeviceId(), updatedValue, rawSensor.getTotal());
+                else
+                    logger.error("onDataChanged Callback -> Null Resource or Updated Value");
+            }
+        });
+    }
+}
@@ -1,44 +1,67 @@
 package it.unimore.dipi.iot.server.raw;
 
 import it.unimore.dipi.iot.server.model.GenericCounterConfigurationModel;
+import it.unimore.dipi.iot.server.model.ProviderConfigurationSnapshot;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * The configuration is an immutable {@link ProviderConfigurationSnapshot} published through an atomic reference:
+ * the sensor threads read it with a single volatile read, without locks.
+ * The updates are serialized: each one publishes the next version and notifies the listeners once, in version order.
+ *
  * @author Riccardo Prevedi
  * @created 09/09/2022 - 12:14
  * @project coap-smart-building
  */
 
-public class ProviderRawConfigurationParameter extends SmartObjectResource<GenericCounterConfigurationModel> {
+public class ProviderRawConfigurationParameter extends SmartObjectResource<ProviderConfigurationSnapshot> {
 
-    private GenericCounterConfigurationModel genericCounterConfigurationModel;
+    private final AtomicReference<ProviderConfigurationSnapshot> configurationSnapshot;
 
     private static final String RESOURCE_TYPE = "iot.config.provider";
 
     public ProviderRawConfigurationParameter(GenericCounterConfigurationModel genericCounterConfigurationModel) {
         super(UUID.randomUUID().toString(), RESOURCE_TYPE);
-        this.genericCounterConfigurationModel = genericCounterConfigurationModel;
+        this.configurationSnapshot = new AtomicReference<>(ProviderConfigurationSnapshot.of(genericCounterConfigurationModel));
     }
 
     @Override
-    public GenericCounterConfigurationModel loadUpdatedValue() {
-        return genericCounterConfigurationModel;
+    public ProviderConfigurationSnapshot loadUpdatedValue() {
+        return configurationSnapshot.get();
     }
 
-    public GenericCounterConfigurationModel getGenericCounterConfigurationModel() {
-        return genericCounterConfigurationModel;
+    public ProviderConfigurationSnapshot getConfigurationSnapshot() {
+        return configurationSnapshot.get();
     }
 
-    public void setGenericCounterConfigurationModel(GenericCounterConfigurationModel genericCounterConfigurationModel) {
-        this.genericCounterConfigurationModel = genericCounterConfigurationModel;
-        notifyUpdate(genericCounterConfigurationModel);
+    /**
+     * Publish the next version of the configuration, the null parameters keep their current value
+     *
+     * @return the published snapshot
+     */
+    public synchronized ProviderConfigurationSnapshot updateConfiguration(Double maxValueConsumption, Double hysteresis, Integer sustainedSamples, Double maxRateOfChange) {
+        ProviderConfigurationSnapshot updatedSnapshot = this.configurationSnapshot.get().withChanges(maxValueConsumption, hysteresis, sustainedSamples, maxRateOfChange);
+        this.configurationSnapshot.set(updatedSnapshot);
+
+        //Still under the lock: the listeners receive the versions in order
+        notifyUpdate(updatedSnapshot);
+
+        return updatedSnapshot;
+    }
+
+    /**
+     * Publish the configuration saved before a restart, the listeners are not notified
+     */
+    public synchronized void restoreConfiguration(ProviderConfigurationSnapshot savedSnapshot) {
+        this.configurationSnapshot.set(savedSnapshot);
     }
 
     @Override
     public String toString() {
         final StringBuffer sb = new StringBuffer("ProviderRawConfigurationParameter{");
-        sb.append("genericCounterConfigurationModel=").append(genericCounterConfigurationModel);
+        sb.append("configurationSnapshot=").append(configurationSnapshot.get());
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,71 @@
+package it.unimore.dipi.iot.server.raw;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor running the submitted tasks one at a time, in submission order, on top of a shared delegate pool.
+ * It is used to dispatch the notifications of a single resource asynchronously
+ * without reordering them, while many resources share the same threads.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 11:20
+ * @project coap-smart-building
+ */
+
+public class SerialExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerialExecutor.class);
+
+    private final Queue<Runnable> taskQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Executor delegate;
+
+    private final Runnable drainTask = this::drain;
+
+    public SerialExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.taskQueue.add(task);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.delegate.execute(this.drainTask);
+            } catch (RuntimeException e) {
+                this.scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = this.taskQueue.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    logger.error("Error executing serial task ! Msg: {}", e.getLocalizedMessage());
+                }
+            }
+        } finally {
+            this.scheduled.set(false);
+            //A task may have been queued after the last poll but before the flag was released
+            if (!this.taskQueue.isEmpty())
+                scheduleDrain();
+        }
+    }
+}
@@ -3,12 +3,19 @@ package it.unimore.dipi.iot.server.raw;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This is a prototype for every sensor type
  *
+ * Listeners are kept in a copy-on-write list: they can be added or removed while a notification is dispatched.
+ * By default listeners are called on the thread calling {@link #notifyUpdate(Object)},
+ * with {@link #setNotificationExecutor(Executor)} notifications are dispatched asynchronously and in order.
+ * Every listener call is timed and the slow ones are logged.
+ *
  * @author Riccardo Prevedi
  * @created 28/08/2022 - 14:50
  * @project coap-smart-building
@@ -19,20 +26,26 @@ public abstract class SmartObjectResource<T> {
 
     private final static Logger logger = LoggerFactory.getLogger(SmartObjectResource.class);
 
+    private static final long DEFAULT_SLOW_LISTENER_THRESHOLD_MS = 50;
+
     protected List<ResourceDataListener<T>> resourceListenerList;
 
     private String deviceId;
 
     private String type;
 
+    private volatile Executor notificationExecutor;
+
+    private volatile long slowListenerThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_LISTENER_THRESHOLD_MS);
+
     public SmartObjectResource() {
-        this.resourceListenerList = new ArrayList<>();
+        this.resourceListenerList = new CopyOnWriteArrayList<>();
     }
 
     public SmartObjectResource(String deviceId, String type) {
         this.deviceId = deviceId;
         this.type = type;
-        this.resourceListenerList = new ArrayList<>();
+        this.resourceListenerList = new CopyOnWriteArrayList<>();
     }
 
     public abstract T loadUpdatedValue();
@@ -43,20 +56,70 @@ public abstract class SmartObjectResource<T> {
     }
 
     public void removeDataListener(ResourceDataListener<T> resourceDataListener) {
-        if (this.resourceListenerList != null && this.resourceListenerList.contains(resourceDataListener))
+        if (this.resourceListenerList != null)
             this.resourceListenerList.remove(resourceDataListener);
     }
 
     public void notifyUpdate(T updatedValue) {
         if (this.resourceListenerList != null && this.resourceListenerList.size() > 0) {
-            this.resourceListenerList.forEach(listener -> {
-                if (listener != null)
-                    listener.onDataChanged(this, updatedValue);
-            });
+            Executor executor = this.notificationExecutor;
+            if (executor != null)
+                executor.execute(() -> dispatchUpdate(updatedValue));
+            else
+                dispatchUpdate(updatedValue);
         } else
             logger.error("Empty or Null Resource Data Listener ! Nothing to notify ...");
     }
 
+    private void dispatchUpdate(T updatedValue) {
+        for (ResourceDataListener<T> listener : this.resourceListenerList) {
+            if (listener != null) {
+                long start = System.nanoTime();
+                try {
+                    listener.onDataChanged(this, updatedValue);
+                } catch (Exception e) {
+                    logger.error("Resource Data Listener {} failed on {} ! Msg: {}", listener, this.type, e.getLocalizedMessage());
+                }
+                checkListenerTiming(listener, start);
+            }
+        }
+    }
+
+    /**
+     * Logs the listener if its call took longer than the slow listener threshold
+     *
+     * @param listener   the listener just called
+     * @param startNanos {@link System#nanoTime()} taken before the call
+     */
+    protected final void checkListenerTiming(Object listener, long startNanos) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos > this.slowListenerThresholdNanos)
+            logger.warn("Slow Resource Data Listener {} on {} ({}) -> {} ms"
+                    , listener
+                    , this.type
+                    , this.deviceId
+                    , TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    protected final Executor getNotificationExecutor() {
+        return this.notificationExecutor;
+    }
+
+    /**
+     * Dispatch the notifications of this resource asynchronously.
+     * The given executor can be shared among many resources: this resource wraps it in a {@link SerialExecutor}
+     * so its own notifications are still delivered one at a time and in order.
+     *
+     * @param executor the shared executor, null to notify synchronously on the caller thread
+     */
+    public void setNotificationExecutor(Executor executor) {
+        this.notificationExecutor = executor != null ? new SerialExecutor(executor) : null;
+    }
+
+    public void setSlowListenerThresholdMillis(long slowListenerThresholdMillis) {
+        this.slowListenerThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowListenerThresholdMillis);
+    }
+
     public String getDeviceId() {
         return deviceId;
     }
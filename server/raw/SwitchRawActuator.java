@@ -35,6 +35,13 @@ public class SwitchRawActuator extends SmartObjectResource<Boolean>{
         notifyUpdate(isActive);
     }
 
+    /**
+     * Set the state saved before a restart, the listeners are not notified
+     */
+    public void restoreActive(boolean active) {
+        isActive = active;
+    }
+
     @Override
     public Boolean loadUpdatedValue() {
         return isActive;
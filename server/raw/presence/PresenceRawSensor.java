@@ -3,6 +3,8 @@ package it.unimore.dipi.iot.server.raw.presence;
 import it.unimore.dipi.iot.server.raw.SmartObjectResource;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class represents the prototype of a presence sensor.
@@ -10,6 +12,12 @@ import java.util.UUID;
  * - peopleIn  counts people entry
  * - peopleOut counts people exit
  *
+ * The counters are LongAdders: concurrent POSTs (E.g. several turnstiles at rush hour) update them without any lock.
+ * The people inside are a net count updated with the delta of every event, never derived from the entry and exit counters.
+ * Concurrent updates can hand off their notifications in any order, so the notified value is only a hint:
+ * the listeners read the current count ({@link #getPeople()}), every update is followed by a notification,
+ * so the last notification always sees the last update.
+ *
  * @author Riccardo Prevedi
  * @created 11/09/2022 - 17:01
  * @project coap-smart-building
@@ -19,11 +27,14 @@ public class PresenceRawSensor extends SmartObjectResource<Integer> {
 
     private static final String RESOURCE_TYPE = "iot.sensor.presence";
 
-    private Integer peopleIn = 0;
+    private final LongAdder peopleIn = new LongAdder();
+
+    private final LongAdder peopleOut = new LongAdder();
 
-    private Integer peopleOut = 0;
+    private final LongAdder people = new LongAdder();
 
-    private Integer people = 0;
+    //Timestamp (ms) of the most recent event received, 0 if unknown
+    private final LongAccumulator lastEventTimestamp = new LongAccumulator(Math::max, 0);
 
     public PresenceRawSensor() {
         super(UUID.randomUUID().toString(), RESOURCE_TYPE);
@@ -31,46 +42,69 @@ public class PresenceRawSensor extends SmartObjectResource<Integer> {
 
     @Override
     public Integer loadUpdatedValue() {
-        return this.people;
+        return getPeople();
     }
 
     public void increasePeopleIn() {
-        this.peopleIn++;
-        totalPeopleCount();
+        addPeopleIn(1, System.currentTimeMillis());
     }
 
     public void increasePeopleOut() {
-        this.peopleOut++;
-        totalPeopleCount();
+        addPeopleOut(1, System.currentTimeMillis());
     }
 
-    public void totalPeopleCount() {
-        this.people = this.peopleIn - this.peopleOut;
-        notifyUpdate(this.people); //People in the zone Listener notification
+    /**
+     * @param count          people entered
+     * @param eventTimestamp time of the most recent entry (ms)
+     */
+    public void addPeopleIn(int count, long eventTimestamp) {
+        this.peopleIn.add(count);
+        this.people.add(count);
+        this.lastEventTimestamp.accumulate(eventTimestamp);
+        notifyUpdate(getPeople()); //People in the zone Listener notification
     }
 
-    public Integer getPeopleIn() {
-        return peopleIn;
+    /**
+     * @param count          people exited
+     * @param eventTimestamp time of the most recent exit (ms)
+     */
+    public void addPeopleOut(int count, long eventTimestamp) {
+        this.peopleOut.add(count);
+        this.people.add(-count);
+        this.lastEventTimestamp.accumulate(eventTimestamp);
+        notifyUpdate(getPeople()); //People in the zone Listener notification
     }
 
-    public void setPeopleIn(Integer peopleIn) {
-        this.peopleIn = peopleIn;
+    /**
+     * Set the counters saved before a restart, the listeners are not notified
+     * It runs before the resources are exposed: no update is concurrent with it
+     */
+    public void restoreCounters(long peopleIn, long peopleOut, long lastEventTimestamp) {
+        this.peopleIn.reset();
+        this.peopleIn.add(peopleIn);
+        this.peopleOut.reset();
+        this.peopleOut.add(peopleOut);
+        this.people.reset();
+        this.people.add(peopleIn - peopleOut);
+        this.lastEventTimestamp.reset();
+        this.lastEventTimestamp.accumulate(lastEventTimestamp);
     }
 
-    public Integer getPeopleOut() {
-        return peopleOut;
+    public long getPeopleIn() {
+        return peopleIn.sum();
     }
 
-    public void setPeopleOut(Integer peopleOut) {
-        this.peopleOut = peopleOut;
+    public long getPeopleOut() {
+        return peopleOut.sum();
     }
 
-    public Integer getPeople() {
-        return people;
+    //A single POST counts at most Integer.MAX_VALUE people, the net count of a real zone stays far below it
+    public int getPeople() {
+        return (int) people.sum();
     }
 
-    public void setPeople(Integer people) {
-        this.people = people;
+    public long getLastEventTimestamp() {
+        return lastEventTimestamp.get();
     }
 
     @Override
@@ -79,6 +113,7 @@ public class PresenceRawSensor extends SmartObjectResource<Integer> {
         sb.append("peopleIn=").append(peopleIn);
         sb.append(", peopleOut=").append(peopleOut);
         sb.append(", people=").append(people);
+        sb.append(", lastEventTimestamp=").append(lastEventTimestamp);
         sb.append('}');
         return sb.toString();
     }
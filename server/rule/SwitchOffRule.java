@@ -0,0 +1,83 @@
+package it.unimore.dipi.iot.server.rule;
+
+import it.unimore.dipi.iot.server.model.ProviderConfigurationSnapshot;
+
+/**
+ * The compiled (immutable) switch-off rule of a provider.
+ * - threshold + hysteresis   the over-consumption alarm is raised above maxValueConsumption
+ *                            and cleared only below maxValueConsumption - hysteresis
+ * - sustained samples        the value must stay above the threshold for N consecutive samples to raise the alarm
+ * - rate of change           a sample rising faster than maxRateOfChange (unit/s) raises the alarm, 0 disables it
+ *
+ * All the derived values are computed once, so the {@link SwitchOffRuleEvaluator} only compares primitives per sample.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 17:05
+ * @project coap-smart-building
+ */
+
+public class SwitchOffRule {
+
+    private final double threshold;
+
+    private final double clearLevel;
+
+    private final int sustainedSamples;
+
+    //maxRateOfChange converted to unit/ms, NaN when the rate rule is disabled
+    private final double maxRatePerMillis;
+
+    private SwitchOffRule(double threshold, double clearLevel, int sustainedSamples, double maxRatePerMillis) {
+        this.threshold = threshold;
+        this.clearLevel = clearLevel;
+        this.sustainedSamples = sustainedSamples;
+        this.maxRatePerMillis = maxRatePerMillis;
+    }
+
+    /**
+     * @param configurationSnapshot the provider configuration
+     * @return the compiled rule
+     */
+    public static SwitchOffRule compile(ProviderConfigurationSnapshot configurationSnapshot) {
+        double threshold = configurationSnapshot.getMaxValueConsumption();
+        double hysteresis = Math.max(0.0, configurationSnapshot.getHysteresis());
+        int sustainedSamples = Math.max(1, configurationSnapshot.getSustainedSamples());
+        double maxRateOfChange = configurationSnapshot.getMaxRateOfChange();
+
+        return new SwitchOffRule(threshold,
+                threshold - hysteresis,
+                sustainedSamples,
+                maxRateOfChange > 0 ? maxRateOfChange / 1000.0 : Double.NaN);
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public double getClearLevel() {
+        return clearLevel;
+    }
+
+    public int getSustainedSamples() {
+        return sustainedSamples;
+    }
+
+    public boolean isRateRuleEnabled() {
+        return !Double.isNaN(maxRatePerMillis);
+    }
+
+    double getMaxRatePerMillis() {
+        return maxRatePerMillis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("SwitchOffRule{");
+        sb.append("threshold=").append(threshold);
+        sb.append(", clearLevel=").append(clearLevel);
+        sb.append(", sustainedSamples=").append(sustainedSamples);
+        sb.append(", maxRatePerMillis=").append(maxRatePerMillis);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package it.unimore.dipi.iot.server.rule;
+
+/**
+ * Evaluates the {@link SwitchOffRule} of a provider on every meter sample, in O(1) and without allocation.
+ * The rule is swapped atomically when the provider configuration changes, the alarm state is kept across swaps.
+ *
+ * The samples must come from a single thread (the raw meter notifies them synchronously from its timer),
+ * the rule can be replaced from any thread.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 17:15
+ * @project coap-smart-building
+ */
+
+public class SwitchOffRuleEvaluator {
+
+    private volatile SwitchOffRule rule;
+
+    //Sample state, confined to the meter thread
+    private boolean overThreshold = false;
+
+    private int samplesAboveThreshold = 0;
+
+    private boolean hasLastSample = false;
+
+    private double lastValue;
+
+    private long lastTimestamp;
+
+    public SwitchOffRuleEvaluator(SwitchOffRule rule) {
+        this.rule = rule;
+    }
+
+    public SwitchOffRule getRule() {
+        return rule;
+    }
+
+    public void setRule(SwitchOffRule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * @param value     the new meter sample
+     * @param timestamp the sample time in ms
+     * @return true while the consumption is in alarm and the supply has to be switched off
+     */
+    public boolean evaluate(double value, long timestamp) {
+
+        SwitchOffRule currentRule = this.rule;
+
+        //Threshold + sustained samples, latched until the value goes below the clear level
+        if (value > currentRule.getThreshold()) {
+            if (samplesAboveThreshold < currentRule.getSustainedSamples())
+                samplesAboveThreshold++;
+            if (samplesAboveThreshold >= currentRule.getSustainedSamples())
+                overThreshold = true;
+        } else {
+            samplesAboveThreshold = 0;
+            if (value < currentRule.getClearLevel())
+                overThreshold = false;
+        }
+
+        //Rate of change between the last two samples
+        boolean rateExceeded = false;
+        if (hasLastSample && currentRule.isRateRuleEnabled() && timestamp > lastTimestamp)
+            rateExceeded = (value - lastValue) / (timestamp - lastTimestamp) > currentRule.getMaxRatePerMillis();
+
+        hasLastSample = true;
+        lastValue = value;
+        lastTimestamp = timestamp;
+
+        return overThreshold || rateExceeded;
+    }
+}
@@ -0,0 +1,175 @@
+package it.unimore.dipi.iot.server.state;
+
+import it.unimore.dipi.iot.server.model.ProviderConfigurationSnapshot;
+import it.unimore.dipi.iot.server.raw.DoubleResourceDataListener;
+import it.unimore.dipi.iot.server.raw.DoubleSmartObjectResource;
+import it.unimore.dipi.iot.server.raw.MeterRawSensor;
+import it.unimore.dipi.iot.server.raw.ProviderRawConfigurationParameter;
+import it.unimore.dipi.iot.server.raw.ResourceDataListener;
+import it.unimore.dipi.iot.server.raw.SmartObjectResource;
+import it.unimore.dipi.iot.server.raw.SwitchRawActuator;
+import it.unimore.dipi.iot.server.raw.presence.PresenceRawSensor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds the raw resources to a {@link RawStateStore}: the saved state (if any) is restored,
+ * then every change of the resource is put in the store by a data listener.
+ * The resources are bound when they are created, before the CoAP resources read them and before the endpoints start.
+ * The keys are stable across restarts (E.g. water-provider/switch), the device IDs are not.
+ *
+ * Values (big endian):
+ * - switch: 1 byte, the active flag
+ * - presence: people in, people out, last event timestamp (3 longs)
+ * - meter total: the cumulative consumption (double), saved at most every METER_TOTAL_SAVE_INTERVAL and on flush
+ * - configuration: version (long), max value, hysteresis (doubles), sustained samples (int), max rate of change (double)
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 04:30
+ * @project coap-smart-building
+ */
+
+public class RawStateBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawStateBinder.class);
+
+    private static final int CONFIGURATION_SIZE = 8 + 8 + 8 + 4 + 8;
+
+    //A crash loses at most this much consumption, a clean shutdown none (see flush)
+    private static final long METER_TOTAL_SAVE_INTERVAL = 10 * 1000; //10sec
+
+    private final RawStateStore rawStateStore;
+
+    //Key -> meter whose total is saved on flush
+    private final Map<String, MeterRawSensor> meterTotalMap = new ConcurrentHashMap<>();
+
+    public RawStateBinder(RawStateStore rawStateStore) {
+        this.rawStateStore = rawStateStore;
+    }
+
+    public void bindSwitch(String key, SwitchRawActuator switchRawActuator) {
+
+        byte[] savedValue = this.rawStateStore.get(key);
+        if (savedValue != null && savedValue.length == 1) {
+            switchRawActuator.restoreActive(savedValue[0] != 0);
+            logger.info("State of {} restored: active {}", key, switchRawActuator.getActive());
+        }
+
+        switchRawActuator.addDataListener(new ResourceDataListener<Boolean>() {
+            @Override
+            public void onDataChanged(SmartObjectResource<Boolean> resource, Boolean updatedValue) {
+                rawStateStore.put(key, new byte[]{(byte) (updatedValue ? 1 : 0)});
+            }
+        });
+    }
+
+    public void bindPresence(String key, PresenceRawSensor presenceRawSensor) {
+
+        byte[] savedValue = this.rawStateStore.get(key);
+        if (savedValue != null) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(savedValue);
+                presenceRawSensor.restoreCounters(buffer.getLong(), buffer.getLong(), buffer.getLong());
+                logger.info("State of {} restored: {} people inside", key, presenceRawSensor.getPeople());
+            } catch (BufferUnderflowException e) {
+                logger.error("Error restoring the state of {} ! Msg: invalid value of {} bytes", key, savedValue.length);
+            }
+        }
+
+        presenceRawSensor.addDataListener(new ResourceDataListener<Integer>() {
+            @Override
+            public void onDataChanged(SmartObjectResource<Integer> resource, Integer updatedValue) {
+                //The counters are read when the listener runs: the saved value is never older than the notification
+                rawStateStore.put(key, ByteBuffer.allocate(24)
+                        .putLong(presenceRawSensor.getPeopleIn())
+                        .putLong(presenceRawSensor.getPeopleOut())
+                        .putLong(presenceRawSensor.getLastEventTimestamp())
+                        .array());
+            }
+        });
+    }
+
+    public void bindMeterTotal(String key, MeterRawSensor meterRawSensor) {
+
+        byte[] savedValue = this.rawStateStore.get(key);
+        if (savedValue != null) {
+            if (savedValue.length == 8) {
+                meterRawSensor.restoreTotal(ByteBuffer.wrap(savedValue).getDouble());
+                logger.info("State of {} restored: total {}", key, meterRawSensor.getTotal());
+            } else
+                logger.error("Error restoring the state of {} ! Msg: invalid value of {} bytes", key, savedValue.length);
+        }
+
+        this.meterTotalMap.put(key, meterRawSensor);
+
+        //The readings arrive every update period: the total is saved at most once per interval, not on every reading
+        meterRawSensor.addDoubleDataListener(new DoubleResourceDataListener() {
+
+            //Used by the meter timer thread only
+            private long lastSaveMillis = System.currentTimeMillis();
+
+            @Override
+            public void onDataChanged(DoubleSmartObjectResource resource, double updatedValue) {
+
+                long now = System.currentTimeMillis();
+                if (now - lastSaveMillis < METER_TOTAL_SAVE_INTERVAL)
+                    return;
+
+                lastSaveMillis = now;
+                putMeterTotal(key, meterRawSensor);
+            }
+        });
+    }
+
+    private void putMeterTotal(String key, MeterRawSensor meterRawSensor) {
+        //A new array every time: the store keeps the reference
+        this.rawStateStore.put(key, ByteBuffer.allocate(8).putDouble(meterRawSensor.getTotal()).array());
+    }
+
+    public void bindConfiguration(String key, ProviderRawConfigurationParameter configurationParameter) {
+
+        byte[] savedValue = this.rawStateStore.get(key);
+        if (savedValue != null) {
+            if (savedValue.length == CONFIGURATION_SIZE) {
+                ByteBuffer buffer = ByteBuffer.wrap(savedValue);
+                configurationParameter.restoreConfiguration(new ProviderConfigurationSnapshot(buffer.getLong(),
+                        buffer.getDouble(),
+                        configurationParameter.getConfigurationSnapshot().getRawMaterialMeasureUnit(),
+                        buffer.getDouble(),
+                        buffer.getInt(),
+                        buffer.getDouble()));
+                logger.info("State of {} restored: {}", key, configurationParameter.getConfigurationSnapshot());
+            } else
+                logger.error("Error restoring the state of {} ! Msg: invalid value of {} bytes", key, savedValue.length);
+        }
+
+        configurationParameter.addDataListener(new ResourceDataListener<ProviderConfigurationSnapshot>() {
+            @Override
+            public void onDataChanged(SmartObjectResource<ProviderConfigurationSnapshot> resource, ProviderConfigurationSnapshot updatedValue) {
+                rawStateStore.put(key, ByteBuffer.allocate(CONFIGURATION_SIZE)
+                        .putLong(updatedValue.getVersion())
+                        .putDouble(updatedValue.getMaxValueConsumption())
+                        .putDouble(updatedValue.getHysteresis())
+                        .putInt(updatedValue.getSustainedSamples())
+                        .putDouble(updatedValue.getMaxRateOfChange())
+                        .array());
+            }
+        });
+    }
+
+    /**
+     * Save the state not saved on every change (the meter totals), E.g. before the store is closed at shutdown
+     */
+    public void flush() {
+        this.meterTotalMap.forEach(this::putMeterTotal);
+    }
+
+    public RawStateStore getRawStateStore() {
+        return rawStateStore;
+    }
+}
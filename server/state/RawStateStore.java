@@ -0,0 +1,495 @@
+package it.unimore.dipi.iot.server.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable key-value state of the raw resources (E.g. switch states, presence counters, provider configurations),
+ * reloaded when the process restarts.
+ * The state is kept in memory: a put updates the map and returns, a single writer thread appends the changes to a journal.
+ * The changes arriving while the journal is written (and forced to disk) are committed together in the next batch,
+ * and only the last value of a key is written: many changes cost a single write and a single fsync.
+ * When the journal grows, the state is written to a new snapshot (atomically replaced) and the journal is truncated.
+ *
+ * Files in the state directory:
+ * - state.snapshot: magic, records count, records (key, value), CRC32
+ * - state.journal: batches (payload length, CRC32, payload: records count, records)
+ * A batch is applied entirely or not at all: a torn batch at the end of the journal (E.g. a crash while writing) is discarded.
+ * The changes of the last commit interval can be lost on a crash, a clean shutdown ({@link #close()}) writes everything.
+ *
+ * A put updates the map and queues the change under the store lock: the journal receives the changes of a key
+ * in the same order as the map, the last value written is always the current one.
+ * A corrupted snapshot is moved aside (state.snapshot.corrupted-<timestamp>) and the store starts again
+ * from the journal alone: the keys changed since the last compaction are restored, the other ones are lost.
+ * If the directory cannot be used the store keeps working in memory only.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 04:00
+ * @project coap-smart-building
+ */
+
+public class RawStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RawStateStore.class);
+
+    private static final String SNAPSHOT_FILE = "state.snapshot";
+
+    private static final String SNAPSHOT_TMP_FILE = "state.snapshot.tmp";
+
+    private static final String JOURNAL_FILE = "state.journal";
+
+    private static final String CORRUPTED_SNAPSHOT_PREFIX = "state.snapshot.corrupted-";
+
+    private static final int SNAPSHOT_MAGIC = 0x52535331; //RSS1
+
+    private static final long COMMIT_DELAY = 10; //ms, the changes of the interval are committed together
+
+    private static final long MIN_COMPACTION_SIZE = 256 * 1024; //bytes of journal
+
+    //After a write error the writer waits before trying again, the wait doubles up to the max one
+    private static final long MIN_RETRY_DELAY = 100; //ms
+
+    private static final long MAX_RETRY_DELAY = 10 * 1000; //10sec
+
+    private final Path directory;
+
+    //Current state, read by the resources
+    private final Map<String, byte[]> stateMap = new ConcurrentHashMap<>();
+
+    //Changes not yet written, only the last value of each key: guarded by lock
+    private final Map<String, byte[]> pendingMap = new HashMap<>();
+
+    //State written to the journal (or snapshot), used by the writer thread only
+    private final Map<String, byte[]> durableMap = new HashMap<>();
+
+    private final Object lock = new Object();
+
+    private FileChannel journalChannel;
+
+    private long snapshotSize = 0;
+
+    //Journal size before a batch whose torn bytes could not be removed, -1 if the journal ends with a valid batch
+    private long tornJournalPosition = -1;
+
+    private Thread writerThread;
+
+    private volatile boolean running = false;
+
+    private RawStateStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load the snapshot and the journal of the directory and start the writer thread
+     *
+     * @param directory the state directory, created if missing
+     * @return the store, in memory only if the directory cannot be used
+     */
+    public static RawStateStore open(Path directory) {
+
+        RawStateStore rawStateStore = new RawStateStore(directory);
+
+        try {
+            long start = System.nanoTime();
+
+            rawStateStore.load();
+
+            logger.info("State store {} loaded: {} keys in {}ms", directory, rawStateStore.stateMap.size(), (System.nanoTime() - start) / 1000000);
+
+            rawStateStore.startWriter();
+
+        } catch (IOException e) {
+            logger.error("Error opening the state store {} ! Msg: {} -> the state is not persisted", directory, e.getLocalizedMessage());
+            rawStateStore.closeJournal();
+        }
+
+        return rawStateStore;
+    }
+
+    /**
+     * @return the value of the key, null if the key was never put
+     */
+    public byte[] get(String key) {
+        return this.stateMap.get(key);
+    }
+
+    /**
+     * Update the value of the key, it is written asynchronously
+     */
+    public void put(String key, byte[] value) {
+
+        //The map and the pending changes are updated together: concurrent puts of a key reach both in the same order
+        synchronized (this.lock) {
+
+            this.stateMap.put(key, value);
+
+            if (this.running) {
+                this.pendingMap.put(key, value);
+                this.lock.notify();
+            }
+        }
+    }
+
+    public int size() {
+        return this.stateMap.size();
+    }
+
+    /**
+     * Write the pending changes and stop the writer thread
+     */
+    public void close() {
+
+        synchronized (this.lock) {
+
+            if (!this.running)
+                return;
+
+            this.running = false;
+            this.lock.notify();
+        }
+
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        closeJournal();
+
+        logger.info("State store {} closed", this.directory);
+    }
+
+    private void load() throws IOException {
+
+        Files.createDirectories(this.directory);
+
+        Path snapshotPath = this.directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            if (readSnapshot(snapshotPath))
+                this.snapshotSize = Files.size(snapshotPath);
+            else
+                setSnapshotAside(snapshotPath);
+        }
+
+        Path journalPath = this.directory.resolve(JOURNAL_FILE);
+        long validSize = replayJournal(journalPath);
+
+        this.journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        syncDirectory();
+
+        if (validSize < this.journalChannel.size()) {
+            logger.warn("State journal {}: discarding {} bytes of an incomplete batch", this.directory, this.journalChannel.size() - validSize);
+            this.journalChannel.truncate(validSize);
+        }
+
+        this.journalChannel.position(validSize);
+
+        this.stateMap.putAll(this.durableMap);
+    }
+
+    //@return false if the snapshot is corrupted, an I/O error is thrown
+    private boolean readSnapshot(Path snapshotPath) throws IOException {
+
+        byte[] content = Files.readAllBytes(snapshotPath);
+
+        if (content.length < 16)
+            return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        long expectedCrc = buffer.getLong(content.length - 8);
+
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 8);
+        if (crc.getValue() != expectedCrc || buffer.getInt() != SNAPSHOT_MAGIC)
+            return false;
+
+        readRecords(new DataInputStream(new ByteArrayInputStream(content, 4, content.length - 12)), this.durableMap);
+        return true;
+    }
+
+    //The corrupted snapshot is kept for inspection, the store goes on without it
+    private void setSnapshotAside(Path snapshotPath) throws IOException {
+
+        Path corruptedPath = this.directory.resolve(CORRUPTED_SNAPSHOT_PREFIX + System.currentTimeMillis());
+        Files.move(snapshotPath, corruptedPath);
+        syncDirectory();
+
+        logger.error("Error loading the state store {} ! Msg: corrupted snapshot moved to {} -> only the journal is restored", this.directory, corruptedPath);
+    }
+
+    //Make the creation, rename or removal of a file of the directory durable
+    private void syncDirectory() {
+        try (FileChannel directoryChannel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            //Not supported on every platform (E.g. Windows)
+            logger.debug("Unable to sync the state directory {} ! Msg: {}", this.directory, e.getLocalizedMessage());
+        }
+    }
+
+    //@return the size of the valid batches, the records of a batch are applied only if the whole batch is valid
+    private long replayJournal(Path journalPath) throws IOException {
+
+        if (!Files.exists(journalPath))
+            return 0;
+
+        byte[] content = Files.readAllBytes(journalPath);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        long validSize = 0;
+
+        while (buffer.remaining() >= 8) {
+
+            int payloadLength = buffer.getInt();
+            long expectedCrc = buffer.getInt() & 0xFFFFFFFFL;
+
+            if (payloadLength <= 0 || payloadLength > buffer.remaining())
+                break;
+
+            CRC32 crc = new CRC32();
+            crc.update(content, buffer.position(), payloadLength);
+            if (crc.getValue() != expectedCrc)
+                break;
+
+            readRecords(new DataInputStream(new ByteArrayInputStream(content, buffer.position(), payloadLength)), this.durableMap);
+
+            buffer.position(buffer.position() + payloadLength);
+            validSize = buffer.position();
+        }
+
+        return validSize;
+    }
+
+    private static void readRecords(DataInputStream input, Map<String, byte[]> targetMap) throws IOException {
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = input.readUTF();
+            byte[] value = new byte[input.readInt()];
+            input.readFully(value);
+            targetMap.put(key, value);
+        }
+    }
+
+    private static void writeRecords(DataOutputStream output, Map<String, byte[]> sourceMap) throws IOException {
+        output.writeInt(sourceMap.size());
+        for (Map.Entry<String, byte[]> entry : sourceMap.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue().length);
+            output.write(entry.getValue());
+        }
+    }
+
+    private void startWriter() {
+        this.running = true;
+        this.writerThread = new Thread(this::runWriter, "raw-state-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    private void runWriter() {
+
+        long retryDelay = 0;
+
+        while (true) {
+
+            synchronized (this.lock) {
+                while (this.pendingMap.isEmpty() && this.running) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (this.pendingMap.isEmpty() && !this.running)
+                    return;
+            }
+
+            //Let the changes of the interval join the batch
+            if (this.running) {
+                try {
+                    Thread.sleep(COMMIT_DELAY);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            try {
+                commit();
+
+                if (this.journalChannel.size() > Math.max(MIN_COMPACTION_SIZE, 2 * this.snapshotSize))
+                    compact();
+
+                retryDelay = 0;
+
+            } catch (IOException e) {
+
+                if (!this.running) {
+                    logger.error("Error writing the state store {} ! Msg: {} -> the last changes are lost", this.directory, e.getLocalizedMessage());
+                    return;
+                }
+
+                retryDelay = Math.min(MAX_RETRY_DELAY, Math.max(MIN_RETRY_DELAY, 2 * retryDelay));
+                logger.error("Error writing the state store {} ! Msg: {} -> retrying in {}ms", this.directory, e.getLocalizedMessage(), retryDelay);
+
+                //The close wakes the writer up for a last attempt
+                synchronized (this.lock) {
+                    if (this.running) {
+                        try {
+                            this.lock.wait(retryDelay);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //Append the pending changes as one batch and force it to disk
+    private void commit() throws IOException {
+
+        Map<String, byte[]> batchMap;
+
+        //The changes put from now on go to the next batch
+        synchronized (this.lock) {
+            batchMap = new HashMap<>(this.pendingMap);
+            this.pendingMap.clear();
+        }
+
+        if (batchMap.isEmpty())
+            return;
+
+        try {
+            //A batch torn by a previous error is removed before anything is appended
+            if (this.tornJournalPosition >= 0)
+                truncateJournal(this.tornJournalPosition);
+
+            appendBatch(batchMap);
+
+        } catch (IOException e) {
+            //The batch is retried, unless a newer value of the key has been put in the meantime
+            synchronized (this.lock) {
+                batchMap.forEach(this.pendingMap::putIfAbsent);
+            }
+            throw e;
+        }
+
+        this.durableMap.putAll(batchMap);
+    }
+
+    private void appendBatch(Map<String, byte[]> batchMap) throws IOException {
+
+        ByteArrayOutputStream payloadStream = new ByteArrayOutputStream();
+        writeRecords(new DataOutputStream(payloadStream), batchMap);
+        byte[] payload = payloadStream.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer batch = ByteBuffer.allocate(8 + payload.length);
+        batch.putInt(payload.length);
+        batch.putInt((int) crc.getValue());
+        batch.put(payload);
+        batch.flip();
+
+        long batchPosition = this.journalChannel.position();
+
+        try {
+            while (batch.hasRemaining())
+                this.journalChannel.write(batch);
+
+            this.journalChannel.force(false);
+
+        } catch (IOException e) {
+            //The torn bytes are removed: the next batches must follow the last valid one, or the replay would stop there
+            this.tornJournalPosition = batchPosition;
+            try {
+                truncateJournal(batchPosition);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+    }
+
+    private void truncateJournal(long position) throws IOException {
+        this.journalChannel.truncate(position);
+        this.journalChannel.position(position);
+        this.tornJournalPosition = -1;
+    }
+
+    //Write the durable state to a new snapshot, then empty the journal
+    private void compact() throws IOException {
+
+        Path snapshotTmpPath = this.directory.resolve(SNAPSHOT_TMP_FILE);
+
+        CRC32 crc = new CRC32();
+
+        try (FileOutputStream fileOutput = new FileOutputStream(snapshotTmpPath.toFile())) {
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOutput, crc)));
+            output.writeInt(SNAPSHOT_MAGIC);
+            writeRecords(output, this.durableMap);
+            output.flush();
+
+            //The CRC is not part of its own checksum
+            DataOutputStream crcOutput = new DataOutputStream(fileOutput);
+            crcOutput.writeLong(crc.getValue());
+            crcOutput.flush();
+
+            fileOutput.getFD().sync();
+        }
+
+        Files.move(snapshotTmpPath, this.directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        //The rename is durable before the journal is truncated
+        syncDirectory();
+
+        //A crash before the truncation replays a journal already contained in the snapshot: the result is the same
+        this.journalChannel.truncate(0);
+        this.journalChannel.position(0);
+        this.journalChannel.force(true);
+
+        this.snapshotSize = Files.size(this.directory.resolve(SNAPSHOT_FILE));
+
+        logger.info("State store {} compacted: {} keys, {} bytes", this.directory, this.durableMap.size(), this.snapshotSize);
+    }
+
+    private void closeJournal() {
+        try {
+            if (this.journalChannel != null)
+                this.journalChannel.close();
+        } catch (IOException e) {
+            logger.error("Error closing the state journal {} ! Msg: {}", this.directory, e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("RawStateStore{");
+        sb.append("directory=").append(directory);
+        sb.append(", keys=").append(stateMap.size());
+        sb.append(", running=").append(running);
+        sb.append('}');
+        return sb.toString();
+    }
+}
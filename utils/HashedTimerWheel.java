@@ -0,0 +1,249 @@
+package it.unimore.dipi.iot.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timer wheel for reschedulable deadlines.
+ * Each owner (E.g. a switch actuator) creates its {@link Deadline} once and reuses it:
+ * scheduling a deadline that is already pending replaces the previous expiration time, so there is at most
+ * one pending expiration per deadline no matter how many times it is scheduled.
+ *
+ * The wheel is served by a single daemon thread which advances every tick: the expiration precision is one tick.
+ * The tasks run on the wheel thread, so they must be short and must not block.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 17:40
+ * @project coap-smart-building
+ */
+
+public class HashedTimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimerWheel.class);
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final long tickMillis;
+
+    private final int mask;
+
+    private final Bucket[] wheel;
+
+    //Deadlines scheduled or cancelled since the last tick, linked into the wheel by the worker thread
+    private final Queue<Deadline> pendingDeadlines = new ConcurrentLinkedQueue<>();
+
+    private final long startNanos = System.nanoTime();
+
+    private final Thread workerThread;
+
+    private volatile boolean running = true;
+
+    //Last processed tick, owned by the worker thread
+    private long lastTick = 0;
+
+    /**
+     * @param name       name of the wheel thread
+     * @param tickMillis duration of a tick (expiration precision)
+     * @param wheelSize  number of buckets, rounded up to a power of two
+     */
+    public HashedTimerWheel(String name, long tickMillis, int wheelSize) {
+
+        if (tickMillis <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("tickMillis and wheelSize must be positive");
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            this.wheel[i] = new Bucket();
+
+        this.workerThread = new Thread(this::run, name);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * @param task the task to run on expiration
+     * @return a new, not scheduled, deadline
+     */
+    public Deadline newDeadline(Runnable task) {
+        return new Deadline(task);
+    }
+
+    public void stop() {
+        this.running = false;
+        this.workerThread.interrupt();
+    }
+
+    private long currentTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long currentTick = currentTimeMillis() / tickMillis;
+
+                linkPendingDeadlines();
+
+                //Catch up with the missed ticks (one rotation at most: every bucket is visited)
+                long fromTick = Math.max(lastTick + 1, currentTick - mask);
+                for (long tick = fromTick; tick <= currentTick; tick++)
+                    expireBucket(wheel[(int) (tick & mask)], currentTick);
+
+                lastTick = Math.max(lastTick, currentTick);
+
+                long sleepMillis = (currentTick + 1) * tickMillis - currentTimeMillis();
+                if (sleepMillis > 0)
+                    Thread.sleep(sleepMillis);
+
+            } catch (InterruptedException e) {
+                //stop() has been invoked
+            } catch (Exception e) {
+                logger.error("Error processing the timer wheel ! Msg: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private void linkPendingDeadlines() {
+        Deadline deadline;
+        while ((deadline = pendingDeadlines.poll()) != null) {
+
+            //Clear the flag before reading the expiration: a concurrent schedule() enqueues the deadline again
+            deadline.pending.set(false);
+
+            if (deadline.bucket != null)
+                deadline.bucket.remove(deadline);
+
+            long expirationMillis = deadline.expirationMillis.get();
+            if (expirationMillis != NONE) {
+                //An expiration already in the past goes in the next bucket to process
+                long tick = Math.max(expirationMillis / tickMillis, lastTick + 1);
+                wheel[(int) (tick & mask)].add(deadline);
+            }
+        }
+    }
+
+    private void expireBucket(Bucket bucket, long currentTick) {
+        Deadline deadline = bucket.head;
+        while (deadline != null) {
+            Deadline next = deadline.next;
+            long expirationMillis = deadline.expirationMillis.get();
+
+            if (expirationMillis == NONE) {
+                bucket.remove(deadline);
+            } else if (expirationMillis / tickMillis <= currentTick) {
+                bucket.remove(deadline);
+
+                //If the deadline has been rescheduled meanwhile it stays pending and it will be linked again
+                if (deadline.expirationMillis.compareAndSet(expirationMillis, NONE)) {
+                    try {
+                        deadline.task.run();
+                    } catch (Exception e) {
+                        logger.error("Error running the timer wheel task ! Msg: {}", e.getLocalizedMessage());
+                    }
+                }
+            }
+            //else: the deadline expires in a later rotation
+
+            deadline = next;
+        }
+    }
+
+    /**
+     * A reusable expiration of the wheel
+     */
+    public class Deadline {
+
+        private final Runnable task;
+
+        private final AtomicLong expirationMillis = new AtomicLong(NONE);
+
+        private final AtomicBoolean pending = new AtomicBoolean(false);
+
+        //Bucket links, owned by the worker thread
+        private Bucket bucket;
+
+        private Deadline prev;
+
+        private Deadline next;
+
+        private Deadline(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * Schedule the task after the given delay, replacing the pending expiration (if any)
+         *
+         * @param delayMillis delay in ms
+         */
+        public void schedule(long delayMillis) {
+            this.expirationMillis.set(currentTimeMillis() + Math.max(0, delayMillis));
+            enqueue();
+        }
+
+        /**
+         * Cancel the pending expiration (if any)
+         */
+        public void cancel() {
+            if (this.expirationMillis.getAndSet(NONE) != NONE)
+                enqueue();
+        }
+
+        public boolean isScheduled() {
+            return this.expirationMillis.get() != NONE;
+        }
+
+        private void enqueue() {
+            if (this.pending.compareAndSet(false, true))
+                pendingDeadlines.offer(this);
+        }
+    }
+
+    /**
+     * Doubly linked list of the deadlines expiring in the same slot, owned by the worker thread
+     */
+    private static class Bucket {
+
+        private Deadline head;
+
+        private Deadline tail;
+
+        private void add(Deadline deadline) {
+            deadline.bucket = this;
+            deadline.prev = tail;
+            deadline.next = null;
+            if (tail == null)
+                head = deadline;
+            else
+                tail.next = deadline;
+            tail = deadline;
+        }
+
+        private void remove(Deadline deadline) {
+            if (deadline.prev == null)
+                head = deadline.next;
+            else
+                deadline.prev.next = deadline.next;
+
+            if (deadline.next == null)
+                tail = deadline.prev;
+            else
+                deadline.next.prev = deadline.prev;
+
+            deadline.bucket = null;
+            deadline.prev = null;
+            deadline.next = null;
+        }
+    }
+}
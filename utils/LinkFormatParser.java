@@ -0,0 +1,407 @@
+package it.unimore.dipi.iot.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single pass CoRE Link-Format (RFC 6690) parser working on the payload bytes, E.g.
+ * </water-provider/H2O>;rt="iot.sensor.water";if="core.s";ct=0;obs,</gas>;rt="iot.sensor.gas"
+ *
+ * Each link is pushed to a {@link LinkHandler} as soon as it is parsed: no Set of WebLink is built.
+ * The attribute names and the short attribute values (E.g. "rt", "if", "core.s", "obs") are interned,
+ * so a document with thousands of links does not allocate a String for each repeated token.
+ *
+ * The parsing follows the Californium LinkFormat: a quoted value holds a list of values separated by spaces
+ * (except "title"), a flag (E.g. "obs") has no value. Malformed links are skipped.
+ *
+ * @author Riccardo Prevedi
+ * @created 19/10/2026 - 23:40
+ * @project coap-smart-building
+ */
+
+public class LinkFormatParser {
+
+    private static final String TITLE_ATTRIBUTE = "title";
+
+    //Longer tokens are not interned: they are hardly repeated (E.g. URIs, titles)
+    private static final int MAX_INTERNED_LENGTH = 32;
+
+    private static final int INTERN_TABLE_SIZE = 1024;
+
+    //The tokens of the CoRE Link-Format and of the smart building, never evicted
+    private static final String[] COMMON_TOKENS = {
+            "rt", "if", "ct", "obs", "sz", "title", "anchor", "rel", "href", "hreflang", "media", "type",
+            "ep", "d", "lt", "base", "et", "rm", "page", "count",
+            "core.s", "core.a", "core.p", "core.b", "core.ll", "core.lb", "core.rp",
+            "0", "40", "41", "50", "60", "110", "112",
+            "iot.sensor.water", "iot.sensor.energy", "iot.sensor.gas", "iot.sensor.presence", "iot.actuator.switch",
+            "core.rd", "core.rd-lookup-ep", "core.rd-lookup-res"
+    };
+
+    private static final String[] COMMON_TOKEN_TABLE = new String[INTERN_TABLE_SIZE];
+
+    //Tokens met while parsing, a collision replaces the previous one.
+    //Racy on purpose: a String is safely published and a lost entry is only a cache miss
+    private static final String[] INTERN_TABLE = new String[INTERN_TABLE_SIZE];
+
+    static {
+        for (String token : COMMON_TOKENS) {
+            byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+            COMMON_TOKEN_TABLE[hash(bytes, 0, bytes.length) & (INTERN_TABLE_SIZE - 1)] = token;
+        }
+    }
+
+    public interface LinkHandler {
+
+        /**
+         * @param link the parsed link, it is reused for the next link: it is valid only during the call
+         */
+        void onLink(Link link);
+    }
+
+    private LinkFormatParser() {
+    }
+
+    /**
+     * @return the number of links pushed to the handler
+     */
+    public static int parse(String linkFormat, LinkHandler linkHandler) {
+        if (linkFormat == null)
+            return 0;
+        return parse(linkFormat.getBytes(StandardCharsets.UTF_8), linkHandler);
+    }
+
+    /**
+     * @param payload a CoRE Link-Format document encoded in UTF-8, E.g. the payload of a /.well-known/core response
+     * @return the number of links pushed to the handler
+     */
+    public static int parse(byte[] payload, LinkHandler linkHandler) {
+
+        if (payload == null)
+            return 0;
+
+        Link link = new Link();
+        int length = payload.length;
+        int count = 0;
+        int i = 0;
+
+        while (i < length) {
+
+            //Links are separated by ","
+            while (i < length && (isWhitespace(payload[i]) || payload[i] == ','))
+                i++;
+
+            if (i >= length)
+                break;
+
+            if (payload[i] != '<') {
+                i = skipLink(payload, i);
+                continue;
+            }
+
+            int uriEnd = indexOf(payload, (byte) '>', i + 1);
+
+            if (uriEnd < 0)
+                break;
+
+            link.reset(new String(payload, i + 1, uriEnd - i - 1, StandardCharsets.UTF_8));
+            i = uriEnd + 1;
+
+            //Attributes, each one starts with ";"
+            while (true) {
+
+                i = skipWhitespace(payload, i);
+
+                if (i >= length || payload[i] != ';')
+                    break;
+
+                i = skipWhitespace(payload, i + 1);
+
+                int nameStart = i;
+                while (i < length && isNameChar(payload[i]))
+                    i++;
+
+                if (i == nameStart)
+                    continue;
+
+                String name = intern(payload, nameStart, i);
+
+                i = skipWhitespace(payload, i);
+
+                if (i >= length || payload[i] != '=') {
+                    link.addAttribute(name, null);
+                    continue;
+                }
+
+                i = skipWhitespace(payload, i + 1);
+
+                if (i < length && payload[i] == '"')
+                    i = parseQuotedValue(payload, i + 1, name, link);
+                else {
+                    int valueStart = i;
+                    while (i < length && payload[i] != ';' && payload[i] != ',' && !isWhitespace(payload[i]))
+                        i++;
+                    link.addAttribute(name, intern(payload, valueStart, i));
+                }
+            }
+
+            if (i < length && payload[i] != ',') {
+                //Garbage after the link: the link is dropped
+                i = skipLink(payload, i);
+                continue;
+            }
+
+            linkHandler.onLink(link);
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param start the index after the opening quote
+     * @return the index after the closing quote
+     */
+    private static int parseQuotedValue(byte[] payload, int start, String name, Link link) {
+
+        int i = start;
+        boolean escaped = false;
+
+        while (i < payload.length && payload[i] != '"') {
+            if (payload[i] == '\\') {
+                escaped = true;
+                i++;
+            }
+            i++;
+        }
+
+        int end = Math.min(i, payload.length);
+
+        if (escaped) {
+            //Slow path: quoted-pairs, E.g. title="the \"main\" meter"
+            String value = unescape(new String(payload, start, end - start, StandardCharsets.UTF_8));
+            if (name.equals(TITLE_ATTRIBUTE))
+                link.addAttribute(name, value);
+            else
+                for (String part : value.split("\\s+"))
+                    if (!part.isEmpty())
+                        link.addAttribute(name, part);
+        } else if (name.equals(TITLE_ATTRIBUTE)) {
+            link.addAttribute(name, new String(payload, start, end - start, StandardCharsets.UTF_8));
+        } else {
+            //A list of values separated by spaces, E.g. rt="iot.sensor.water core.s"
+            int partStart = start;
+            for (int j = start; j <= end; j++) {
+                if (j == end || isWhitespace(payload[j])) {
+                    if (j > partStart)
+                        link.addAttribute(name, intern(payload, partStart, j));
+                    partStart = j + 1;
+                }
+            }
+        }
+
+        return end + 1;
+    }
+
+    private static String unescape(String value) {
+        StringBuilder buffer = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length())
+                c = value.charAt(++i);
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * @return the index of the next link (the next "," outside a quoted value)
+     */
+    private static int skipLink(byte[] payload, int i) {
+        boolean quoted = false;
+        while (i < payload.length && (quoted || payload[i] != ',')) {
+            if (payload[i] == '"')
+                quoted = !quoted;
+            else if (payload[i] == '\\' && quoted)
+                i++;
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(byte[] payload, int i) {
+        while (i < payload.length && isWhitespace(payload[i]))
+            i++;
+        return i;
+    }
+
+    private static int indexOf(byte[] payload, byte b, int from) {
+        for (int i = from; i < payload.length; i++)
+            if (payload[i] == b)
+                return i;
+        return -1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    //parmname of RFC 5987: ALPHA / DIGIT / "!" / "#" / "$" / "&" / "+" / "-" / "." / "^" / "_" / "`" / "|" / "~"
+    private static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '!' || b == '#' || b == '$' || b == '&' || b == '+' || b == '-' || b == '.'
+                || b == '^' || b == '_' || b == '`' || b == '|' || b == '~' || b == '*';
+    }
+
+    private static int hash(byte[] payload, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + payload[i];
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the interned token, or a new String if the token is long or not ASCII
+     */
+    private static String intern(byte[] payload, int start, int end) {
+
+        int length = end - start;
+
+        if (length > MAX_INTERNED_LENGTH)
+            return new String(payload, start, length, StandardCharsets.UTF_8);
+
+        int slot = hash(payload, start, end) & (INTERN_TABLE_SIZE - 1);
+
+        String token = COMMON_TOKEN_TABLE[slot];
+        if (token != null && matches(token, payload, start, end))
+            return token;
+
+        token = INTERN_TABLE[slot];
+        if (token != null && matches(token, payload, start, end))
+            return token;
+
+        token = new String(payload, start, length, StandardCharsets.UTF_8);
+
+        //A non ASCII token never matches its bytes: it is not cached
+        if (token.length() == length)
+            INTERN_TABLE[slot] = token;
+
+        return token;
+    }
+
+    private static boolean matches(String token, byte[] payload, int start, int end) {
+        if (token.length() != end - start)
+            return false;
+        for (int i = start; i < end; i++)
+            if (token.charAt(i - start) != payload[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * A parsed link: its URI and its attributes in the parsed order, a flag has a null value.
+     * The attribute names are interned: they can be compared with the constants by identity first.
+     */
+    public static class Link {
+
+        private String uri;
+
+        private String[] names = new String[8];
+
+        private String[] values = new String[8];
+
+        private int attributeCount = 0;
+
+        private void reset(String uri) {
+            this.uri = uri;
+            Arrays.fill(this.names, 0, this.attributeCount, null);
+            Arrays.fill(this.values, 0, this.attributeCount, null);
+            this.attributeCount = 0;
+        }
+
+        private void addAttribute(String name, String value) {
+            if (this.attributeCount == this.names.length) {
+                this.names = Arrays.copyOf(this.names, this.attributeCount * 2);
+                this.values = Arrays.copyOf(this.values, this.attributeCount * 2);
+            }
+            this.names[this.attributeCount] = name;
+            this.values[this.attributeCount] = value;
+            this.attributeCount++;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public int getAttributeCount() {
+            return attributeCount;
+        }
+
+        public String getAttributeName(int index) {
+            return names[index];
+        }
+
+        /**
+         * @return the value of the attribute at the index, null for a flag
+         */
+        public String getAttributeValue(int index) {
+            return values[index];
+        }
+
+        public boolean hasAttribute(String name) {
+            return indexOfAttribute(name, 0) >= 0;
+        }
+
+        /**
+         * @return the first value of the attribute, null if the attribute is missing or it is a flag
+         */
+        public String getAttributeValue(String name) {
+            for (int i = indexOfAttribute(name, 0); i >= 0; i = indexOfAttribute(name, i + 1))
+                if (values[i] != null)
+                    return values[i];
+            return null;
+        }
+
+        public boolean hasAttributeValue(String name, String value) {
+            for (int i = indexOfAttribute(name, 0); i >= 0; i = indexOfAttribute(name, i + 1))
+                if (value.equals(values[i]))
+                    return true;
+            return false;
+        }
+
+        /**
+         * @return the values of the attribute (a new list), empty for a flag or a missing attribute
+         */
+        public List<String> getAttributeValues(String name) {
+            List<String> attributeValues = null;
+            for (int i = indexOfAttribute(name, 0); i >= 0; i = indexOfAttribute(name, i + 1)) {
+                if (values[i] != null) {
+                    if (attributeValues == null)
+                        attributeValues = new ArrayList<>(2);
+                    attributeValues.add(values[i]);
+                }
+            }
+            return attributeValues != null ? attributeValues : Collections.emptyList();
+        }
+
+        private int indexOfAttribute(String name, int from) {
+            for (int i = from; i < attributeCount; i++)
+                if (names[i] == name || names[i].equals(name))
+                    return i;
+            return -1;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuffer sb = new StringBuffer("Link{");
+            sb.append("uri='").append(uri).append('\'');
+            sb.append(", names=").append(Arrays.toString(Arrays.copyOf(names, attributeCount)));
+            sb.append(", values=").append(Arrays.toString(Arrays.copyOf(values, attributeCount)));
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+}
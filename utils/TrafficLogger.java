@@ -0,0 +1,297 @@
+package it.unimore.dipi.iot.utils;
+
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.Utils;
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic log of the request, response and notification hot paths (E.g. a resource handler, the collector notifications).
+ * Each traffic logger is disabled by default: a disabled logger costs a single volatile read on the calling thread.
+ * An enabled logger keeps 1 event every sampleRate and at most maxPerSecond events per second,
+ * the kept events are queued and formatted (E.g. the pretty print of a CoAP message) by a single daemon thread.
+ * If the queue is full the events are dropped, the number of dropped events is logged periodically.
+ *
+ * The traffic loggers are enabled programmatically with {@link #enable(int, int)} or at startup with a system property
+ * for each logger name, E.g. -Dtraffic.log.collector.notification=10/100 (1 notification every 10, at most 100/s).
+ * The events are written through the SLF4J logger "traffic.NAME" at INFO level.
+ *
+ * @author Riccardo Prevedi
+ * @created 20/10/2026 - 02:20
+ * @project coap-smart-building
+ */
+
+public class TrafficLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrafficLogger.class);
+
+    private static final String PROPERTY_PREFIX = "traffic.log.";
+
+    private static final String LOGGER_PREFIX = "traffic.";
+
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private static final long DROP_REPORT_PERIOD = 10000; //10sec
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Map<String, TrafficLogger> trafficLoggerMap = new ConcurrentHashMap<>();
+
+    //Shared by every traffic logger and drained by the writer thread
+    private static final BlockingQueue<TrafficEvent> eventQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private static final Thread writerThread;
+
+    static {
+        writerThread = new Thread(TrafficLogger::runWriter, "traffic-logger");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private final String name;
+
+    private final Logger trafficLogger;
+
+    //null when the logger is disabled
+    private volatile Settings settings;
+
+    //Fixed one second window of the rate limit
+    private volatile long windowStart = System.nanoTime();
+
+    private final AtomicInteger windowCount = new AtomicInteger();
+
+    private final AtomicLong writtenEvents = new AtomicLong();
+
+    private final AtomicLong rateLimitedEvents = new AtomicLong();
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    //Used by the writer thread only
+    private long reportedDroppedEvents = 0;
+
+    private TrafficLogger(String name) {
+        this.name = name;
+        this.trafficLogger = LoggerFactory.getLogger(LOGGER_PREFIX + name);
+
+        String property = System.getProperty(PROPERTY_PREFIX + name);
+        if (property != null)
+            configure(property);
+    }
+
+    /**
+     * @param name the name of the hot path, E.g. the resource "switch" or "collector.notification"
+     * @return the traffic logger of the name, created disabled (unless its system property is set) on the first call
+     */
+    public static TrafficLogger getLogger(String name) {
+        return trafficLoggerMap.computeIfAbsent(name, TrafficLogger::new);
+    }
+
+    /**
+     * @param sampleRate   1 event every sampleRate is kept, 1 keeps every event
+     * @param maxPerSecond the max number of events written per second
+     */
+    public void enable(int sampleRate, int maxPerSecond) {
+
+        if (sampleRate < 1 || maxPerSecond < 1)
+            throw new IllegalArgumentException("sampleRate and maxPerSecond must be at least 1");
+
+        this.settings = new Settings(sampleRate, maxPerSecond);
+        logger.info("Traffic log {} enabled (1 event every {}, max {}/s)", this.name, sampleRate, maxPerSecond);
+    }
+
+    public void disable() {
+        this.settings = null;
+    }
+
+    public boolean isEnabled() {
+        return this.settings != null;
+    }
+
+    /**
+     * Log a CoAP request or response, E.g. log("PUT", exchange.advanced().getRequest())
+     * The message is formatted later: it must not be changed after it is logged
+     */
+    public void log(String event, Message message) {
+        Settings currentSettings = this.settings;
+        if (currentSettings != null && isKept(currentSettings))
+            enqueue(new TrafficEvent(this, event, message, null));
+    }
+
+    /**
+     * Log a response received by a client
+     */
+    public void log(String event, CoapResponse coapResponse) {
+        Settings currentSettings = this.settings;
+        if (currentSettings != null && isKept(currentSettings))
+            enqueue(new TrafficEvent(this, event, coapResponse, null));
+    }
+
+    /**
+     * Log a value, E.g. log(targetUrl, notifiedValue) for a notification
+     */
+    public void log(String target, Object value) {
+        Settings currentSettings = this.settings;
+        if (currentSettings != null && isKept(currentSettings))
+            enqueue(new TrafficEvent(this, target, null, value));
+    }
+
+    private boolean isKept(Settings currentSettings) {
+
+        if (currentSettings.sampleRate > 1 && ThreadLocalRandom.current().nextInt(currentSettings.sampleRate) != 0)
+            return false;
+
+        long now = System.nanoTime();
+        if (now - this.windowStart >= ONE_SECOND) {
+            //A racy reset: at the window boundary a few more events than the limit can be kept
+            this.windowStart = now;
+            this.windowCount.set(0);
+        }
+
+        if (this.windowCount.incrementAndGet() > currentSettings.maxPerSecond) {
+            this.rateLimitedEvents.incrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void enqueue(TrafficEvent trafficEvent) {
+        if (!eventQueue.offer(trafficEvent))
+            this.droppedEvents.incrementAndGet();
+    }
+
+    //The value of the system property: <sampleRate>/<maxPerSecond>
+    private void configure(String property) {
+        try {
+            String[] values = property.split("/");
+            enable(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()));
+        } catch (RuntimeException e) {
+            logger.error("Error configuring the traffic log {} with '{}' ! Msg: {}", this.name, property, e.getLocalizedMessage());
+        }
+    }
+
+    private static void runWriter() {
+
+        long nextDropReport = System.currentTimeMillis() + DROP_REPORT_PERIOD;
+
+        while (true) {
+            try {
+                TrafficEvent trafficEvent = eventQueue.poll(DROP_REPORT_PERIOD, TimeUnit.MILLISECONDS);
+
+                if (trafficEvent != null)
+                    trafficEvent.write();
+
+                if (System.currentTimeMillis() >= nextDropReport) {
+                    nextDropReport = System.currentTimeMillis() + DROP_REPORT_PERIOD;
+                    trafficLoggerMap.values().forEach(TrafficLogger::reportDroppedEvents);
+                }
+
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Error writing the traffic log ! Msg: {}", e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private void reportDroppedEvents() {
+        long totalDropped = this.droppedEvents.get();
+        if (totalDropped > this.reportedDroppedEvents) {
+            logger.warn("Traffic log {}: {} events dropped (queue full)", this.name, totalDropped - this.reportedDroppedEvents);
+            this.reportedDroppedEvents = totalDropped;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getWrittenEvents() {
+        return writtenEvents.get();
+    }
+
+    public long getRateLimitedEvents() {
+        return rateLimitedEvents.get();
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("TrafficLogger{");
+        sb.append("name='").append(name).append('\'');
+        sb.append(", settings=").append(settings);
+        sb.append(", writtenEvents=").append(writtenEvents);
+        sb.append(", rateLimitedEvents=").append(rateLimitedEvents);
+        sb.append(", droppedEvents=").append(droppedEvents);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class Settings {
+
+        private final int sampleRate;
+
+        private final int maxPerSecond;
+
+        private Settings(int sampleRate, int maxPerSecond) {
+            this.sampleRate = sampleRate;
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d", sampleRate, maxPerSecond);
+        }
+    }
+
+    /**
+     * An event kept by the calling thread, formatted by the writer thread
+     */
+    private static class TrafficEvent {
+
+        private final TrafficLogger owner;
+
+        private final String event;
+
+        //Request, Response or CoapResponse, formatted with the pretty print
+        private final Object message;
+
+        private final Object value;
+
+        private TrafficEvent(TrafficLogger owner, String event, Object message, Object value) {
+            this.owner = owner;
+            this.event = event;
+            this.message = message;
+            this.value = value;
+        }
+
+        private void write() {
+
+            if (this.message instanceof Request)
+                this.owner.trafficLogger.info("{}:\n{}", this.event, Utils.prettyPrint((Request) this.message));
+            else if (this.message instanceof Response)
+                this.owner.trafficLogger.info("{}:\n{}", this.event, Utils.prettyPrint((Response) this.message));
+            else if (this.message instanceof CoapResponse)
+                this.owner.trafficLogger.info("{}:\n{}", this.event, Utils.prettyPrint((CoapResponse) this.message));
+            else
+                this.owner.trafficLogger.info("{} -> {}", this.event, this.value);
+
+            this.owner.writtenEvents.incrementAndGet();
+        }
+    }
+}